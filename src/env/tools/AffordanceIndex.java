@@ -0,0 +1,307 @@
+package tools;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ch.unisg.ics.interactions.wot.td.ThingDescription;
+import ch.unisg.ics.interactions.wot.td.affordances.ActionAffordance;
+import ch.unisg.ics.interactions.wot.td.affordances.Form;
+import ch.unisg.ics.interactions.wot.td.affordances.InteractionAffordance;
+import ch.unisg.ics.interactions.wot.td.affordances.PropertyAffordance;
+import ch.unisg.ics.interactions.wot.td.schemas.ArraySchema;
+import ch.unisg.ics.interactions.wot.td.schemas.DataSchema;
+import ch.unisg.ics.interactions.wot.td.security.SecurityScheme;
+import ch.unisg.ics.interactions.wot.td.vocabularies.TD;
+import ch.unisg.ics.interactions.wot.td.vocabularies.WoTSec;
+
+/**
+ * An index over the affordances of a W3C WoT Thing Description (TD). The index maps an operation
+ * type (e.g., <code>td:readProperty</code>) and a semantic type to a resolved affordance, such
+ * that the form, data schema, and security scheme used for a request are retrieved with hash
+ * lookups instead of scans over the TD's affordance lists. Building the index only records the
+ * semantic types of the TD's affordances; each affordance is resolved when it is first used, such
+ * that large TDs (e.g., of gateways with thousands of sensors) are indexed quickly and only pay
+ * for the affordances agents actually use.
+ *
+ * For each semantic type, the index keeps the first affordance in the TD that has that type, which
+ * is consistent with <code>ThingDescription.getFirst*BySemanticType</code>. If an affordance has
+ * several forms for an operation type, the index keeps the form with the most efficient content
+ * type: CBOR is preferred over JSON, and JSON over other content types.
+ *
+ */
+public class AffordanceIndex {
+  /** The operation type used by forms for observing properties (e.g., via long polling). */
+  public static final String OBSERVE_PROPERTY = "https://www.w3.org/2019/wot/td#observeProperty";
+
+  /** Reads of JSON arrays without a smaller <code>maxItems</code> ask for compressed payloads. */
+  static final int COMPRESSIBLE_ARRAY_ITEMS = 64;
+
+  private static final Map<ThingDescription, AffordanceIndex> INDEXES =
+      new WeakHashMap<ThingDescription, AffordanceIndex>();
+
+  private final Map<String, PropertyAffordance> properties;
+  private final Map<String, ActionAffordance> actions;
+  private final Optional<SecurityScheme> apiKeyScheme;
+  private final Optional<String> host;
+  private final Map<String, Map<String, Optional<ResolvedAffordance>>> resolved;
+
+  private AffordanceIndex(ThingDescription td) {
+    Map<String, PropertyAffordance> properties = new HashMap<String, PropertyAffordance>();
+    Map<String, ActionAffordance> actions = new HashMap<String, ActionAffordance>();
+
+    // Only the semantic types are indexed up front, forms and schemas are resolved on first use
+    for (PropertyAffordance property : td.getProperties()) {
+      for (String semanticType : property.getSemanticTypes()) {
+        properties.putIfAbsent(semanticType, property);
+      }
+    }
+
+    for (ActionAffordance action : td.getActions()) {
+      for (String semanticType : action.getSemanticTypes()) {
+        actions.putIfAbsent(semanticType, action);
+      }
+    }
+
+    Map<String, Map<String, Optional<ResolvedAffordance>>> resolved =
+        new HashMap<String, Map<String, Optional<ResolvedAffordance>>>();
+    resolved.put(TD.readProperty, new ConcurrentHashMap<String, Optional<ResolvedAffordance>>());
+    resolved.put(TD.writeProperty, new ConcurrentHashMap<String, Optional<ResolvedAffordance>>());
+    resolved.put(OBSERVE_PROPERTY, new ConcurrentHashMap<String, Optional<ResolvedAffordance>>());
+    resolved.put(TD.invokeAction, new ConcurrentHashMap<String, Optional<ResolvedAffordance>>());
+
+    this.properties = Collections.unmodifiableMap(properties);
+    this.actions = Collections.unmodifiableMap(actions);
+    this.apiKeyScheme = td.getSecuritySchemeByType(WoTSec.APIKeySecurityScheme);
+    this.host = hostOf(td);
+    this.resolved = Collections.unmodifiableMap(resolved);
+  }
+
+  /* The host of the first form target, which may differ from the host that served the TD. */
+  private static Optional<String> hostOf(ThingDescription td) {
+    List<InteractionAffordance> affordances = new ArrayList<InteractionAffordance>();
+    affordances.addAll(td.getProperties());
+    affordances.addAll(td.getActions());
+
+    for (InteractionAffordance affordance : affordances) {
+      for (Form form : affordance.getForms()) {
+        try {
+          Optional<String> authority = Optional.ofNullable(URI.create(form.getTarget())
+              .getAuthority());
+
+          if (authority.isPresent()) {
+            return authority;
+          }
+        } catch (IllegalArgumentException e) {
+          // Not a valid URI, try the next form
+        }
+      }
+    }
+
+    return Optional.empty();
+  }
+
+  /* Resolves the form, schema, and security scheme used for an affordance and operation type. */
+  private Optional<ResolvedAffordance> resolve(String operationType, String semanticType) {
+    if (operationType.equals(TD.invokeAction)) {
+      ActionAffordance action = actions.get(semanticType);
+      Optional<Form> form = preferredForm(action, TD.invokeAction);
+
+      if (!form.isPresent()) {
+        form = action.getFirstForm();
+      }
+
+      return form.map(actionForm -> new ResolvedAffordance(action, semanticType, actionForm,
+          TD.invokeAction, action.getInputSchema(), apiKeyScheme));
+    }
+
+    PropertyAffordance property = properties.get(semanticType);
+
+    return preferredForm(property, operationType).map(form -> new ResolvedAffordance(property,
+        semanticType, form, operationType, Optional.of(property.getDataSchema()), apiKeyScheme));
+  }
+
+  /* Among the forms for an operation type, keeps the first one with the best content type. */
+  private static Optional<Form> preferredForm(InteractionAffordance affordance,
+      String operationType) {
+    Form preferred = null;
+    int preferredRank = Integer.MAX_VALUE;
+
+    for (Form form : affordance.getForms()) {
+      if (!form.hasOperationType(operationType)) {
+        continue;
+      }
+
+      int rank = rankContentType(form.getContentType());
+
+      if (rank < preferredRank) {
+        preferred = form;
+        preferredRank = rank;
+      }
+    }
+
+    return Optional.ofNullable(preferred);
+  }
+
+  private static int rankContentType(String contentType) {
+    if (CborCodec.isCbor(contentType)) {
+      return 0;
+    }
+
+    String mediaType = contentType == null ? "" : contentType.toLowerCase(Locale.ROOT);
+
+    if (mediaType.startsWith("application/json") || mediaType.contains("+json")) {
+      return 1;
+    }
+
+    return 2;
+  }
+
+  /**
+   * Retrieves the index of a TD. Indexes are built once per TD and shared by all artifacts that
+   * use the same (cached) TD.
+   *
+   * @param td A parsed W3C WoT Thing Description.
+   * @return The index of the TD.
+   */
+  public static AffordanceIndex of(ThingDescription td) {
+    synchronized (INDEXES) {
+      AffordanceIndex index = INDEXES.get(td);
+
+      if (index == null) {
+        index = new AffordanceIndex(td);
+        INDEXES.put(td, index);
+      }
+
+      return index;
+    }
+  }
+
+  /**
+   * @return The host (i.e., the authority) of the TD's form targets, if they have one. If the
+   * targets are on several hosts, the host of the first form is returned.
+   */
+  public Optional<String> getHost() {
+    return host;
+  }
+
+  /**
+   * @param operationType An operation type defined by the W3C WoT TD recommendation.
+   * @param semanticType An IRI that identifies the affordance type.
+   * @return The resolved affordance, if the TD has one with the given semantic type and a form for
+   * the given operation type.
+   */
+  public Optional<ResolvedAffordance> get(String operationType, String semanticType) {
+    Map<String, Optional<ResolvedAffordance>> byType = resolved.get(operationType);
+
+    if (byType == null) {
+      return Optional.empty();
+    }
+
+    Optional<ResolvedAffordance> affordance = byType.get(semanticType);
+
+    if (affordance != null) {
+      return affordance;
+    }
+
+    boolean known = operationType.equals(TD.invokeAction) ? hasAction(semanticType)
+        : hasProperty(semanticType);
+
+    if (!known) {
+      // Unknown semantic types are not memoized, such that failed lookups do not grow the index
+      return Optional.empty();
+    }
+
+    return byType.computeIfAbsent(semanticType, type -> resolve(operationType, type));
+  }
+
+  /**
+   * @param semanticType An IRI that identifies the property type.
+   * @return True if the TD has a property with the given semantic type.
+   */
+  public boolean hasProperty(String semanticType) {
+    return properties.containsKey(semanticType);
+  }
+
+  /**
+   * @param semanticType An IRI that identifies the action type.
+   * @return True if the TD has an action with the given semantic type.
+   */
+  public boolean hasAction(String semanticType) {
+    return actions.containsKey(semanticType);
+  }
+
+  /**
+   * An affordance resolved for a given operation type: the form to be used, the data schema of the
+   * payload (for properties, the property's schema; for actions, the input schema), and the
+   * security scheme that applies to the request. Reads of potentially large JSON arrays are marked
+   * as compressible.
+   */
+  public static class ResolvedAffordance {
+    private final InteractionAffordance affordance;
+    private final String semanticType;
+    private final Form form;
+    private final String operationType;
+    private final Optional<DataSchema> schema;
+    private final Optional<SecurityScheme> securityScheme;
+    private final boolean compressible;
+
+    ResolvedAffordance(InteractionAffordance affordance, String semanticType, Form form,
+        String operationType, Optional<DataSchema> schema,
+        Optional<SecurityScheme> securityScheme) {
+      this.affordance = affordance;
+      this.semanticType = semanticType;
+      this.form = form;
+      this.operationType = operationType;
+      this.schema = schema;
+      this.securityScheme = securityScheme;
+      this.compressible = !operationType.equals(TD.writeProperty)
+          && !operationType.equals(TD.invokeAction)
+          && !CborCodec.isCbor(form.getContentType())
+          && schema.isPresent() && schema.get() instanceof ArraySchema
+          && ((ArraySchema) schema.get()).getMaxItems().orElse(Integer.MAX_VALUE)
+              >= COMPRESSIBLE_ARRAY_ITEMS;
+    }
+
+    public InteractionAffordance getAffordance() {
+      return affordance;
+    }
+
+    /**
+     * @return The semantic type under which the affordance was resolved.
+     */
+    public String getSemanticType() {
+      return semanticType;
+    }
+
+    public Form getForm() {
+      return form;
+    }
+
+    public String getOperationType() {
+      return operationType;
+    }
+
+    public Optional<DataSchema> getSchema() {
+      return schema;
+    }
+
+    public Optional<SecurityScheme> getSecurityScheme() {
+      return securityScheme;
+    }
+
+    /**
+     * @return True if requests should ask for compressed (gzip or deflate) responses.
+     */
+    public boolean isCompressible() {
+      return compressible;
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package tools;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics recorded for one operation type on one affordance of a Thing: request and error counts,
+ * counts per status code, and latency histograms for each phase of an operation. All counters are
+ * lock-free and recording does not allocate, such that metrics can stay enabled in production.
+ *
+ */
+public class AffordanceMetrics implements AffordanceMetricsMXBean {
+  /** The phases of an operation, in the order in which they are performed. */
+  public enum Phase { LOOKUP, ENCODE, NETWORK, DECODE, TOTAL }
+
+  private static final int MAX_STATUS_CODE = 600;
+  private static final double[] PERCENTILES = { 50, 90, 99 };
+
+  private final String thing;
+  private final String title;
+  private final String semanticType;
+  private final String operationType;
+  private final LongAdder requests;
+  private final LongAdder errors;
+  private final AtomicLongArray statusCodes;
+  private final LatencyHistogram[] latencies;
+
+  AffordanceMetrics(String thing, String title, String semanticType, String operationType) {
+    this.thing = thing;
+    this.title = title;
+    this.semanticType = semanticType;
+    this.operationType = operationType;
+    this.requests = new LongAdder();
+    this.errors = new LongAdder();
+    this.statusCodes = new AtomicLongArray(MAX_STATUS_CODE);
+    this.latencies = new LatencyHistogram[Phase.values().length];
+
+    for (int i = 0; i < latencies.length; i ++) {
+      latencies[i] = new LatencyHistogram();
+    }
+  }
+
+  /**
+   * @param phase The phase of the operation.
+   * @param nanos The time spent in the phase in nanoseconds.
+   */
+  public void recordLatency(Phase phase, long nanos) {
+    latencies[phase.ordinal()].record(nanos);
+  }
+
+  /**
+   * Records a request that received a response.
+   *
+   * @param statusCode The status code of the response.
+   */
+  public void recordResponse(int statusCode) {
+    requests.increment();
+
+    if (statusCode >= 0 && statusCode < MAX_STATUS_CODE) {
+      statusCodes.incrementAndGet(statusCode);
+    }
+
+    if (statusCode >= 400) {
+      errors.increment();
+    }
+  }
+
+  /**
+   * Records a request that failed without a response (e.g., a connection error or a timeout).
+   */
+  public void recordError() {
+    requests.increment();
+    errors.increment();
+  }
+
+  public LatencyHistogram getHistogram(Phase phase) {
+    return latencies[phase.ordinal()];
+  }
+
+  @Override
+  public String getThing() {
+    return thing;
+  }
+
+  @Override
+  public String getTitle() {
+    return title;
+  }
+
+  @Override
+  public String getSemanticType() {
+    return semanticType;
+  }
+
+  @Override
+  public String getOperationType() {
+    return operationType;
+  }
+
+  @Override
+  public long getRequestCount() {
+    return requests.sum();
+  }
+
+  @Override
+  public long getErrorCount() {
+    return errors.sum();
+  }
+
+  @Override
+  public Map<String, Long> getStatusCodeCounts() {
+    Map<String, Long> counts = new TreeMap<String, Long>();
+
+    for (int i = 0; i < MAX_STATUS_CODE; i ++) {
+      long count = statusCodes.get(i);
+
+      if (count > 0) {
+        counts.put(String.valueOf(i), count);
+      }
+    }
+
+    return counts;
+  }
+
+  @Override
+  public Map<String, Long> getLatencies() {
+    Map<String, Long> values = new LinkedHashMap<String, Long>();
+
+    for (Phase phase : Phase.values()) {
+      LatencyHistogram histogram = latencies[phase.ordinal()];
+      String prefix = phase.name().toLowerCase() + ".";
+
+      values.put(prefix + "mean", toMicros((long) histogram.getMean()));
+
+      for (double percentile : PERCENTILES) {
+        values.put(prefix + "p" + (int) percentile,
+            toMicros(histogram.getValueAtPercentile(percentile)));
+      }
+
+      values.put(prefix + "max", toMicros(histogram.getMax()));
+    }
+
+    return values;
+  }
+
+  private static long toMicros(long nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanos);
+  }
+}
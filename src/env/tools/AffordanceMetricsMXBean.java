@@ -0,0 +1,41 @@
+package tools;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link AffordanceMetrics}, registered with the platform MBean server
+ * under <code>tools:type=ThingMetrics,thing=...,title=...,affordance=...,operation=...</code>.
+ * Latencies are reported in microseconds.
+ *
+ */
+public interface AffordanceMetricsMXBean {
+
+  /**
+   * @return The URL of the Thing's TD, or the base URI of a Thing instance of a fleet.
+   */
+  String getThing();
+
+  /**
+   * @return The title of the Thing's TD, which may be shared by several Things.
+   */
+  String getTitle();
+
+  String getSemanticType();
+
+  String getOperationType();
+
+  long getRequestCount();
+
+  long getErrorCount();
+
+  /**
+   * @return The number of responses per status code.
+   */
+  Map<String, Long> getStatusCodeCounts();
+
+  /**
+   * @return The mean, 50th, 90th, 99th percentile, and maximum latency of each phase (lookup,
+   * encode, network, decode) and of whole operations, e.g. <code>network.p99</code>.
+   */
+  Map<String, Long> getLatencies();
+}
@@ -0,0 +1,69 @@
+package tools;
+
+/**
+ * The value of a {@link Counter}, together with the value last published to agents. Increments
+ * are accumulated until the number of pending increments reaches the publishing delta (a delta
+ * of 1 publishes each increment), or until they are published explicitly.
+ *
+ * Not thread-safe: the operations of a counter are dispatched one at a time by CArtAgO.
+ *
+ */
+public class BatchedCount {
+  private int value;
+  private int published;
+  private final int publishDelta;
+
+  /**
+   * @param initialValue The initial value, which is considered published.
+   * @param publishDelta The number of pending increments that triggers a publication (0 to
+   * publish only explicitly).
+   */
+  public BatchedCount(int initialValue, int publishDelta) {
+    this.value = initialValue;
+    this.published = initialValue;
+    this.publishDelta = publishDelta;
+  }
+
+  /**
+   * Adds an amount to the count.
+   *
+   * @param amount The amount to add.
+   * @return True if enough increments are pending to be published.
+   */
+  public boolean add(int amount) {
+    value += amount;
+    return publishDelta > 0 && Math.abs(value - published) >= publishDelta;
+  }
+
+  /**
+   * @return The exact value, including increments that were not published yet.
+   */
+  public int get() {
+    return value;
+  }
+
+  /**
+   * @return The value last published.
+   */
+  public int getPublished() {
+    return published;
+  }
+
+  /**
+   * @return True if the value changed since it was last published.
+   */
+  public boolean hasPending() {
+    return value != published;
+  }
+
+  /**
+   * Marks the current value as published.
+   *
+   * @return The increments since the last publication.
+   */
+  public int publish() {
+    int increments = value - published;
+    published = value;
+    return increments;
+  }
+}
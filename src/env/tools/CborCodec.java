@@ -0,0 +1,858 @@
+package tools;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import ch.unisg.ics.interactions.wot.td.schemas.ArraySchema;
+import ch.unisg.ics.interactions.wot.td.schemas.DataSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.ObjectSchema;
+import tools.PayloadCodec.ObjectValue;
+
+/**
+ * A CBOR (RFC 8949) codec compiled from a TD data schema, for Things that declare forms with the
+ * content type <code>application/cbor</code>. Codecs translate between the same values as {@link
+ * PayloadCodec} (primitives, <code>long[]</code> or <code>double[]</code> for arrays of integers
+ * or numbers, arbitrarily nested <code>Object[]</code>, and {@link ObjectValue}s for object
+ * payloads) and CBOR payloads. Codecs are compiled once per schema and are thread-safe; payloads
+ * are serialized into per-thread reusable buffers.
+ *
+ * Encoding uses definite lengths and the shortest encoding of integers, and encodes floating-point
+ * numbers in single precision if that is lossless. Decoding also accepts indefinite lengths, half
+ * precision floats, and tagged items (tags are ignored). Byte strings are not supported, since they
+ * have no equivalent in JSON payloads.
+ *
+ */
+public abstract class CborCodec {
+  /** The content type of CBOR payloads. */
+  public static final String CONTENT_TYPE = "application/cbor";
+
+  private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+  private static final int UNSIGNED = 0;
+  private static final int NEGATIVE = 1;
+  private static final int BYTES = 2;
+  private static final int TEXT = 3;
+  private static final int ARRAY = 4;
+  private static final int MAP = 5;
+  private static final int TAG = 6;
+  private static final int SIMPLE = 7;
+
+  private static final int INDEFINITE = 31;
+  private static final int BREAK = 0xff;
+
+  private static final Map<DataSchema, CborCodec> CODECS =
+      Collections.synchronizedMap(new WeakHashMap<DataSchema, CborCodec>());
+
+  private static final ThreadLocal<Buffer> BUFFERS = ThreadLocal.withInitial(() -> new Buffer());
+
+  private static final CborCodec UNTYPED = new UntypedCodec();
+
+  /**
+   * Retrieves the codec compiled for a data schema.
+   *
+   * @param schema A TD data schema.
+   * @return The codec for the schema.
+   */
+  public static CborCodec forSchema(DataSchema schema) {
+    CborCodec codec = CODECS.get(schema);
+
+    if (codec == null) {
+      codec = compile(schema);
+      CODECS.put(schema, codec);
+    }
+
+    return codec;
+  }
+
+  /**
+   * @param contentType A content type, possibly with parameters.
+   * @return True if the content type is the CBOR content type.
+   */
+  public static boolean isCbor(String contentType) {
+    if (contentType == null) {
+      return false;
+    }
+
+    int end = contentType.indexOf(';');
+    String mediaType = (end < 0 ? contentType : contentType.substring(0, end)).trim();
+
+    return mediaType.equalsIgnoreCase(CONTENT_TYPE);
+  }
+
+  private static CborCodec compile(DataSchema schema) {
+    if (schema == null || schema.getDatatype() == null) {
+      return UNTYPED;
+    }
+
+    switch (schema.getDatatype()) {
+      case DataSchema.BOOLEAN:
+      case DataSchema.INTEGER:
+      case DataSchema.NUMBER:
+      case DataSchema.STRING:
+        return new PrimitiveCodec(schema.getDatatype());
+      case DataSchema.ARRAY:
+        ArraySchema array = (ArraySchema) schema;
+        return PayloadCodec.isNumericArray(array) ? new NumericArrayCodec(array)
+            : new ArrayCodec(array);
+      case DataSchema.OBJECT:
+        return new ObjectCodec((ObjectSchema) schema);
+      default:
+        return UNTYPED;
+    }
+  }
+
+  /**
+   * Serializes a primitive or array payload.
+   *
+   * @param payload A primitive value, or an (arbitrarily nested) array of values.
+   * @return The CBOR payload.
+   * @throws IllegalArgumentException If the payload does not match the schema.
+   */
+  public byte[] encode(Object payload) {
+    Buffer buffer = BUFFERS.get();
+
+    try {
+      write(buffer, payload);
+      return buffer.drain();
+    } finally {
+      buffer.reset();
+    }
+  }
+
+  /**
+   * Serializes an object payload given as two lists: the semantic types that identify the
+   * properties of the object, and their values.
+   *
+   * @param tags IRIs that identify the properties of the object.
+   * @param values The values of the properties.
+   * @return The CBOR payload.
+   * @throws IllegalArgumentException If the schema is not an object schema.
+   */
+  public byte[] encodeObject(Object[] tags, Object[] values) {
+    throw new IllegalArgumentException("TD mismatch: illegal arguments, this affordance uses a "
+        + "data schema of type " + getDatatype());
+  }
+
+  /**
+   * Deserializes a CBOR payload into the same values as {@link PayloadCodec#decode(String)}.
+   *
+   * @param payload The CBOR payload.
+   * @return The decoded value.
+   * @throws IllegalArgumentException If the payload is not valid CBOR or does not match the schema.
+   */
+  public Object decode(byte[] payload) {
+    try {
+      Reader reader = new Reader(payload);
+      Object value = readTop(reader);
+
+      if (reader.position < payload.length) {
+        throw new IllegalStateException("Trailing bytes after the CBOR data item");
+      }
+
+      return value;
+    } catch (IllegalStateException | ArrayIndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Invalid payload for data schema of type "
+          + getDatatype() + ": " + e.getMessage(), e);
+    }
+  }
+
+  abstract String getDatatype();
+
+  abstract void write(Buffer out, Object value);
+
+  abstract Object read(Reader in);
+
+  /* Reads a top-level value. Object codecs return an ObjectValue instead of a map. */
+  Object readTop(Reader in) {
+    return read(in);
+  }
+
+  static void writeHeader(Buffer out, int majorType, long argument) {
+    int type = majorType << 5;
+
+    if (argument < 24) {
+      out.write(type | (int) argument);
+    } else if (argument <= 0xffL) {
+      out.write(type | 24);
+      out.write((int) argument);
+    } else if (argument <= 0xffffL) {
+      out.write(type | 25);
+      out.writeBigEndian(argument, 2);
+    } else if (argument <= 0xffffffffL) {
+      out.write(type | 26);
+      out.writeBigEndian(argument, 4);
+    } else {
+      out.write(type | 27);
+      out.writeBigEndian(argument, 8);
+    }
+  }
+
+  static void writeLong(Buffer out, long value) {
+    if (value >= 0) {
+      writeHeader(out, UNSIGNED, value);
+    } else {
+      // Negative integers are encoded as -1 - n
+      writeHeader(out, NEGATIVE, -1 - value);
+    }
+  }
+
+  static void writeDouble(Buffer out, double value) {
+    float single = (float) value;
+
+    if (single == value || Double.isNaN(value)) {
+      out.write((SIMPLE << 5) | 26);
+      out.writeBigEndian(Float.floatToIntBits(single) & 0xffffffffL, 4);
+    } else {
+      out.write((SIMPLE << 5) | 27);
+      out.writeBigEndian(Double.doubleToLongBits(value), 8);
+    }
+  }
+
+  static void writeString(Buffer out, String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeHeader(out, TEXT, bytes.length);
+    out.write(bytes);
+  }
+
+  static void writeInferred(Buffer out, Object value) {
+    if (value == null) {
+      out.write((SIMPLE << 5) | 22);
+    } else if (value instanceof Boolean) {
+      out.write((SIMPLE << 5) | ((Boolean) value ? 21 : 20));
+    } else if (value instanceof Byte || value instanceof Short || value instanceof Integer
+        || value instanceof Long) {
+      writeLong(out, ((Number) value).longValue());
+    } else if (value instanceof Number) {
+      writeDouble(out, ((Number) value).doubleValue());
+    } else if (value instanceof String) {
+      writeString(out, (String) value);
+    } else if (value instanceof Object[]) {
+      Object[] array = (Object[]) value;
+      writeHeader(out, ARRAY, array.length);
+      for (Object item : array) {
+        writeInferred(out, item);
+      }
+    } else if (value instanceof Collection<?>) {
+      Collection<?> items = (Collection<?>) value;
+      writeHeader(out, ARRAY, items.size());
+      for (Object item : items) {
+        writeInferred(out, item);
+      }
+    } else if (value instanceof Map<?, ?>) {
+      Map<?, ?> object = (Map<?, ?>) value;
+      writeHeader(out, MAP, object.size());
+      for (Map.Entry<?, ?> entry : object.entrySet()) {
+        writeString(out, String.valueOf(entry.getKey()));
+        writeInferred(out, entry.getValue());
+      }
+    } else {
+      throw new IllegalArgumentException("Unable to detect the datatype of payload: "
+          + value.getClass().getCanonicalName());
+    }
+  }
+
+  static Object readInferred(Reader in) {
+    int initial = in.peekInitial();
+    int majorType = initial >>> 5;
+
+    switch (majorType) {
+      case UNSIGNED:
+      case NEGATIVE:
+        return PayloadCodec.narrow(in.readLong());
+      case TEXT:
+        return in.readString();
+      case ARRAY:
+        Object[] items = new Object[8];
+        int count = 0;
+        long length = in.readContainerStart(ARRAY);
+        while (in.hasNext(count, length)) {
+          items = PayloadCodec.ensureCapacity(items, count);
+          items[count ++] = readInferred(in);
+        }
+        return PayloadCodec.trim(items, count);
+      case MAP:
+        Map<String, Object> object = new LinkedHashMap<String, Object>();
+        long size = in.readContainerStart(MAP);
+        for (int i = 0; in.hasNext(i, size); i ++) {
+          object.put(in.readString(), readInferred(in));
+        }
+        return object;
+      case TAG:
+        in.skipTag();
+        return readInferred(in);
+      case SIMPLE:
+        int additional = initial & 0x1f;
+        if (additional == 20 || additional == 21) {
+          return in.readBoolean();
+        } else if (additional == 22 || additional == 23) {
+          in.position ++;
+          return null;
+        }
+        return in.readDouble();
+      default:
+        throw new IllegalStateException("Unsupported CBOR major type: " + majorType);
+    }
+  }
+
+  /* Codec used when the schema does not constrain the datatype. */
+  private static class UntypedCodec extends CborCodec {
+
+    @Override
+    String getDatatype() {
+      return "untyped";
+    }
+
+    @Override
+    void write(Buffer out, Object value) {
+      writeInferred(out, value);
+    }
+
+    @Override
+    Object read(Reader in) {
+      return readInferred(in);
+    }
+  }
+
+  private static class PrimitiveCodec extends CborCodec {
+    private final String datatype;
+
+    PrimitiveCodec(String datatype) {
+      this.datatype = datatype;
+    }
+
+    @Override
+    String getDatatype() {
+      return datatype;
+    }
+
+    @Override
+    void write(Buffer out, Object value) {
+      if (value instanceof Boolean && DataSchema.BOOLEAN.equals(datatype)) {
+        writeInferred(out, value);
+      } else if ((value instanceof Byte || value instanceof Short || value instanceof Integer
+          || value instanceof Long)
+          && (DataSchema.INTEGER.equals(datatype) || DataSchema.NUMBER.equals(datatype))) {
+        writeLong(out, ((Number) value).longValue());
+      } else if ((value instanceof Float || value instanceof Double)
+          && DataSchema.NUMBER.equals(datatype)) {
+        writeDouble(out, ((Number) value).doubleValue());
+      } else if (value instanceof String && DataSchema.STRING.equals(datatype)) {
+        writeString(out, (String) value);
+      } else if (value == null) {
+        throw new IllegalArgumentException("The payload cannot be null.");
+      } else {
+        throw PayloadCodec.mismatch(datatype, value);
+      }
+    }
+
+    @Override
+    Object read(Reader in) {
+      switch (datatype) {
+        case DataSchema.BOOLEAN:
+          return in.readBoolean();
+        case DataSchema.INTEGER:
+          return PayloadCodec.narrow(in.readLong());
+        case DataSchema.NUMBER:
+          return in.readDouble();
+        default:
+          return in.readString();
+      }
+    }
+  }
+
+  private static class ArrayCodec extends CborCodec {
+    private final CborCodec[] items;
+
+    ArrayCodec(ArraySchema schema) {
+      List<DataSchema> itemSchemas = schema.getItems();
+      this.items = new CborCodec[itemSchemas.size()];
+
+      for (int i = 0; i < items.length; i ++) {
+        items[i] = forSchema(itemSchemas.get(i));
+      }
+    }
+
+    @Override
+    String getDatatype() {
+      return DataSchema.ARRAY;
+    }
+
+    /* A single item schema applies to all items, multiple item schemas apply by position. */
+    private CborCodec itemCodec(int position) {
+      if (items.length == 0) {
+        return UNTYPED;
+      }
+
+      return position < items.length ? items[position] : items[items.length - 1];
+    }
+
+    @Override
+    void write(Buffer out, Object value) {
+      if (value instanceof Object[]) {
+        Object[] array = (Object[]) value;
+        writeHeader(out, ARRAY, array.length);
+        for (int i = 0; i < array.length; i ++) {
+          itemCodec(i).write(out, array[i]);
+        }
+      } else if (value instanceof Collection<?>) {
+        Collection<?> collection = (Collection<?>) value;
+        writeHeader(out, ARRAY, collection.size());
+        int i = 0;
+        for (Object item : collection) {
+          itemCodec(i ++).write(out, item);
+        }
+      } else {
+        // A single value sent for an array schema
+        writeHeader(out, ARRAY, 1);
+        itemCodec(0).write(out, value);
+      }
+    }
+
+    @Override
+    Object read(Reader in) {
+      long length = in.readContainerStart(ARRAY);
+      Object[] values = new Object[length < 0 ? 16 : (int) Math.min(length, 1024)];
+      int size = 0;
+
+      while (in.hasNext(size, length)) {
+        if (size == values.length) {
+          values = Arrays.copyOf(values, size * 2);
+        }
+        values[size] = itemCodec(size).read(in);
+        size ++;
+      }
+
+      return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+  }
+
+  /* Codec for arrays of integers or numbers, decoded into long[] or double[] without boxing. */
+  private static class NumericArrayCodec extends ArrayCodec {
+    private final boolean integers;
+
+    NumericArrayCodec(ArraySchema schema) {
+      super(schema);
+      this.integers = DataSchema.INTEGER.equals(schema.getItems().get(0).getDatatype());
+    }
+
+    @Override
+    void write(Buffer out, Object value) {
+      if (value instanceof long[]) {
+        long[] array = (long[]) value;
+        writeHeader(out, ARRAY, array.length);
+        for (long item : array) {
+          writeLong(out, item);
+        }
+      } else if (value instanceof double[]) {
+        if (integers) {
+          throw PayloadCodec.mismatch(DataSchema.INTEGER, value);
+        }
+
+        double[] array = (double[]) value;
+        writeHeader(out, ARRAY, array.length);
+        for (double item : array) {
+          writeDouble(out, item);
+        }
+      } else {
+        super.write(out, value);
+      }
+    }
+
+    @Override
+    Object read(Reader in) {
+      long length = in.readContainerStart(ARRAY);
+      int capacity = length < 0 ? 16 : (int) Math.min(length, 1024);
+      int size = 0;
+
+      if (integers) {
+        long[] values = new long[capacity];
+        while (in.hasNext(size, length)) {
+          if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(16, size * 2));
+          }
+          values[size ++] = in.readLong();
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+      }
+
+      double[] values = new double[capacity];
+      while (in.hasNext(size, length)) {
+        if (size == values.length) {
+          values = Arrays.copyOf(values, Math.max(16, size * 2));
+        }
+        values[size ++] = in.readDouble();
+      }
+      return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+  }
+
+  private static class ObjectCodec extends CborCodec {
+    private final String[] names;
+    private final String[] tags;
+    private final CborCodec[] properties;
+
+    ObjectCodec(ObjectSchema schema) {
+      Map<String, DataSchema> schemas = schema.getProperties();
+      this.names = new String[schemas.size()];
+      this.tags = new String[schemas.size()];
+      this.properties = new CborCodec[schemas.size()];
+
+      int i = 0;
+      for (Map.Entry<String, DataSchema> property : schemas.entrySet()) {
+        names[i] = property.getKey();
+        tags[i] = property.getKey();
+
+        for (String semanticType : property.getValue().getSemanticTypes()) {
+          tags[i] = semanticType;
+          break;
+        }
+
+        properties[i] = forSchema(property.getValue());
+        i ++;
+      }
+    }
+
+    @Override
+    String getDatatype() {
+      return DataSchema.OBJECT;
+    }
+
+    @Override
+    public byte[] encodeObject(Object[] payloadTags, Object[] values) {
+      Buffer buffer = BUFFERS.get();
+
+      try {
+        int[] positions = new int[names.length];
+        int count = 0;
+
+        for (int i = 0; i < names.length; i ++) {
+          positions[i] = indexOf(payloadTags, tags[i]);
+
+          if (positions[i] >= 0 && positions[i] < values.length) {
+            count ++;
+          }
+        }
+
+        // Definite-length maps need the number of entries up front
+        writeHeader(buffer, MAP, count);
+
+        for (int i = 0; i < names.length; i ++) {
+          if (positions[i] >= 0 && positions[i] < values.length) {
+            writeString(buffer, names[i]);
+            properties[i].write(buffer, values[positions[i]]);
+          }
+        }
+
+        return buffer.drain();
+      } finally {
+        buffer.reset();
+      }
+    }
+
+    @Override
+    void write(Buffer out, Object value) {
+      writeInferred(out, value);
+    }
+
+    @Override
+    Object read(Reader in) {
+      Map<String, Object> object = new LinkedHashMap<String, Object>();
+      long size = in.readContainerStart(MAP);
+
+      for (int i = 0; in.hasNext(i, size); i ++) {
+        String name = in.readString();
+        int position = indexOf(names, name);
+        object.put(position >= 0 ? tags[position] : name,
+            position >= 0 ? properties[position].read(in) : readInferred(in));
+      }
+
+      return object;
+    }
+
+    @Override
+    Object readTop(Reader in) {
+      Object[] payloadTags = new Object[names.length];
+      Object[] values = new Object[names.length];
+      int count = 0;
+      long size = in.readContainerStart(MAP);
+
+      for (int i = 0; in.hasNext(i, size); i ++) {
+        String name = in.readString();
+        int position = indexOf(names, name);
+
+        if (position >= 0) {
+          payloadTags = PayloadCodec.ensureCapacity(payloadTags, count);
+          values = PayloadCodec.ensureCapacity(values, count);
+          payloadTags[count] = tags[position];
+          values[count] = properties[position].read(in);
+          count ++;
+        } else {
+          // Properties not described by the schema are not exposed to agents
+          readInferred(in);
+        }
+      }
+
+      return new ObjectValue(PayloadCodec.trim(payloadTags, count),
+          PayloadCodec.trim(values, count));
+    }
+
+    private static int indexOf(Object[] array, Object value) {
+      for (int i = 0; i < array.length; i ++) {
+        if (value.equals(array[i])) {
+          return i;
+        }
+      }
+
+      return -1;
+    }
+  }
+
+  /* A reusable, unsynchronized byte buffer. */
+  static class Buffer {
+    private byte[] bytes = new byte[256];
+    private int size;
+
+    void write(int b) {
+      ensureCapacity(1);
+      bytes[size ++] = (byte) b;
+    }
+
+    void write(byte[] data) {
+      ensureCapacity(data.length);
+      System.arraycopy(data, 0, bytes, size, data.length);
+      size += data.length;
+    }
+
+    void writeBigEndian(long value, int length) {
+      ensureCapacity(length);
+      for (int shift = (length - 1) * 8; shift >= 0; shift -= 8) {
+        bytes[size ++] = (byte) (value >>> shift);
+      }
+    }
+
+    byte[] drain() {
+      return Arrays.copyOf(bytes, size);
+    }
+
+    void reset() {
+      if (bytes.length > MAX_RETAINED_BUFFER) {
+        bytes = new byte[256];
+      }
+      size = 0;
+    }
+
+    private void ensureCapacity(int extra) {
+      if (size + extra > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+      }
+    }
+  }
+
+  /* A reader over a single CBOR data item. Malformed input raises an IllegalStateException. */
+  static class Reader {
+    private final byte[] bytes;
+    private int position;
+
+    Reader(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    int peekInitial() {
+      if (position >= bytes.length) {
+        throw new IllegalStateException("Unexpected end of CBOR data");
+      }
+
+      return bytes[position] & 0xff;
+    }
+
+    boolean readBoolean() {
+      int initial = readInitial(SIMPLE);
+
+      if (initial == ((SIMPLE << 5) | 20)) {
+        return false;
+      } else if (initial == ((SIMPLE << 5) | 21)) {
+        return true;
+      }
+
+      throw new IllegalStateException("Expected a boolean, found initial byte " + initial);
+    }
+
+    long readLong() {
+      int majorType = peekInitial() >>> 5;
+
+      if (majorType == TAG) {
+        skipTag();
+        return readLong();
+      } else if (majorType != UNSIGNED && majorType != NEGATIVE) {
+        throw new IllegalStateException("Expected an integer, found major type " + majorType);
+      }
+
+      long argument = readArgument(bytes[position ++] & 0xff);
+
+      if (argument < 0) {
+        throw new IllegalStateException("Integer out of range");
+      }
+
+      return majorType == UNSIGNED ? argument : -1 - argument;
+    }
+
+    double readDouble() {
+      int initial = peekInitial();
+      int majorType = initial >>> 5;
+
+      if (majorType == TAG) {
+        skipTag();
+        return readDouble();
+      } else if (majorType == UNSIGNED || majorType == NEGATIVE) {
+        // Numbers without a fractional part may be sent as integers
+        return readLong();
+      } else if (majorType != SIMPLE) {
+        throw new IllegalStateException("Expected a number, found major type " + majorType);
+      }
+
+      position ++;
+
+      switch (initial & 0x1f) {
+        case 25:
+          return halfToDouble((int) readBigEndian(2));
+        case 26:
+          return Float.intBitsToFloat((int) readBigEndian(4));
+        case 27:
+          return Double.longBitsToDouble(readBigEndian(8));
+        default:
+          throw new IllegalStateException("Expected a number, found initial byte " + initial);
+      }
+    }
+
+    String readString() {
+      int initial = readInitial(TEXT);
+
+      if ((initial & 0x1f) != INDEFINITE) {
+        int length = toLength(readArgument(initial));
+        String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+      }
+
+      // Indefinite-length strings are sequences of definite-length chunks
+      StringBuilder builder = new StringBuilder();
+      while (peekInitial() != BREAK) {
+        builder.append(readString());
+      }
+      position ++;
+
+      return builder.toString();
+    }
+
+    /* Reads the head of an array or map. Returns its length, or -1 for indefinite lengths. */
+    long readContainerStart(int majorType) {
+      int initial = readInitial(majorType);
+
+      if ((initial & 0x1f) == INDEFINITE) {
+        return -1;
+      }
+
+      return toLength(readArgument(initial));
+    }
+
+    /* Checks whether a container has more items, and consumes the break of indefinite lengths. */
+    boolean hasNext(int read, long length) {
+      if (length >= 0) {
+        return read < length;
+      }
+
+      if (peekInitial() == BREAK) {
+        position ++;
+        return false;
+      }
+
+      return true;
+    }
+
+    void skipTag() {
+      readArgument(bytes[position ++] & 0xff);
+    }
+
+    private int readInitial(int majorType) {
+      int initial = peekInitial();
+
+      while (initial >>> 5 == TAG) {
+        skipTag();
+        initial = peekInitial();
+      }
+
+      if (initial >>> 5 != majorType) {
+        throw new IllegalStateException("Expected CBOR major type " + majorType + ", found "
+            + (initial >>> 5) + (initial >>> 5 == BYTES ? " (byte strings are not supported)"
+            : ""));
+      }
+
+      position ++;
+      return initial;
+    }
+
+    private long readArgument(int initial) {
+      int additional = initial & 0x1f;
+
+      if (additional < 24) {
+        return additional;
+      }
+
+      switch (additional) {
+        case 24:
+          return readBigEndian(1);
+        case 25:
+          return readBigEndian(2);
+        case 26:
+          return readBigEndian(4);
+        case 27:
+          return readBigEndian(8);
+        default:
+          throw new IllegalStateException("Invalid additional information: " + additional);
+      }
+    }
+
+    private long readBigEndian(int length) {
+      if (position + length > bytes.length) {
+        throw new IllegalStateException("Unexpected end of CBOR data");
+      }
+
+      long value = 0;
+      for (int i = 0; i < length; i ++) {
+        value = (value << 8) | (bytes[position ++] & 0xff);
+      }
+
+      return value;
+    }
+
+    private int toLength(long length) {
+      if (length < 0 || length > bytes.length - position) {
+        throw new IllegalStateException("Invalid length: " + length);
+      }
+
+      return (int) length;
+    }
+
+    private static double halfToDouble(int half) {
+      int exponent = (half >> 10) & 0x1f;
+      int mantissa = half & 0x3ff;
+      double value;
+
+      if (exponent == 0) {
+        value = mantissa * Math.pow(2, -24);
+      } else if (exponent == 31) {
+        value = mantissa == 0 ? Double.POSITIVE_INFINITY : Double.NaN;
+      } else {
+        value = (mantissa + 1024) * Math.pow(2, exponent - 25);
+      }
+
+      return (half & 0x8000) == 0 ? value : -value;
+    }
+  }
+}
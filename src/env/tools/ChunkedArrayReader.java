@@ -0,0 +1,176 @@
+package tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import ch.unisg.ics.interactions.wot.td.schemas.ArraySchema;
+
+/**
+ * Reads the items of an array payload in chunks of bounded size, such that large arrays (e.g.,
+ * historical data with many samples) are never held in memory at once. JSON payloads are parsed
+ * incrementally from the response stream, and items are decoded into the same values as with
+ * {@link PayloadCodec}. CBOR payloads are decoded in full and then handed out in chunks.
+ *
+ * Readers are not thread-safe.
+ *
+ */
+public class ChunkedArrayReader implements Closeable {
+  private final Closeable source;
+  private final Optional<JsonReader> json;
+  private final PayloadCodec codec;
+  private Object[] decoded;
+  private boolean started;
+  private boolean exhausted;
+  private int position;
+
+  private ChunkedArrayReader(Closeable source, Optional<JsonReader> json, PayloadCodec codec,
+      Object[] decoded) {
+    this.source = source;
+    this.json = json;
+    this.codec = codec;
+    this.decoded = decoded;
+  }
+
+  /**
+   * Creates a reader over the payload of a response stream. The reader takes ownership of the
+   * stream.
+   *
+   * @param response A response with an array payload.
+   * @param schema The schema of the array.
+   * @return The reader.
+   * @throws IOException If a CBOR payload could not be read.
+   * @throws IllegalArgumentException If a CBOR payload does not match the schema.
+   */
+  public static ChunkedArrayReader of(ThingResponseStream response, ArraySchema schema)
+      throws IOException {
+    if (!CborCodec.isCbor(response.getContentType().orElse(null))) {
+      JsonReader reader = new JsonReader(new InputStreamReader(response.getPayload(),
+          StandardCharsets.UTF_8));
+      reader.setLenient(true);
+
+      return new ChunkedArrayReader(response, Optional.of(reader), PayloadCodec.forSchema(schema),
+          null);
+    }
+
+    try {
+      Object value = PayloadCodec.toAgentValue(CborCodec.forSchema(schema)
+          .decode(readFully(response.getPayload())));
+      Object[] items = value instanceof Object[] ? (Object[]) value : new Object[] { value };
+
+      return new ChunkedArrayReader(response, Optional.empty(), null, items);
+    } catch (IOException | RuntimeException e) {
+      response.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Reads the next chunk of items.
+   *
+   * @param maxItems The maximum number of items in the chunk.
+   * @return The next items, or an empty optional if all items were read.
+   * @throws IOException If the payload could not be read.
+   * @throws IllegalArgumentException If the payload is not an array or does not match the schema.
+   */
+  public Optional<Object[]> next(int maxItems) throws IOException {
+    if (maxItems <= 0) {
+      throw new IllegalArgumentException("The chunk size must be positive: " + maxItems);
+    }
+
+    if (exhausted) {
+      return Optional.empty();
+    }
+
+    if (!json.isPresent()) {
+      int end = Math.min(decoded.length, position + maxItems);
+      Object[] chunk = Arrays.copyOfRange(decoded, position, end);
+      position = end;
+      exhausted = position == decoded.length;
+
+      if (exhausted) {
+        decoded = null;
+      }
+
+      return chunk.length == 0 ? Optional.empty() : Optional.of(chunk);
+    }
+
+    try {
+      return nextFromJson(json.get(), maxItems);
+    } catch (IllegalStateException | NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid payload for data schema of type array: "
+          + e.getMessage(), e);
+    }
+  }
+
+  private Optional<Object[]> nextFromJson(JsonReader reader, int maxItems) throws IOException {
+    if (!started) {
+      reader.beginArray();
+      started = true;
+    }
+
+    // Chunks are allocated for small sizes first, such that large chunk sizes are cheap to ask for
+    Object[] chunk = new Object[Math.min(maxItems, 256)];
+    int size = 0;
+
+    while (size < maxItems && reader.peek() != JsonToken.END_ARRAY) {
+      if (size == chunk.length) {
+        chunk = Arrays.copyOf(chunk, Math.min(maxItems, size * 2));
+      }
+
+      chunk[size ++] = PayloadCodec.toAgentValue(codec.readItem(reader, position ++));
+    }
+
+    if (reader.peek() == JsonToken.END_ARRAY) {
+      reader.endArray();
+      exhausted = true;
+    }
+
+    if (size == 0) {
+      return Optional.empty();
+    }
+
+    return Optional.of(size == chunk.length ? chunk : Arrays.copyOf(chunk, size));
+  }
+
+  /**
+   * @return True if all items were read.
+   */
+  public boolean isExhausted() {
+    return exhausted;
+  }
+
+  /**
+   * @return The number of items read so far.
+   */
+  public int getPosition() {
+    return position;
+  }
+
+  @Override
+  public void close() throws IOException {
+    exhausted = true;
+    decoded = null;
+    source.close();
+  }
+
+  private static byte[] readFully(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+
+    while ((read = in.read(buffer)) >= 0) {
+      out.write(buffer, 0, read);
+    }
+
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,111 @@
+package tools;
+
+/**
+ * A circuit breaker for the requests sent to one host. The breaker opens after a number of
+ * consecutive failures, such that further requests fail fast instead of waiting for the host to
+ * time out. Once the breaker has been open for a given duration, a single probe request is let
+ * through (half-open state): the breaker closes if the probe succeeds, and opens again otherwise.
+ *
+ */
+public class CircuitBreaker {
+  /** The states of a circuit breaker. */
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN;
+
+    /**
+     * @return The name of the state used for observable properties (e.g., <code>half_open</code>).
+     */
+    public String label() {
+      return name().toLowerCase();
+    }
+  }
+
+  private final int failureThreshold;
+  private final long openMillis;
+  private State state;
+  private int failures;
+  private long openedAt;
+  private boolean probing;
+
+  /**
+   * @param failureThreshold The number of consecutive failures after which the breaker opens.
+   * @param openMillis The time in milliseconds after which an open breaker lets a probe through.
+   */
+  public CircuitBreaker(int failureThreshold, long openMillis) {
+    this.failureThreshold = failureThreshold;
+    this.openMillis = openMillis;
+    this.state = State.CLOSED;
+  }
+
+  /**
+   * @return True if a request can be sent. If the breaker is half-open, only the first caller is
+   * allowed to send its request until the outcome of that probe is recorded.
+   */
+  public synchronized boolean tryAcquire() {
+    if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+      state = State.HALF_OPEN;
+      probing = false;
+    }
+
+    switch (state) {
+      case CLOSED:
+        return true;
+      case HALF_OPEN:
+        if (probing) {
+          return false;
+        }
+        probing = true;
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  public synchronized void recordSuccess() {
+    state = State.CLOSED;
+    failures = 0;
+    probing = false;
+  }
+
+  /**
+   * Gives back a request acquired via {@link #tryAcquire()} that was not sent, without recording
+   * an outcome.
+   */
+  public synchronized void release() {
+    probing = false;
+  }
+
+  public synchronized void recordFailure() {
+    failures ++;
+
+    if (state == State.HALF_OPEN || failures >= failureThreshold) {
+      state = State.OPEN;
+      openedAt = System.currentTimeMillis();
+      probing = false;
+    }
+  }
+
+  /**
+   * @return The current state. An open breaker is reported as half-open once its open duration
+   * has elapsed.
+   */
+  public synchronized State getState() {
+    if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+      return State.HALF_OPEN;
+    }
+
+    return state;
+  }
+
+  /**
+   * @return The time in milliseconds until an open breaker lets a probe through, or 0 if the
+   * breaker is not open.
+   */
+  public synchronized long getRemainingOpenTime() {
+    if (state != State.OPEN) {
+      return 0;
+    }
+
+    return Math.max(0, openedAt + openMillis - System.currentTimeMillis());
+  }
+}
@@ -1,19 +1,136 @@
 package tools;
 
 import cartago.Artifact;
+import cartago.INTERNAL_OPERATION;
 import cartago.OPERATION;
-import cartago.ObsProperty;
+import cartago.OpFeedbackParam;
 
+/**
+ * A counter shared by agents. By default, each increment updates the observable property
+ * <code>count</code> and emits a <code>tick</code> signal.
+ *
+ * When many agents increment the counter at a high rate, each of these updates is pushed to every
+ * focusing agent. The counter can instead be created with a publishing interval and delta: the
+ * increments are then accumulated, and <code>count</code> is updated (together with a
+ * <code>tick(Increments)</code> signal) only every interval, or as soon as the given number of
+ * increments is pending. The exact value can be read at any time with <code>getCount</code>.
+ *
+ * Note that CArtAgO still dispatches the operations of an artifact one at a time, so batching
+ * mostly saves the cost of updating and perceiving the observable property.
+ *
+ */
 public class Counter extends Artifact {
+  private BatchedCount count;
+  private boolean batched;
+  private long publishInterval;
+  private boolean active;
+
   void init(int initialValue) {
+    // Each increment is published
+    this.count = new BatchedCount(initialValue, 1);
+    this.batched = false;
     defineObsProperty("count", initialValue);
   }
 
+  /**
+   * Initializes a counter that publishes its value in batches.
+   *
+   * @param initialValue The initial value.
+   * @param publishIntervalMillis The interval at which pending increments are published, in
+   * milliseconds (0 to publish only by delta).
+   * @param publishDelta The number of pending increments that triggers a publication before the
+   * interval elapses (0 to publish only by interval).
+   */
+  void init(int initialValue, int publishIntervalMillis, int publishDelta) {
+    try {
+      validatePublishing(publishIntervalMillis, publishDelta);
+    } catch (IllegalArgumentException e) {
+      failed(e.getMessage());
+    }
+
+    this.count = new BatchedCount(initialValue, publishDelta);
+    this.batched = true;
+    this.publishInterval = publishIntervalMillis;
+    this.active = true;
+    defineObsProperty("count", initialValue);
+
+    if (publishInterval > 0) {
+      execInternalOp("publishPeriodically");
+    }
+  }
+
   @OPERATION
   void inc() {
-    ObsProperty prop = getObsProperty("count");
-    prop.updateValue(prop.intValue()+1);
-    signal("tick");
+    add(1);
+  }
+
+  /**
+   * CArtAgO operation that adds an amount to the counter, e.g. increments aggregated by an agent.
+   *
+   * @param amount The amount to add.
+   */
+  @OPERATION
+  void add(int amount) {
+    if (count.add(amount)) {
+      publish();
+    }
+  }
+
+  /**
+   * CArtAgO operation that reads the exact value of the counter, including increments that were
+   * not published yet.
+   *
+   * @param count The value of the counter.
+   */
+  @OPERATION
+  void getCount(OpFeedbackParam<Integer> value) {
+    value.set(count.get());
   }
-}
 
+  /**
+   * CArtAgO operation that publishes pending increments immediately.
+   */
+  @OPERATION
+  void flush() {
+    publish();
+  }
+
+  @INTERNAL_OPERATION
+  void publishPeriodically() {
+    while (active) {
+      // The artifact is released while waiting, such that increments can proceed
+      await_time(publishInterval);
+      publish();
+    }
+  }
+
+  /* Checks the publishing settings before the counter is initialized with them. */
+  static void validatePublishing(int publishIntervalMillis, int publishDelta) {
+    if (publishIntervalMillis < 0 || publishDelta < 0
+        || (publishIntervalMillis == 0 && publishDelta == 0)) {
+      throw new IllegalArgumentException("Invalid publishing interval or delta: "
+          + publishIntervalMillis + ", " + publishDelta);
+    }
+  }
+
+  @Override
+  protected void dispose() {
+    active = false;
+  }
+
+  /* Updates the observable property and signals the increments since the last publication. */
+  private void publish() {
+    if (!count.hasPending()) {
+      return;
+    }
+
+    getObsProperty("count").updateValue(count.get());
+    int increments = count.publish();
+
+    if (batched) {
+      signal("tick", increments);
+    } else {
+      signal("tick");
+    }
+  }
+}
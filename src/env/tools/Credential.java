@@ -0,0 +1,108 @@
+package tools;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.hc.core5.http.HttpHeaders;
+
+import ch.unisg.ics.interactions.wot.td.security.APIKeySecurityScheme;
+import ch.unisg.ics.interactions.wot.td.security.APIKeySecurityScheme.TokenLocation;
+import ch.unisg.ics.interactions.wot.td.security.SecurityScheme;
+
+/**
+ * A credential used by Thing artifacts to authenticate requests. Credentials translate into
+ * request headers that are built once (per security scheme, for API keys) and then added to each
+ * request as they are, such that authenticating a request does not allocate or block.
+ *
+ */
+public abstract class Credential {
+  private static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+
+  /**
+   * @param scheme The security scheme that applies to a request, as resolved in the TD.
+   * @return The headers that authenticate the request. The map must not be modified.
+   */
+  public abstract Map<String, String> headersFor(Optional<SecurityScheme> scheme);
+
+  /**
+   * Called before a request authenticated with this credential is issued.
+   *
+   * @throws IOException If the credential can no longer authenticate requests (e.g., a token
+   * expired and could not be refreshed).
+   */
+  public void check() throws IOException { }
+
+  /**
+   * Called when a request authenticated with this credential was rejected with status 401 (e.g.,
+   * because a token was revoked before its expiry).
+   */
+  public void onUnauthorized() { }
+
+  /**
+   * Releases the resources held by this credential, if any.
+   */
+  public void release() { }
+
+  /**
+   * Creates a credential for the API key security scheme declared in a TD. Only API keys sent in
+   * request headers are currently supported.
+   *
+   * @param token The API key.
+   * @return The credential.
+   */
+  public static Credential apiKey(String token) {
+    return new APIKeyCredential(token);
+  }
+
+  /**
+   * Creates a credential that sends a static bearer token (RFC 6750) with all requests.
+   *
+   * @param token The bearer token.
+   * @return The credential.
+   */
+  public static Credential bearer(String token) {
+    Map<String, String> headers = bearerHeaders(token);
+
+    return new Credential() {
+      @Override
+      public Map<String, String> headersFor(Optional<SecurityScheme> scheme) {
+        return headers;
+      }
+    };
+  }
+
+  static Map<String, String> bearerHeaders(String token) {
+    return Collections.singletonMap(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+  }
+
+  private static class APIKeyCredential extends Credential {
+    private final String token;
+    private final Map<SecurityScheme, Map<String, String>> headers;
+
+    APIKeyCredential(String token) {
+      this.token = token;
+      this.headers = new ConcurrentHashMap<SecurityScheme, Map<String, String>>();
+    }
+
+    @Override
+    public Map<String, String> headersFor(Optional<SecurityScheme> scheme) {
+      if (!scheme.isPresent() || !(scheme.get() instanceof APIKeySecurityScheme)) {
+        return NO_HEADERS;
+      }
+
+      // Schemes are shared by all affordances resolved from a TD, so this is built once per TD
+      return headers.computeIfAbsent(scheme.get(), key -> {
+        APIKeySecurityScheme apiKeyScheme = (APIKeySecurityScheme) key;
+
+        if (apiKeyScheme.getIn() != TokenLocation.HEADER || !apiKeyScheme.getName().isPresent()) {
+          return NO_HEADERS;
+        }
+
+        return Collections.singletonMap(apiKeyScheme.getName().get(), token);
+      });
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import cartago.IBlockingCmd;
+
+/**
+ * Blocking command used to issue the same operation on many targets concurrently, without holding
+ * the artifact's lock. At most <code>parallelism</code> targets are in flight at once, and each
+ * target has its own timeout that starts when its operation is dispatched, such that the wall time
+ * is close to that of the slowest target rather than the sum over all targets.
+ *
+ * Each target reports a result (e.g., a response) or, if it failed, timed out, or could not be
+ * dispatched, the reason why it has no result.
+ *
+ * @param <T> The type of results.
+ */
+class FanOutCmd<T> implements IBlockingCmd {
+  /* Time given to a target after its request timeout, e.g. to release its connection. */
+  private static final long GRACE_MILLIS = 1000;
+
+  private final List<Callable<T>> targets;
+  private final int parallelism;
+  private final long timeoutMillis;
+  private final List<T> results;
+  private final String[] errors;
+
+  /**
+   * @param targets The operations to be performed, one per target. Each operation should give up
+   * after at most <code>timeoutMillis</code> (e.g., via the response timeout of its request).
+   * @param parallelism The maximum number of targets in flight at once.
+   * @param timeoutMillis The timeout per target in milliseconds.
+   */
+  FanOutCmd(List<Callable<T>> targets, int parallelism, long timeoutMillis) {
+    this.targets = targets;
+    this.parallelism = parallelism;
+    this.timeoutMillis = timeoutMillis;
+    this.results = new ArrayList<T>();
+    this.errors = new String[targets.size()];
+
+    for (int i = 0; i < targets.size(); i ++) {
+      results.add(null);
+      errors[i] = "Not dispatched: earlier targets did not complete within " + timeoutMillis
+          + " ms.";
+    }
+  }
+
+  /**
+   * @param index The index of a target.
+   * @return The result of the target, if it completed.
+   */
+  Optional<T> getResult(int index) {
+    return Optional.ofNullable(results.get(index));
+  }
+
+  /**
+   * @param index The index of a target.
+   * @return The reason why the target has no result, if it has none.
+   */
+  Optional<String> getError(int index) {
+    return results.get(index) == null ? Optional.of(errors[index]) : Optional.empty();
+  }
+
+  /**
+   * @param cmd A command that issued requests.
+   * @return The status code received from each target, or 0 for targets without a response.
+   */
+  static int[] statusCodesOf(FanOutCmd<ThingResponse> cmd) {
+    int[] statusCodes = new int[cmd.targets.size()];
+
+    for (int i = 0; i < statusCodes.length; i ++) {
+      statusCodes[i] = cmd.getResult(i).map(ThingResponse::getStatusCode).orElse(0);
+    }
+
+    return statusCodes;
+  }
+
+  @Override
+  public void exec() {
+    Semaphore permits = new Semaphore(parallelism);
+    List<Future<T>> futures = new ArrayList<Future<T>>();
+    long[] deadlines = new long[targets.size()];
+
+    try {
+      for (int i = 0; i < targets.size(); i ++) {
+        // Give up on dispatching if all permits are held by targets that do not complete
+        if (!permits.tryAcquire(timeoutMillis + GRACE_MILLIS, TimeUnit.MILLISECONDS)) {
+          break;
+        }
+
+        Callable<T> target = targets.get(i);
+        deadlines[i] = System.currentTimeMillis() + timeoutMillis + GRACE_MILLIS;
+        futures.add(ThingExecutors.requests().submit(() -> {
+          try {
+            return target.call();
+          } finally {
+            permits.release();
+          }
+        }));
+      }
+
+      for (int i = 0; i < futures.size(); i ++) {
+        await(i, futures.get(i), deadlines[i]);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void await(int index, Future<T> future, long deadline) throws InterruptedException {
+    try {
+      long remaining = Math.max(0, deadline - System.currentTimeMillis());
+      results.set(index, future.get(remaining, TimeUnit.MILLISECONDS));
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      errors[index] = cause.getMessage() != null ? cause.getMessage()
+          : cause.getClass().getSimpleName();
+    } catch (TimeoutException e) {
+      future.cancel(true);
+      errors[index] = "No result within " + timeoutMillis + " ms.";
+    }
+  }
+}
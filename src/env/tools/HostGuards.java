@@ -0,0 +1,103 @@
+package tools;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A JVM-wide registry of the circuit breakers and bulkheads that guard the hosts of Things, keyed
+ * by host authority (e.g., <code>localhost:1080</code>). All {@link ResilientTransport}s share
+ * the guards of a host, such that a breaker counts the failures seen by all artifacts that
+ * interact with the host, and a bulkhead caps the concurrent requests of all of them.
+ *
+ * A host's guards are created with the settings of the first policy that uses them, and are
+ * replaced when a transport that already sent requests to the host is given a new policy.
+ *
+ */
+public class HostGuards {
+  private static final HostGuards INSTANCE = new HostGuards();
+
+  private final Map<String, Guard> guards;
+
+  HostGuards() {
+    this.guards = new ConcurrentHashMap<String, Guard>();
+  }
+
+  public static HostGuards getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Retrieves the guards of a host, and creates the guards enabled by a policy if the host does
+   * not have them yet.
+   *
+   * @param host The host authority, or null for targets without an authority (e.g., URNs).
+   * @param policy The policy of the transport that sends a request to the host.
+   * @return The guards of the host.
+   */
+  Guard get(String host, ResilientTransport.Policy policy) {
+    String key = keyOf(host);
+    Guard guard = guards.get(key);
+
+    if (guard != null && guard.covers(policy)) {
+      return guard;
+    }
+
+    return guards.compute(key, (name, existing) -> existing != null && existing.covers(policy)
+        ? existing : new Guard(policy, existing));
+  }
+
+  /**
+   * Replaces the guards of a host with guards created with the settings of a policy.
+   *
+   * @param host The host authority.
+   * @param policy The new policy.
+   */
+  void reset(String host, ResilientTransport.Policy policy) {
+    guards.put(keyOf(host), new Guard(policy, null));
+  }
+
+  /**
+   * @param host The host authority.
+   * @return The breaker of the host, if a policy that uses breakers sent requests to the host.
+   */
+  CircuitBreaker getCircuitBreaker(String host) {
+    Guard guard = guards.get(keyOf(host));
+    return guard == null ? null : guard.breaker;
+  }
+
+  private static String keyOf(String host) {
+    // Targets without an authority share their guards
+    return host == null ? "" : host;
+  }
+
+  /** The breaker and the bulkhead of a host. Either one is null if it is disabled. */
+  static class Guard {
+    final CircuitBreaker breaker;
+    final Semaphore bulkhead;
+
+    /* Keeps the guards of the previous guards, and creates the missing ones a policy enables. */
+    private Guard(ResilientTransport.Policy policy, Guard previous) {
+      if (previous != null && previous.breaker != null) {
+        this.breaker = previous.breaker;
+      } else if (policy.usesBreaker()) {
+        this.breaker = new CircuitBreaker(policy.getFailureThreshold(), policy.getOpenDuration());
+      } else {
+        this.breaker = null;
+      }
+
+      if (previous != null && previous.bulkhead != null) {
+        this.bulkhead = previous.bulkhead;
+      } else if (policy.usesBulkhead()) {
+        this.bulkhead = new Semaphore(policy.getMaxConcurrentRequests());
+      } else {
+        this.bulkhead = null;
+      }
+    }
+
+    private boolean covers(ResilientTransport.Policy policy) {
+      return (breaker != null || !policy.usesBreaker())
+          && (bulkhead != null || !policy.usesBulkhead());
+    }
+  }
+}
@@ -0,0 +1,291 @@
+package tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.entity.DeflateDecompressingEntity;
+import org.apache.hc.client5.http.entity.GzipDecompressingEntity;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.message.BasicClassicHttpRequest;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import ch.unisg.ics.interactions.wot.td.clients.TDHttpResponse;
+
+/**
+ * A {@link ThingTransport} that issues requests over a pooled, keep-alive Apache HttpClient.
+ * Connections are reused across requests and artifacts, such that repeated interactions with the
+ * same Thing do not pay for a new TCP (and TLS) handshake.
+ *
+ * Transports are shared per JaCaMo workspace via {@link #forWorkspace(String)}. Shared transports
+ * are reference-counted: each retrieval is matched by a call to {@link #close()}, and the pool is
+ * only closed once the workspace no longer uses it and the last artifact closed it. The defaults
+ * used for new transports can be set via the system properties
+ * <code>tools.http.maxConnections</code>, <code>tools.http.maxConnectionsPerRoute</code>,
+ * <code>tools.http.connectTimeout</code>, <code>tools.http.responseTimeout</code>, and
+ * <code>tools.http.keepAlive</code> (timeouts in milliseconds).
+ *
+ * Transports do not ask for compressed responses by default, since compressing small payloads
+ * costs constrained devices more than it saves. Requests that ask for compression via an
+ * <code>Accept-Encoding</code> header receive gzip or deflate payloads decompressed.
+ *
+ */
+public class HttpClientTransport implements ThingTransport, Closeable {
+  private static final Map<String, HttpClientTransport> WORKSPACE_TRANSPORTS =
+      new HashMap<String, HttpClientTransport>();
+
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final CloseableHttpClient client;
+  private final RequestConfig config;
+  private int references;
+
+  private HttpClientTransport(Builder builder) {
+    this.connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+        .setMaxConnTotal(builder.maxConnections)
+        .setMaxConnPerRoute(builder.maxConnectionsPerRoute)
+        .build();
+
+    this.config = RequestConfig.custom()
+        .setConnectTimeout(Timeout.ofMilliseconds(builder.connectTimeoutMillis))
+        .setResponseTimeout(Timeout.ofMilliseconds(builder.responseTimeoutMillis))
+        .setConnectionKeepAlive(TimeValue.ofMilliseconds(builder.keepAliveMillis))
+        .build();
+
+    this.client = HttpClients.custom()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(config)
+        .disableContentCompression()
+        .evictIdleConnections(TimeValue.ofMilliseconds(builder.keepAliveMillis))
+        .build();
+
+    this.references = 1;
+  }
+
+  /**
+   * Retrieves the transport shared by all artifacts in a workspace. The transport is created with
+   * the default settings if the workspace does not have one yet.
+   *
+   * @param workspaceName The name of the JaCaMo workspace.
+   * @return The shared transport, which the caller closes once it no longer uses it.
+   */
+  public static synchronized HttpClientTransport forWorkspace(String workspaceName) {
+    // The workspace holds one reference, and the caller another one
+    return WORKSPACE_TRANSPORTS.computeIfAbsent(workspaceName, name -> new Builder().build())
+        .retain();
+  }
+
+  /**
+   * Sets the transport shared by all artifacts in a workspace. Artifacts that already use the
+   * previous transport keep using it until they are reconfigured, and it is closed once the last
+   * of them closed it.
+   *
+   * @param workspaceName The name of the JaCaMo workspace.
+   * @param transport The transport to be shared. The caller's reference to the transport is not
+   * taken over, i.e. the caller still has to close it.
+   */
+  public static synchronized void setForWorkspace(String workspaceName,
+      HttpClientTransport transport) {
+    HttpClientTransport previous = WORKSPACE_TRANSPORTS.put(workspaceName, transport.retain());
+
+    if (previous != null) {
+      previous.closeQuietly();
+    }
+  }
+
+  /* Adds a reference to this transport, which is then closed by one more call to close(). */
+  synchronized HttpClientTransport retain() {
+    references ++;
+    return this;
+  }
+
+  @Override
+  public ThingResponse execute(ThingRequest request) throws IOException {
+    try (CloseableHttpResponse response = client.execute(newHttpRequest(request),
+        newContext(request))) {
+      Map<String, String> headers = headersOf(response);
+      HttpEntity entity = response.getEntity();
+
+      try {
+        HttpEntity decoded = decompress(entity, headers.remove("content-encoding"));
+        Optional<byte[]> body = Optional.empty();
+
+        if (decoded != null && CborCodec.isCbor(headers.get("content-type"))) {
+          // Binary payloads are read as bytes instead of text by the TD response
+          body = Optional.of(EntityUtils.toByteArray(decoded));
+          response.setEntity(null);
+        } else {
+          response.setEntity(decoded);
+        }
+
+        return new ThingResponse(new TDHttpResponse(response), headers, body);
+      } finally {
+        // Make sure the connection can be returned to the pool
+        EntityUtils.consume(entity);
+      }
+    }
+  }
+
+  @Override
+  public ThingResponseStream open(ThingRequest request) throws IOException {
+    CloseableHttpResponse response = client.execute(newHttpRequest(request),
+        newContext(request));
+
+    try {
+      Map<String, String> headers = headersOf(response);
+      HttpEntity entity = decompress(response.getEntity(), headers.remove("content-encoding"));
+      InputStream payload = entity == null ? new ByteArrayInputStream(new byte[0])
+          : entity.getContent();
+
+      // Closing the response before the payload is read to the end discards the connection
+      return new ThingResponseStream(response.getCode(), headers, payload, response);
+    } catch (IOException | RuntimeException e) {
+      response.close();
+      throw e;
+    }
+  }
+
+  private BasicClassicHttpRequest newHttpRequest(ThingRequest request) {
+    BasicClassicHttpRequest httpRequest = new BasicClassicHttpRequest(request.getMethod(),
+        request.getTarget());
+
+    for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+      httpRequest.setHeader(header.getKey(), header.getValue());
+    }
+
+    if (request.getBody().isPresent()) {
+      httpRequest.setEntity(new ByteArrayEntity(request.getBody().get(),
+          ContentType.parse(request.getContentType())));
+    }
+
+    return httpRequest;
+  }
+
+  private HttpClientContext newContext(ThingRequest request) {
+    HttpClientContext context = HttpClientContext.create();
+
+    if (request.getTimeout().isPresent()) {
+      Timeout timeout = Timeout.ofMilliseconds(request.getTimeout().get());
+      context.setRequestConfig(RequestConfig.copy(config)
+          .setConnectionRequestTimeout(timeout)
+          .setResponseTimeout(timeout)
+          .build());
+    }
+
+    return context;
+  }
+
+  private static Map<String, String> headersOf(CloseableHttpResponse response) {
+    Map<String, String> headers = new HashMap<String, String>();
+
+    for (Header header : response.getHeaders()) {
+      headers.putIfAbsent(header.getName().toLowerCase(Locale.ROOT), header.getValue());
+    }
+
+    return headers;
+  }
+
+  private static HttpEntity decompress(HttpEntity entity, String contentEncoding) {
+    if (entity == null || contentEncoding == null) {
+      return entity;
+    }
+
+    switch (contentEncoding.trim().toLowerCase(Locale.ROOT)) {
+      case "gzip":
+      case "x-gzip":
+        return new GzipDecompressingEntity(entity);
+      case "deflate":
+        return new DeflateDecompressingEntity(entity);
+      default:
+        return entity;
+    }
+  }
+
+  /**
+   * Releases a reference to this transport. The connection pool is closed once all references
+   * were released.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (references == 0 || -- references > 0) {
+        return;
+      }
+    }
+
+    client.close();
+    connectionManager.close();
+  }
+
+  private void closeQuietly() {
+    try {
+      close();
+    } catch (IOException e) {
+      // Closing a connection pool does not involve I/O that could fail in a meaningful way
+    }
+  }
+
+  /**
+   * Builder for transports that do not use the default connection pool settings or timeouts.
+   */
+  public static class Builder {
+    private int maxConnections;
+    private int maxConnectionsPerRoute;
+    private long connectTimeoutMillis;
+    private long responseTimeoutMillis;
+    private long keepAliveMillis;
+
+    public Builder() {
+      this.maxConnections = Integer.getInteger("tools.http.maxConnections", 200);
+      this.maxConnectionsPerRoute = Integer.getInteger("tools.http.maxConnectionsPerRoute", 20);
+      this.connectTimeoutMillis = Long.getLong("tools.http.connectTimeout", 5000);
+      this.responseTimeoutMillis = Long.getLong("tools.http.responseTimeout", 30000);
+      this.keepAliveMillis = Long.getLong("tools.http.keepAlive", 60000);
+    }
+
+    public Builder setMaxConnections(int maxConnections) {
+      this.maxConnections = maxConnections;
+      return this;
+    }
+
+    public Builder setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+      this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+      return this;
+    }
+
+    public Builder setConnectTimeout(long millis) {
+      this.connectTimeoutMillis = millis;
+      return this;
+    }
+
+    public Builder setResponseTimeout(long millis) {
+      this.responseTimeoutMillis = millis;
+      return this;
+    }
+
+    public Builder setKeepAlive(long millis) {
+      this.keepAliveMillis = millis;
+      return this;
+    }
+
+    public HttpClientTransport build() {
+      return new HttpClientTransport(this);
+    }
+  }
+}
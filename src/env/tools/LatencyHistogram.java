@@ -0,0 +1,121 @@
+package tools;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with log-linear buckets, in the style of HdrHistogram: each power
+ * of two is split into 8 linear sub-buckets, such that recorded values are kept with a relative
+ * error of at most 12.5% over the whole range of <code>long</code> values. Recording a value does
+ * not allocate and does not block concurrent writers.
+ *
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts;
+  private final LongAdder count;
+  private final LongAdder sum;
+  private final AtomicLong max;
+
+  public LatencyHistogram() {
+    this.counts = new AtomicLongArray(BUCKETS);
+    this.count = new LongAdder();
+    this.sum = new LongAdder();
+    this.max = new AtomicLong();
+  }
+
+  /**
+   * @param value The value to be recorded (e.g., a latency in nanoseconds). Negative values are
+   * recorded as 0.
+   */
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+
+    counts.incrementAndGet(bucketOf(value));
+    count.increment();
+    sum.add(value);
+
+    long current = max.get();
+    while (value > current && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public double getMean() {
+    long n = count.sum();
+    return n == 0 ? 0 : (double) sum.sum() / n;
+  }
+
+  /**
+   * @param percentile A percentile between 0 and 100.
+   * @return The upper bound of the bucket that contains the value at the given percentile, or 0
+   * if no values were recorded.
+   */
+  public long getValueAtPercentile(double percentile) {
+    long[] snapshot = new long[BUCKETS];
+    long total = 0;
+
+    for (int i = 0; i < BUCKETS; i ++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+
+    if (total == 0) {
+      return 0;
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+    long seen = 0;
+
+    for (int i = 0; i < BUCKETS; i ++) {
+      seen += snapshot[i];
+
+      if (seen >= rank) {
+        return Math.min(upperBoundOf(i), getMax());
+      }
+    }
+
+    return getMax();
+  }
+
+  /* Values below 8 have a bucket each, larger values are bucketed by exponent and sub-bucket. */
+  static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  static long lowerBoundOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+
+    int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    int subBucket = bucket % SUB_BUCKETS;
+
+    return (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+  }
+
+  static long upperBoundOf(int bucket) {
+    return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowerBoundOf(bucket + 1) - 1;
+  }
+}
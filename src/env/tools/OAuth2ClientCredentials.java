@@ -0,0 +1,330 @@
+package tools;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.entity.UrlEncodedFormEntity;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.NameValuePair;
+import org.apache.hc.core5.http.ParseException;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.message.BasicNameValuePair;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import ch.unisg.ics.interactions.wot.td.security.SecurityScheme;
+
+/**
+ * A bearer token obtained with the OAuth 2.0 client credentials grant (RFC 6749, section 4.4).
+ * Tokens are refreshed in the background before they expire, such that requests always find a
+ * valid token and never wait for the token endpoint. If a refresh fails, the current token is kept
+ * until it expires and the refresh is retried with exponential backoff. Once the token expired,
+ * it is dropped and requests fail with the error of the last refresh until a new token is
+ * obtained.
+ *
+ * Credentials are shared by all artifacts that use the same client via {@link TokenCache}.
+ *
+ */
+public class OAuth2ClientCredentials extends Credential {
+  private static final Logger LOGGER = Logger.getLogger(OAuth2ClientCredentials.class.getName());
+
+  /* Used if the token endpoint does not return a lifetime. */
+  static final long DEFAULT_LIFETIME_MILLIS = TimeUnit.HOURS.toMillis(1);
+  /* Tokens are refreshed a fifth of their lifetime (and at most 1 minute) before they expire. */
+  static final long MAX_REFRESH_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+  static final long MIN_RETRY_DELAY_MILLIS = 1000;
+  static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+  /* Tokens rejected with status 401 are only replaced once they are at least this old. */
+  static final long MIN_TOKEN_AGE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  private final TokenEndpoint endpoint;
+  private final ScheduledExecutorService scheduler;
+  private final Runnable onRelease;
+  private volatile Map<String, String> headers;
+  private Optional<IOException> lastError;
+  private ScheduledFuture<?> nextFetch;
+  private long retryDelay;
+  private long minTokenAge;
+  private long tokenObtainedAt;
+  private volatile long tokenExpiresAt;
+  private boolean fetching;
+  private boolean released;
+
+  OAuth2ClientCredentials(TokenEndpoint endpoint, ScheduledExecutorService scheduler,
+      Runnable onRelease) {
+    this.endpoint = endpoint;
+    this.scheduler = scheduler;
+    this.onRelease = onRelease;
+    this.headers = Collections.emptyMap();
+    this.lastError = Optional.empty();
+    this.retryDelay = MIN_RETRY_DELAY_MILLIS;
+    this.minTokenAge = MIN_TOKEN_AGE_MILLIS;
+  }
+
+  /* Sets the age below which rejected tokens are kept (e.g., in tests). */
+  synchronized void setMinTokenAge(long millis) {
+    this.minTokenAge = millis;
+  }
+
+  /* Fetches the first token in the background. */
+  synchronized void start() {
+    schedule(0);
+  }
+
+  /**
+   * Waits until a token was obtained. Returns immediately if a token is available.
+   *
+   * @param timeoutMillis The maximum time to wait, in milliseconds.
+   * @throws IOException If the token endpoint could not be reached or rejected the client, or if
+   * no token was obtained in time.
+   */
+  public synchronized void awaitToken(long timeoutMillis) throws IOException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+
+    while (!isValid()) {
+      if (lastError.isPresent()) {
+        throw lastError.get();
+      }
+
+      long remaining = deadline - System.currentTimeMillis();
+
+      if (remaining <= 0) {
+        throw new IOException("Timed out waiting for an OAuth 2.0 access token.");
+      }
+
+      try {
+        wait(remaining);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for an OAuth 2.0 access token.", e);
+      }
+    }
+  }
+
+  /**
+   * @return True if a token is available and has not expired.
+   */
+  public boolean hasToken() {
+    return isValid();
+  }
+
+  @Override
+  public Map<String, String> headersFor(Optional<SecurityScheme> scheme) {
+    return headers;
+  }
+
+  /**
+   * @throws IOException If the token expired (or was never obtained), with the error of the last
+   * attempt to obtain a token as its cause.
+   */
+  @Override
+  public void check() throws IOException {
+    if (isValid()) {
+      return;
+    }
+
+    synchronized (this) {
+      if (isValid()) {
+        return;
+      }
+
+      // Expired tokens are rejected by Things anyway
+      headers = Collections.emptyMap();
+
+      if (lastError.isPresent()) {
+        throw new IOException("No valid OAuth 2.0 access token: "
+            + lastError.get().getMessage(), lastError.get());
+      }
+
+      throw new IOException("No valid OAuth 2.0 access token: the token expired before it was "
+          + "refreshed.");
+    }
+  }
+
+  @Override
+  public synchronized void onUnauthorized() {
+    // A Thing may also reject valid tokens (e.g., for a missing scope), so a new token is fetched
+    // now only once, and only if the current one is not recent
+    boolean recent = !headers.isEmpty()
+        && System.currentTimeMillis() - tokenObtainedAt < minTokenAge;
+
+    if (!fetching && !released && !recent) {
+      nextFetch.cancel(false);
+      schedule(0);
+    }
+  }
+
+  /**
+   * Releases this credential. Tokens are no longer refreshed once all artifacts that share the
+   * credential released it.
+   */
+  @Override
+  public void release() {
+    onRelease.run();
+  }
+
+  /* Stops refreshing, called by the token cache once the credential is no longer used. */
+  synchronized void close() {
+    released = true;
+
+    if (nextFetch != null) {
+      nextFetch.cancel(false);
+    }
+  }
+
+  private void schedule(long delayMillis) {
+    fetching = delayMillis == 0;
+    nextFetch = scheduler.schedule(this::fetch, delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void fetch() {
+    synchronized (this) {
+      fetching = true;
+    }
+
+    try {
+      Token token = endpoint.requestToken();
+
+      synchronized (this) {
+        headers = bearerHeaders(token.accessToken);
+        tokenObtainedAt = System.currentTimeMillis();
+        tokenExpiresAt = tokenObtainedAt + token.lifetimeMillis;
+        lastError = Optional.empty();
+        retryDelay = MIN_RETRY_DELAY_MILLIS;
+        fetching = false;
+        notifyAll();
+
+        if (!released) {
+          schedule(refreshDelay(token.lifetimeMillis));
+        }
+      }
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to obtain an OAuth 2.0 access token, retrying in "
+          + retryDelay + " ms: " + e.getMessage());
+
+      synchronized (this) {
+        lastError = Optional.of(e);
+        fetching = false;
+
+        if (System.currentTimeMillis() >= tokenExpiresAt) {
+          headers = Collections.emptyMap();
+        }
+
+        notifyAll();
+
+        if (!released) {
+          schedule(retryDelay);
+          retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MILLIS);
+        }
+      }
+    }
+  }
+
+  private boolean isValid() {
+    return !headers.isEmpty() && System.currentTimeMillis() < tokenExpiresAt;
+  }
+
+  /* The delay after which a token with the given lifetime is refreshed. */
+  static long refreshDelay(long lifetimeMillis) {
+    long margin = Math.min(lifetimeMillis / 5, MAX_REFRESH_MARGIN_MILLIS);
+    return Math.max(lifetimeMillis - margin, MIN_RETRY_DELAY_MILLIS);
+  }
+
+  /* A source of access tokens, e.g. the token endpoint of an authorization server. */
+  interface TokenEndpoint {
+    Token requestToken() throws IOException;
+  }
+
+  /* An access token and its lifetime. */
+  static class Token {
+    final String accessToken;
+    final long lifetimeMillis;
+
+    Token(String accessToken, long lifetimeMillis) {
+      this.accessToken = accessToken;
+      this.lifetimeMillis = lifetimeMillis;
+    }
+
+    /* Parses a successful access token response (RFC 6749, section 5.1). */
+    static Token parse(String json) throws IOException {
+      try {
+        JsonObject response = JsonParser.parseString(json).getAsJsonObject();
+        JsonElement accessToken = response.get("access_token");
+        JsonElement tokenType = response.get("token_type");
+        JsonElement expiresIn = response.get("expires_in");
+
+        if (accessToken == null || tokenType == null
+            || !"bearer".equalsIgnoreCase(tokenType.getAsString())) {
+          throw new IOException("Unsupported access token response, expected a bearer token.");
+        }
+
+        return new Token(accessToken.getAsString(), expiresIn == null ? DEFAULT_LIFETIME_MILLIS
+            : TimeUnit.SECONDS.toMillis(expiresIn.getAsLong()));
+      } catch (RuntimeException e) {
+        throw new IOException("Invalid access token response: " + e.getMessage(), e);
+      }
+    }
+  }
+
+  /* Requests tokens from a token endpoint, authenticating the client with HTTP Basic. */
+  static class HttpTokenEndpoint implements TokenEndpoint {
+    private final CloseableHttpClient client;
+    private final String tokenUrl;
+    private final String authorization;
+    private final List<String> scopes;
+
+    HttpTokenEndpoint(CloseableHttpClient client, String tokenUrl, String clientId,
+        String clientSecret, List<String> scopes) {
+      this.client = client;
+      this.tokenUrl = tokenUrl;
+      this.authorization = "Basic " + Base64.getEncoder().encodeToString(
+          (clientId + ":" + clientSecret).getBytes(StandardCharsets.UTF_8));
+      this.scopes = scopes;
+    }
+
+    @Override
+    public Token requestToken() throws IOException {
+      List<NameValuePair> parameters = new ArrayList<NameValuePair>();
+      parameters.add(new BasicNameValuePair("grant_type", "client_credentials"));
+
+      if (!scopes.isEmpty()) {
+        parameters.add(new BasicNameValuePair("scope", String.join(" ", scopes)));
+      }
+
+      HttpPost post = new HttpPost(tokenUrl);
+      post.setHeader(HttpHeaders.AUTHORIZATION, authorization);
+      post.setHeader(HttpHeaders.ACCEPT, "application/json");
+      post.setEntity(new UrlEncodedFormEntity(parameters, StandardCharsets.UTF_8));
+
+      try (CloseableHttpResponse response = client.execute(post)) {
+        String body = response.getEntity() == null ? ""
+            : EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+
+        if (response.getCode() != 200) {
+          throw new IOException("Token endpoint " + tokenUrl + " responded with status code: "
+              + response.getCode());
+        }
+
+        return Token.parse(body);
+      } catch (ParseException e) {
+        throw new IOException("Invalid access token response: " + e.getMessage(), e);
+      }
+    }
+  }
+}
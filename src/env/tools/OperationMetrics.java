@@ -0,0 +1,136 @@
+package tools;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import tools.AffordanceIndex.ResolvedAffordance;
+
+/**
+ * A JVM-wide registry of {@link AffordanceMetrics}, keyed by Thing, operation type, and affordance
+ * semantic type. Things are identified by the URL of their TD (or by the base URI of an instance
+ * of a fleet), since TD titles are not unique, and the titles are only kept for display. Metrics
+ * are created the first time an affordance is used and are then retrieved with hash lookups on
+ * these names, such that recording metrics does not allocate on the request path. Affordances
+ * resolved from a TD that was parsed again (e.g., after it expired from the
+ * {@link ThingDescriptionCache}) keep recording to the same metrics and MXBean.
+ *
+ * Unless the system property <code>tools.metrics.jmx</code> is set to <code>false</code>, each
+ * entry is also registered as an MXBean with the platform MBean server.
+ *
+ */
+public class OperationMetrics {
+  private static final Logger LOGGER = Logger.getLogger(OperationMetrics.class.getName());
+  private static final OperationMetrics INSTANCE = new OperationMetrics(
+      !"false".equals(System.getProperty("tools.metrics.jmx")));
+
+  /* Thing, then operation type, then semantic type. */
+  private final Map<String, Map<String, Map<String, AffordanceMetrics>>> metrics;
+  private final boolean jmx;
+
+  OperationMetrics(boolean jmx) {
+    this.metrics = new ConcurrentHashMap<String, Map<String, Map<String, AffordanceMetrics>>>();
+    this.jmx = jmx;
+  }
+
+  public static OperationMetrics getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @param thing The identifier of the Thing (e.g., the URL of its TD).
+   * @param title The title of the Thing's TD, kept for display.
+   * @param affordance An affordance resolved via an {@link AffordanceIndex}.
+   * @return The metrics recorded for the affordance and its operation type.
+   */
+  public AffordanceMetrics forAffordance(String thing, String title,
+      ResolvedAffordance affordance) {
+    Map<String, Map<String, AffordanceMetrics>> byOperationType = metrics.get(thing);
+
+    if (byOperationType == null) {
+      byOperationType = metrics.computeIfAbsent(thing,
+          key -> new ConcurrentHashMap<String, Map<String, AffordanceMetrics>>());
+    }
+
+    Map<String, AffordanceMetrics> bySemanticType =
+        byOperationType.get(affordance.getOperationType());
+
+    if (bySemanticType == null) {
+      bySemanticType = byOperationType.computeIfAbsent(affordance.getOperationType(),
+          key -> new ConcurrentHashMap<String, AffordanceMetrics>());
+    }
+
+    AffordanceMetrics existing = bySemanticType.get(affordance.getSemanticType());
+
+    if (existing != null) {
+      return existing;
+    }
+
+    AffordanceMetrics created = new AffordanceMetrics(thing, title, affordance.getSemanticType(),
+        affordance.getOperationType());
+    existing = bySemanticType.putIfAbsent(affordance.getSemanticType(), created);
+
+    if (existing != null) {
+      return existing;
+    }
+
+    if (jmx) {
+      register(created);
+    }
+
+    return created;
+  }
+
+  /**
+   * @param thing The identifier of the Thing.
+   * @return All metrics recorded for the Thing.
+   */
+  public List<AffordanceMetrics> forThing(String thing) {
+    List<AffordanceMetrics> result = new ArrayList<AffordanceMetrics>();
+
+    for (Map<String, AffordanceMetrics> bySemanticType : metrics.getOrDefault(thing,
+        Collections.<String, Map<String, AffordanceMetrics>>emptyMap()).values()) {
+      result.addAll(bySemanticType.values());
+    }
+
+    return result;
+  }
+
+  public Collection<AffordanceMetrics> getAll() {
+    List<AffordanceMetrics> result = new ArrayList<AffordanceMetrics>();
+
+    for (String thing : metrics.keySet()) {
+      result.addAll(forThing(thing));
+    }
+
+    return result;
+  }
+
+  private void register(AffordanceMetrics entry) {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    try {
+      ObjectName name = new ObjectName("tools:type=ThingMetrics"
+          + ",thing=" + ObjectName.quote(entry.getThing())
+          + ",title=" + ObjectName.quote(entry.getTitle())
+          + ",affordance=" + ObjectName.quote(entry.getSemanticType())
+          + ",operation=" + ObjectName.quote(entry.getOperationType()));
+
+      if (!server.isRegistered(name)) {
+        server.registerMBean(entry, name);
+      }
+    } catch (JMException e) {
+      LOGGER.log(Level.WARNING, "Unable to register metrics MBean: " + e.getMessage());
+    }
+  }
+}
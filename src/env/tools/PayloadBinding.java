@@ -0,0 +1,129 @@
+package tools;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import cartago.OpFeedbackParam;
+import ch.unisg.ics.interactions.wot.td.schemas.DataSchema;
+import tools.PayloadCodec.ObjectValue;
+
+/**
+ * Binds the parameters of CArtAgO operations to request and response payloads: a list with a
+ * single primitive for primitive schemas, a (nested) list for array schemas, and a list of tags
+ * and a list of values for object schemas. Payloads are serialized as CBOR for forms with the
+ * content type <code>application/cbor</code>, and as JSON otherwise.
+ *
+ */
+final class PayloadBinding {
+
+  private PayloadBinding() { }
+
+  /**
+   * Serializes a primitive, object, or array payload in the given content type with the codec
+   * compiled for the schema.
+   *
+   * @throws IllegalArgumentException If the payload does not match the schema.
+   */
+  static byte[] encode(String contentType, DataSchema schema, Object[] tags, Object[] payload) {
+    boolean primitive = checkShape(schema, tags, payload);
+
+    if (!CborCodec.isCbor(contentType)) {
+      return encode(schema, tags, payload).getBytes(StandardCharsets.UTF_8);
+    }
+
+    CborCodec codec = CborCodec.forSchema(schema);
+
+    if (tags.length > 0) {
+      return codec.encodeObject(tags, payload);
+    } else if (primitive) {
+      return codec.encode(payload[0]);
+    } else {
+      return codec.encode(payload);
+    }
+  }
+
+  /**
+   * Serializes a primitive, object, or array payload as JSON with the codec compiled for the
+   * schema.
+   *
+   * @throws IllegalArgumentException If the payload does not match the schema.
+   */
+  static String encode(DataSchema schema, Object[] tags, Object[] payload) {
+    boolean primitive = checkShape(schema, tags, payload);
+    PayloadCodec codec = PayloadCodec.forSchema(schema);
+
+    if (tags.length > 0) {
+      return codec.encodeObject(tags, payload);
+    } else if (primitive) {
+      return codec.encode(payload[0]);
+    } else {
+      return codec.encode(payload);
+    }
+  }
+
+  /* Checks that the parameters match the schema. Returns true for primitive payloads. */
+  private static boolean checkShape(DataSchema schema, Object[] tags, Object[] payload) {
+    boolean primitive = payload.length == 1 && !(payload[0] instanceof Object[]);
+
+    if ((tags.length > 0 && schema.getDatatype() != DataSchema.OBJECT)
+        || (tags.length == 0 && !primitive && schema.getDatatype() != DataSchema.ARRAY)) {
+      throw new IllegalArgumentException("TD mismatch: illegal arguments, this affordance uses a "
+          + "data schema of type " + schema.getDatatype());
+    }
+
+    return primitive;
+  }
+
+  /**
+   * Deserializes a response payload with the codec compiled for the schema. CBOR payloads are
+   * recognized by the content type of the response.
+   *
+   * @throws IllegalArgumentException If the payload does not match the schema.
+   */
+  // TODO: Reading payloads of type object currently works with 2 limitations:
+  // - only the first semantic tag is retrieved for object properties (one that is not a data schema)
+  // - we cannot use nested objects with the current ThingArtifact API (needs a more elaborated
+  // JaCa - WoT bridge)
+  static void decode(ThingResponse response, DataSchema schema,
+      Optional<OpFeedbackParam<Object[]>> tags, OpFeedbackParam<Object[]> output) {
+    // Only consider object payloads if the invoked CArtAgO operation was for an object payload
+    // (i.e., a list of tags is expected).
+    if (schema.getDatatype() == DataSchema.OBJECT && !tags.isPresent()) {
+      return;
+    }
+
+    bind(decode(response, schema), tags, output);
+  }
+
+  /**
+   * Deserializes a response payload without binding it to operation parameters. Arrays of
+   * integers or numbers are kept as <code>long[]</code> or <code>double[]</code>.
+   *
+   * @throws IllegalArgumentException If the payload does not match the schema.
+   */
+  static Object decode(ThingResponse response, DataSchema schema) {
+    if (CborCodec.isCbor(response.getContentType().orElse(null))) {
+      return CborCodec.forSchema(schema).decode(response.getBody().orElse(new byte[0]));
+    }
+
+    return PayloadCodec.forSchema(schema).decode(response.getPayload().orElse(""));
+  }
+
+  /**
+   * Binds a decoded value to the parameters of a CArtAgO operation.
+   */
+  static void bind(Object value, Optional<OpFeedbackParam<Object[]>> tags,
+      OpFeedbackParam<Object[]> output) {
+    // Primitive arrays are boxed only here, when the value is handed to the agent
+    value = PayloadCodec.toAgentValue(value);
+
+    if (value instanceof ObjectValue) {
+      tags.get().set(((ObjectValue) value).getTags());
+      output.set(((ObjectValue) value).getValues());
+    } else if (value instanceof Object[]) {
+      output.set((Object[]) value);
+    } else {
+      output.set(new Object[] { value });
+    }
+  }
+}
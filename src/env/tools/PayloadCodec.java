@@ -0,0 +1,723 @@
+package tools;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import ch.unisg.ics.interactions.wot.td.schemas.ArraySchema;
+import ch.unisg.ics.interactions.wot.td.schemas.DataSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.ObjectSchema;
+
+/**
+ * A JSON codec compiled from a TD data schema. Codecs translate directly between the values
+ * exchanged with agents via CArtAgO (primitives and arbitrarily nested <code>Object[]</code>) and
+ * JSON payloads, without intermediate maps or lists. Codecs are compiled once per schema and are
+ * thread-safe; payloads are serialized into per-thread reusable buffers.
+ *
+ * Arrays whose items are all integers or numbers (e.g., positions or sensor series) are decoded
+ * into <code>long[]</code> or <code>double[]</code>, and can be encoded from them, such that their
+ * items are only boxed when they are handed to agents (see {@link #toAgentValue(Object)}).
+ *
+ * The JSON produced by a codec is equivalent to the JSON produced by <code>TDHttpRequest</code>
+ * for the same payload, and decoded values have the same shapes as the values read via
+ * <code>TDHttpResponse</code>.
+ *
+ */
+public abstract class PayloadCodec {
+  private static final Gson GSON = new Gson();
+  private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+  private static final Map<DataSchema, PayloadCodec> CODECS =
+      Collections.synchronizedMap(new WeakHashMap<DataSchema, PayloadCodec>());
+
+  private static final ThreadLocal<BufferWriter> BUFFERS =
+      ThreadLocal.withInitial(() -> new BufferWriter());
+
+  private static final PayloadCodec UNTYPED = new UntypedCodec();
+
+  /**
+   * Retrieves the codec compiled for a data schema.
+   *
+   * @param schema A TD data schema.
+   * @return The codec for the schema.
+   */
+  public static PayloadCodec forSchema(DataSchema schema) {
+    PayloadCodec codec = CODECS.get(schema);
+
+    if (codec == null) {
+      codec = compile(schema);
+      CODECS.put(schema, codec);
+    }
+
+    return codec;
+  }
+
+  private static PayloadCodec compile(DataSchema schema) {
+    if (schema == null || schema.getDatatype() == null) {
+      return UNTYPED;
+    }
+
+    switch (schema.getDatatype()) {
+      case DataSchema.BOOLEAN:
+      case DataSchema.INTEGER:
+      case DataSchema.NUMBER:
+      case DataSchema.STRING:
+        return new PrimitiveCodec(schema.getDatatype());
+      case DataSchema.ARRAY:
+        ArraySchema array = (ArraySchema) schema;
+        return isNumericArray(array) ? new NumericArrayCodec(array) : new ArrayCodec(array);
+      case DataSchema.OBJECT:
+        return new ObjectCodec((ObjectSchema) schema);
+      default:
+        return UNTYPED;
+    }
+  }
+
+  /**
+   * Serializes a primitive or array payload.
+   *
+   * @param payload A primitive value, or an (arbitrarily nested) array of values.
+   * @return The JSON payload.
+   * @throws IllegalArgumentException If the payload does not match the schema.
+   */
+  public String encode(Object payload) {
+    BufferWriter buffer = BUFFERS.get();
+
+    try {
+      JsonWriter writer = newWriter(buffer);
+      write(writer, payload);
+      writer.flush();
+      return buffer.drain();
+    } catch (IOException e) {
+      // Should not happen when writing to a buffer
+      throw new IllegalArgumentException(e.getMessage(), e);
+    } finally {
+      buffer.reset();
+    }
+  }
+
+  /**
+   * Serializes an object payload given as two lists: the semantic types that identify the
+   * properties of the object, and their values.
+   *
+   * @param tags IRIs that identify the properties of the object.
+   * @param values The values of the properties.
+   * @return The JSON payload.
+   * @throws IllegalArgumentException If the schema is not an object schema.
+   */
+  public String encodeObject(Object[] tags, Object[] values) {
+    throw new IllegalArgumentException("TD mismatch: illegal arguments, this affordance uses a "
+        + "data schema of type " + getDatatype());
+  }
+
+  /**
+   * Deserializes a JSON payload. Primitives are decoded to <code>Boolean</code>, <code>Integer
+   * </code> (or <code>Long</code> if out of range), <code>Double</code>, or <code>String</code>,
+   * arrays of integers or numbers to <code>long[]</code> or <code>double[]</code>, other arrays to
+   * <code>Object[]</code>, and objects to {@link ObjectValue}s (or to maps, if nested in arrays).
+   *
+   * @param payload The JSON payload.
+   * @return The decoded value.
+   * @throws IllegalArgumentException If the payload is not valid JSON or does not match the schema.
+   */
+  public Object decode(String payload) {
+    try (JsonReader reader = new JsonReader(new StringReader(payload))) {
+      reader.setLenient(true);
+      return readTop(reader);
+    } catch (IOException | IllegalStateException | NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid payload for data schema of type "
+          + getDatatype() + ": " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Converts a decoded value into the value handed to agents: <code>long[]</code> and <code>
+   * double[]</code> arrays (also if nested) are boxed into <code>Object[]</code>, with integers
+   * narrowed as for primitive payloads. The decoded value is left unchanged: values that do not
+   * contain primitive arrays are returned as they are, and otherwise only the arrays, maps, and
+   * objects that contain primitive arrays are copied.
+   *
+   * @param value A value decoded by a JSON or CBOR codec.
+   * @return The value with the same shape as a value read via <code>TDHttpResponse</code>.
+   */
+  public static Object toAgentValue(Object value) {
+    if (value instanceof long[]) {
+      long[] array = (long[]) value;
+      Object[] boxed = new Object[array.length];
+      for (int i = 0; i < array.length; i ++) {
+        boxed[i] = narrow(array[i]);
+      }
+      return boxed;
+    } else if (value instanceof double[]) {
+      double[] array = (double[]) value;
+      Object[] boxed = new Object[array.length];
+      for (int i = 0; i < array.length; i ++) {
+        boxed[i] = array[i];
+      }
+      return boxed;
+    } else if (value instanceof Object[]) {
+      Object[] array = (Object[]) value;
+      Object[] converted = null;
+      for (int i = 0; i < array.length; i ++) {
+        Object item = toAgentValue(array[i]);
+        if (item != array[i]) {
+          // Copied only once an item has to be converted
+          if (converted == null) {
+            converted = array.clone();
+          }
+          converted[i] = item;
+        }
+      }
+      return converted == null ? array : converted;
+    } else if (value instanceof Map<?, ?>) {
+      Map<?, ?> map = (Map<?, ?>) value;
+      Map<Object, Object> converted = null;
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        Object item = toAgentValue(entry.getValue());
+        if (item != entry.getValue()) {
+          if (converted == null) {
+            converted = new LinkedHashMap<Object, Object>(map);
+          }
+          converted.put(entry.getKey(), item);
+        }
+      }
+      return converted == null ? map : converted;
+    } else if (value instanceof ObjectValue) {
+      ObjectValue object = (ObjectValue) value;
+      Object[] values = (Object[]) toAgentValue(object.getValues());
+      return values == object.getValues() ? object : new ObjectValue(object.getTags(), values);
+    }
+
+    return value;
+  }
+
+  /* True for arrays with a single item schema of type integer or number. */
+  static boolean isNumericArray(ArraySchema schema) {
+    List<DataSchema> items = schema.getItems();
+
+    if (items.size() != 1) {
+      return false;
+    }
+
+    String datatype = items.get(0).getDatatype();
+    return DataSchema.INTEGER.equals(datatype) || DataSchema.NUMBER.equals(datatype);
+  }
+
+  static IllegalArgumentException mismatch(String datatype, Object value) {
+    return new IllegalArgumentException("The payload's datatype does not match the data schema "
+        + "(" + datatype + "): " + value.getClass().getCanonicalName());
+  }
+
+  /* Writers escape HTML characters like Gson.toJson, such that payloads match TDHttpRequest. */
+  static JsonWriter newWriter(Writer buffer) throws IOException {
+    JsonWriter writer = GSON.newJsonWriter(buffer);
+    writer.setHtmlSafe(true);
+    return writer;
+  }
+
+  abstract String getDatatype();
+
+  abstract void write(JsonWriter writer, Object value) throws IOException;
+
+  abstract Object read(JsonReader reader) throws IOException;
+
+  /* Reads a top-level value. Object codecs return an ObjectValue instead of a map. */
+  Object readTop(JsonReader reader) throws IOException {
+    return read(reader);
+  }
+
+  /* Reads the item at the given position of an array, for codecs of array schemas. */
+  Object readItem(JsonReader reader, int position) throws IOException {
+    throw new IllegalArgumentException("Not an array schema: " + getDatatype());
+  }
+
+  /**
+   * An object decoded with an object schema: the semantic types of the object's properties (or
+   * their names, if they do not have a semantic type) and the corresponding values.
+   */
+  public static class ObjectValue {
+    private final Object[] tags;
+    private final Object[] values;
+
+    ObjectValue(Object[] tags, Object[] values) {
+      this.tags = tags;
+      this.values = values;
+    }
+
+    public Object[] getTags() {
+      return tags;
+    }
+
+    public Object[] getValues() {
+      return values;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof ObjectValue && Arrays.deepEquals(tags, ((ObjectValue) other).tags)
+          && Arrays.deepEquals(values, ((ObjectValue) other).values);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * Arrays.deepHashCode(tags) + Arrays.deepHashCode(values);
+    }
+  }
+
+  static void writeInferred(JsonWriter writer, Object value) throws IOException {
+    if (value == null) {
+      writer.nullValue();
+    } else if (value instanceof Boolean) {
+      writer.value((Boolean) value);
+    } else if (value instanceof Byte || value instanceof Short || value instanceof Integer
+        || value instanceof Long) {
+      writer.value(((Number) value).longValue());
+    } else if (value instanceof Number) {
+      writer.value(((Number) value).doubleValue());
+    } else if (value instanceof String) {
+      writer.value((String) value);
+    } else if (value instanceof Object[]) {
+      writer.beginArray();
+      for (Object item : (Object[]) value) {
+        writeInferred(writer, item);
+      }
+      writer.endArray();
+    } else if (value instanceof Collection<?>) {
+      writer.beginArray();
+      for (Object item : (Collection<?>) value) {
+        writeInferred(writer, item);
+      }
+      writer.endArray();
+    } else if (value instanceof Map<?, ?>) {
+      writer.beginObject();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        writer.name(String.valueOf(entry.getKey()));
+        writeInferred(writer, entry.getValue());
+      }
+      writer.endObject();
+    } else {
+      throw new IllegalArgumentException("Unable to detect the datatype of payload: "
+          + value.getClass().getCanonicalName());
+    }
+  }
+
+  static Object readInferred(JsonReader reader) throws IOException {
+    switch (reader.peek()) {
+      case BOOLEAN:
+        return reader.nextBoolean();
+      case NUMBER:
+        String number = reader.nextString();
+        if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+          return narrow(Long.parseLong(number));
+        }
+        return Double.valueOf(number);
+      case STRING:
+        return reader.nextString();
+      case BEGIN_ARRAY:
+        Object[] items = new Object[8];
+        int size = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+          items = ensureCapacity(items, size);
+          items[size ++] = readInferred(reader);
+        }
+        reader.endArray();
+        return trim(items, size);
+      case BEGIN_OBJECT:
+        Map<String, Object> object = new LinkedHashMap<String, Object>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+          object.put(reader.nextName(), readInferred(reader));
+        }
+        reader.endObject();
+        return object;
+      case NULL:
+        reader.nextNull();
+        return null;
+      default:
+        throw new IllegalStateException("Unexpected JSON token: " + reader.peek());
+    }
+  }
+
+  /* Grows an array that is filled up to the given size, doubling its length. */
+  static Object[] ensureCapacity(Object[] array, int size) {
+    return size < array.length ? array : Arrays.copyOf(array, Math.max(8, size * 2));
+  }
+
+  static Object[] trim(Object[] array, int size) {
+    return size == array.length ? array : Arrays.copyOf(array, size);
+  }
+
+  static Object narrow(long value) {
+    if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+      return (int) value;
+    }
+
+    return value;
+  }
+
+  /* Codec used when the schema does not constrain the datatype. */
+  private static class UntypedCodec extends PayloadCodec {
+
+    @Override
+    String getDatatype() {
+      return "untyped";
+    }
+
+    @Override
+    void write(JsonWriter writer, Object value) throws IOException {
+      writeInferred(writer, value);
+    }
+
+    @Override
+    Object read(JsonReader reader) throws IOException {
+      return readInferred(reader);
+    }
+  }
+
+  private static class PrimitiveCodec extends PayloadCodec {
+    private final String datatype;
+
+    PrimitiveCodec(String datatype) {
+      this.datatype = datatype;
+    }
+
+    @Override
+    String getDatatype() {
+      return datatype;
+    }
+
+    @Override
+    void write(JsonWriter writer, Object value) throws IOException {
+      if (value instanceof Boolean && DataSchema.BOOLEAN.equals(datatype)) {
+        writer.value((Boolean) value);
+      } else if ((value instanceof Byte || value instanceof Short || value instanceof Integer
+          || value instanceof Long)
+          && (DataSchema.INTEGER.equals(datatype) || DataSchema.NUMBER.equals(datatype))) {
+        writer.value(((Number) value).longValue());
+      } else if ((value instanceof Float || value instanceof Double)
+          && DataSchema.NUMBER.equals(datatype)) {
+        writer.value(((Number) value).doubleValue());
+      } else if (value instanceof String && DataSchema.STRING.equals(datatype)) {
+        writer.value((String) value);
+      } else if (value == null) {
+        throw new IllegalArgumentException("The payload cannot be null.");
+      } else {
+        throw mismatch(datatype, value);
+      }
+    }
+
+    @Override
+    Object read(JsonReader reader) throws IOException {
+      switch (datatype) {
+        case DataSchema.BOOLEAN:
+          return reader.nextBoolean();
+        case DataSchema.INTEGER:
+          return narrow(reader.nextLong());
+        case DataSchema.NUMBER:
+          return reader.nextDouble();
+        default:
+          return reader.nextString();
+      }
+    }
+  }
+
+  private static class ArrayCodec extends PayloadCodec {
+    private final PayloadCodec[] items;
+
+    ArrayCodec(ArraySchema schema) {
+      List<DataSchema> itemSchemas = schema.getItems();
+      this.items = new PayloadCodec[itemSchemas.size()];
+
+      for (int i = 0; i < items.length; i ++) {
+        items[i] = forSchema(itemSchemas.get(i));
+      }
+    }
+
+    @Override
+    String getDatatype() {
+      return DataSchema.ARRAY;
+    }
+
+    /* A single item schema applies to all items, multiple item schemas apply by position. */
+    private PayloadCodec itemCodec(int position) {
+      if (items.length == 0) {
+        return UNTYPED;
+      }
+
+      return position < items.length ? items[position] : items[items.length - 1];
+    }
+
+    @Override
+    void write(JsonWriter writer, Object value) throws IOException {
+      writer.beginArray();
+
+      if (value instanceof Object[]) {
+        Object[] array = (Object[]) value;
+        for (int i = 0; i < array.length; i ++) {
+          itemCodec(i).write(writer, array[i]);
+        }
+      } else if (value instanceof Collection<?>) {
+        int i = 0;
+        for (Object item : (Collection<?>) value) {
+          itemCodec(i ++).write(writer, item);
+        }
+      } else {
+        // A single value sent for an array schema
+        itemCodec(0).write(writer, value);
+      }
+
+      writer.endArray();
+    }
+
+    @Override
+    Object read(JsonReader reader) throws IOException {
+      Object[] values = new Object[8];
+      int size = 0;
+      reader.beginArray();
+
+      while (reader.hasNext()) {
+        values = ensureCapacity(values, size);
+        values[size] = itemCodec(size).read(reader);
+        size ++;
+      }
+
+      reader.endArray();
+      return trim(values, size);
+    }
+
+    @Override
+    Object readItem(JsonReader reader, int position) throws IOException {
+      return itemCodec(position).read(reader);
+    }
+  }
+
+  /* Codec for arrays of integers or numbers, decoded into long[] or double[] without boxing. */
+  private static class NumericArrayCodec extends ArrayCodec {
+    private final boolean integers;
+
+    NumericArrayCodec(ArraySchema schema) {
+      super(schema);
+      this.integers = DataSchema.INTEGER.equals(schema.getItems().get(0).getDatatype());
+    }
+
+    @Override
+    void write(JsonWriter writer, Object value) throws IOException {
+      if (value instanceof long[]) {
+        writer.beginArray();
+        for (long item : (long[]) value) {
+          writer.value(item);
+        }
+        writer.endArray();
+      } else if (value instanceof double[]) {
+        if (integers) {
+          throw mismatch(DataSchema.INTEGER, value);
+        }
+
+        writer.beginArray();
+        for (double item : (double[]) value) {
+          writer.value(item);
+        }
+        writer.endArray();
+      } else {
+        super.write(writer, value);
+      }
+    }
+
+    @Override
+    Object read(JsonReader reader) throws IOException {
+      reader.beginArray();
+      int size = 0;
+
+      if (integers) {
+        long[] values = new long[16];
+        while (reader.hasNext()) {
+          if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+          }
+          values[size ++] = reader.nextLong();
+        }
+        reader.endArray();
+        return size == values.length ? values : Arrays.copyOf(values, size);
+      }
+
+      double[] values = new double[16];
+      while (reader.hasNext()) {
+        if (size == values.length) {
+          values = Arrays.copyOf(values, size * 2);
+        }
+        values[size ++] = reader.nextDouble();
+      }
+      reader.endArray();
+      return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+  }
+
+  private static class ObjectCodec extends PayloadCodec {
+    private final String[] names;
+    private final String[] tags;
+    private final PayloadCodec[] properties;
+
+    ObjectCodec(ObjectSchema schema) {
+      Map<String, DataSchema> schemas = schema.getProperties();
+      this.names = new String[schemas.size()];
+      this.tags = new String[schemas.size()];
+      this.properties = new PayloadCodec[schemas.size()];
+
+      int i = 0;
+      for (Map.Entry<String, DataSchema> property : schemas.entrySet()) {
+        names[i] = property.getKey();
+        tags[i] = property.getKey();
+
+        for (String semanticType : property.getValue().getSemanticTypes()) {
+          tags[i] = semanticType;
+          break;
+        }
+
+        properties[i] = forSchema(property.getValue());
+        i ++;
+      }
+    }
+
+    @Override
+    String getDatatype() {
+      return DataSchema.OBJECT;
+    }
+
+    @Override
+    public String encodeObject(Object[] payloadTags, Object[] values) {
+      BufferWriter buffer = BUFFERS.get();
+
+      try {
+        JsonWriter writer = newWriter(buffer);
+        writer.beginObject();
+
+        for (int i = 0; i < names.length; i ++) {
+          int position = indexOf(payloadTags, tags[i]);
+
+          if (position >= 0 && position < values.length) {
+            writer.name(names[i]);
+            properties[i].write(writer, values[position]);
+          }
+        }
+
+        writer.endObject();
+        writer.flush();
+        return buffer.drain();
+      } catch (IOException e) {
+        // Should not happen when writing to a buffer
+        throw new IllegalArgumentException(e.getMessage(), e);
+      } finally {
+        buffer.reset();
+      }
+    }
+
+    @Override
+    void write(JsonWriter writer, Object value) throws IOException {
+      writeInferred(writer, value);
+    }
+
+    @Override
+    Object read(JsonReader reader) throws IOException {
+      Map<String, Object> object = new LinkedHashMap<String, Object>();
+      reader.beginObject();
+
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        int position = indexOf(names, name);
+        object.put(position >= 0 ? tags[position] : name,
+            position >= 0 ? properties[position].read(reader) : readInferred(reader));
+      }
+
+      reader.endObject();
+      return object;
+    }
+
+    @Override
+    Object readTop(JsonReader reader) throws IOException {
+      // Objects usually have the properties described by the schema, and no others
+      Object[] payloadTags = new Object[names.length];
+      Object[] values = new Object[names.length];
+      int size = 0;
+      reader.beginObject();
+
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        int position = indexOf(names, name);
+
+        if (position >= 0) {
+          payloadTags = ensureCapacity(payloadTags, size);
+          values = ensureCapacity(values, size);
+          payloadTags[size] = tags[position];
+          values[size] = properties[position].read(reader);
+          size ++;
+        } else {
+          // Properties not described by the schema are not exposed to agents
+          reader.skipValue();
+        }
+      }
+
+      reader.endObject();
+      return new ObjectValue(trim(payloadTags, size), trim(values, size));
+    }
+
+    private static int indexOf(Object[] array, Object value) {
+      for (int i = 0; i < array.length; i ++) {
+        if (value.equals(array[i])) {
+          return i;
+        }
+      }
+
+      return -1;
+    }
+  }
+
+  /* A reusable, unsynchronized writer over a string builder. */
+  private static class BufferWriter extends Writer {
+    private StringBuilder builder = new StringBuilder(256);
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+      builder.append(chars, offset, length);
+    }
+
+    @Override
+    public void write(String string, int offset, int length) {
+      builder.append(string, offset, offset + length);
+    }
+
+    @Override
+    public void write(int c) {
+      builder.append((char) c);
+    }
+
+    String drain() {
+      return builder.toString();
+    }
+
+    void reset() {
+      if (builder.capacity() > MAX_RETAINED_BUFFER) {
+        builder = new StringBuilder(256);
+      } else {
+        builder.setLength(0);
+      }
+    }
+
+    @Override
+    public void flush() { }
+
+    @Override
+    public void close() { }
+  }
+}
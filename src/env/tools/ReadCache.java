@@ -0,0 +1,138 @@
+package tools;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * A short-lived cache for the results of property reads. Each property (identified by its semantic
+ * type) has its own time-to-live, and properties without a time-to-live are not cached. While a
+ * read is in flight, concurrent reads of the same property wait for its result instead of issuing
+ * duplicate requests.
+ *
+ * @param <V> The type of cached results.
+ */
+public class ReadCache<V> {
+  private final Predicate<V> cacheable;
+  private final Map<String, Long> ttls;
+  private final Map<String, Entry<V>> entries;
+  private final Map<String, CompletableFuture<V>> inFlight;
+  private final AtomicLong generation;
+
+  /**
+   * @param cacheable Decides which results can be cached (e.g., only successful reads).
+   */
+  public ReadCache(Predicate<V> cacheable) {
+    this.cacheable = cacheable;
+    this.ttls = new ConcurrentHashMap<String, Long>();
+    this.entries = new ConcurrentHashMap<String, Entry<V>>();
+    this.inFlight = new ConcurrentHashMap<String, CompletableFuture<V>>();
+    this.generation = new AtomicLong();
+  }
+
+  /**
+   * Sets the time-to-live of a property's cached results.
+   *
+   * @param key The semantic type of the property.
+   * @param ttlMillis The time-to-live in milliseconds. A value of 0 disables caching.
+   */
+  public void setTTL(String key, long ttlMillis) {
+    if (ttlMillis > 0) {
+      ttls.put(key, ttlMillis);
+    } else {
+      ttls.remove(key);
+      entries.remove(key);
+    }
+  }
+
+  /**
+   * @param key The semantic type of the property.
+   * @return True if the results of reading the property are cached.
+   */
+  public boolean isCached(String key) {
+    return ttls.containsKey(key);
+  }
+
+  /**
+   * Reads a property through the cache: returns a fresh cached result, joins a read that is in
+   * flight, or performs the read and caches its result.
+   *
+   * @param key The semantic type of the property.
+   * @param read The read to be performed on a cache miss.
+   * @return The result of the read.
+   * @throws IOException If the read failed.
+   */
+  public V read(String key, Callable<V> read) throws IOException {
+    Entry<V> entry = entries.get(key);
+
+    if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+      return entry.value;
+    }
+
+    CompletableFuture<V> pending = new CompletableFuture<V>();
+    CompletableFuture<V> existing = inFlight.putIfAbsent(key, pending);
+
+    if (existing != null) {
+      return join(existing);
+    }
+
+    long readGeneration = generation.get();
+
+    try {
+      V value = read.call();
+      Long ttl = ttls.get(key);
+
+      // Results of reads that started before an invalidation are not cached
+      if (ttl != null && cacheable.test(value) && readGeneration == generation.get()) {
+        entries.put(key, new Entry<V>(value, System.currentTimeMillis() + ttl));
+      }
+
+      pending.complete(value);
+      return value;
+    } catch (Exception e) {
+      pending.completeExceptionally(e);
+      throw e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+    } finally {
+      inFlight.remove(key, pending);
+    }
+  }
+
+  /**
+   * Removes all cached results, e.g. after a write or an action that may change the Thing's state.
+   * Reads that are in flight are no longer joined, since they may return the previous state.
+   */
+  public void invalidate() {
+    generation.incrementAndGet();
+    entries.clear();
+    inFlight.clear();
+  }
+
+  private V join(CompletableFuture<V> pending) throws IOException {
+    try {
+      return pending.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for a pending read.", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause().getMessage(), e.getCause());
+    }
+  }
+
+  private static class Entry<V> {
+    private final V value;
+    private final long expiresAt;
+
+    Entry(V value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package tools;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A transport that records the requests issued through another transport, together with the
+ * responses received and their latencies, to a {@link ThingRecording}. Requests that fail (e.g.,
+ * because the Thing is unreachable) are not recorded.
+ *
+ * Responses are recorded in full, so payloads opened as streams (see {@link
+ * ThingTransport#open(ThingRequest)}) are read completely before they are handed out.
+ *
+ */
+public class RecordingTransport implements ThingTransport, Closeable {
+  private final ThingTransport delegate;
+  private final ThingRecording.Appender appender;
+
+  /**
+   * @param delegate The transport used to issue the requests.
+   * @param appender The appender of the recording file.
+   */
+  public RecordingTransport(ThingTransport delegate, ThingRecording.Appender appender) {
+    this.delegate = delegate;
+    this.appender = appender;
+  }
+
+  @Override
+  public ThingResponse execute(ThingRequest request) throws IOException {
+    long start = System.nanoTime();
+    ThingResponse response = delegate.execute(request);
+    appender.append(request, response, System.nanoTime() - start);
+
+    return response;
+  }
+
+  /* Closes the transport used to issue the requests. The recording file stays open. */
+  @Override
+  public void close() throws IOException {
+    if (delegate instanceof Closeable) {
+      ((Closeable) delegate).close();
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package tools;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+
+import ch.unisg.ics.interactions.wot.td.clients.TDHttpResponse;
+import tools.ThingRecording.Exchange;
+
+/**
+ * A transport that answers requests from a {@link ThingRecording} instead of issuing them, e.g. to
+ * exercise the plans of many agents offline and faster than the Things allow.
+ *
+ * Requests are matched to the exchanges recorded for the same affordance (operation type, method,
+ * and target), and to those recorded with the same payload if there are any. The responses
+ * recorded for a request are replayed in the order in which they were recorded, and from the start
+ * again once all were replayed, such that a short recording can drive a longer simulation. Each
+ * replay transport keeps its own position in the recording. Responses are returned immediately, or
+ * after the recorded latency.
+ *
+ */
+public class ReplayTransport implements ThingTransport {
+  private final ThingRecording recording;
+  private final boolean realTime;
+  private final Map<String, AtomicInteger> positions;
+
+  /**
+   * @param recording The recording to replay.
+   * @param realTime When set to true, responses are returned after their recorded latency.
+   * Otherwise, they are returned as fast as possible.
+   */
+  public ReplayTransport(ThingRecording recording, boolean realTime) {
+    this.recording = recording;
+    this.realTime = realTime;
+    this.positions = new ConcurrentHashMap<String, AtomicInteger>();
+  }
+
+  @Override
+  public ThingResponse execute(ThingRequest request) throws IOException {
+    String key = ThingRecording.requestKey(request);
+    List<Exchange> exchanges = recording.exchangesWithPayload(request);
+
+    if (exchanges.isEmpty()) {
+      // E.g., a value written for the first time, answered like the other writes
+      key = ThingRecording.affordanceKey(request);
+      exchanges = recording.exchangesFor(request);
+    }
+
+    if (exchanges.isEmpty()) {
+      throw new IOException("No recorded response for request: " + request.getMethod() + " "
+          + request.getTarget());
+    }
+
+    int position = positions.computeIfAbsent(key, k -> new AtomicInteger()).getAndIncrement();
+    Exchange exchange = exchanges.get(Math.floorMod(position, exchanges.size()));
+
+    if (realTime) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(exchange.getLatencyNanos());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while replaying: " + request.getTarget());
+      }
+    }
+
+    return toResponse(exchange);
+  }
+
+  private static ThingResponse toResponse(Exchange exchange) {
+    BasicClassicHttpResponse response = new BasicClassicHttpResponse(exchange.getStatusCode());
+    Map<String, String> headers = new HashMap<String, String>(exchange.getHeaders());
+    Optional<byte[]> payload = exchange.getResponsePayload();
+    String contentType = headers.get("Content-Type");
+
+    if (payload.isPresent() && CborCodec.isCbor(contentType)) {
+      return new ThingResponse(new TDHttpResponse(response), headers, payload);
+    }
+
+    if (payload.isPresent()) {
+      // Textual payloads are recorded as UTF-8, whatever the charset they were received in
+      ContentType type = contentType == null ? ContentType.APPLICATION_JSON
+          : ContentType.create(ContentType.parse(contentType).getMimeType(),
+              StandardCharsets.UTF_8);
+      response.setEntity(new ByteArrayEntity(payload.get(), type));
+    }
+
+    return new ThingResponse(new TDHttpResponse(response), headers);
+  }
+}
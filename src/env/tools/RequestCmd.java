@@ -0,0 +1,116 @@
+package tools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import cartago.IBlockingCmd;
+import tools.AffordanceMetrics.Phase;
+
+/**
+ * Blocking command used by Thing artifacts to issue requests without holding the artifact's lock.
+ * Multiple requests are issued in parallel over the transport's pooled connections. The network
+ * latency and the outcome of each request are recorded in the metrics of its affordance, and
+ * requests are traced when they are handed to the transport (i.e., reads served from the read
+ * cache are not traced).
+ *
+ */
+class RequestCmd implements IBlockingCmd {
+  private final ThingTransport transport;
+  private final ThingRequest[] requests;
+  private final AffordanceMetrics[] metrics;
+  final ThingResponse[] responses;
+  Optional<IOException> error;
+  private ReadCache<ThingResponse> readCache;
+  private String[] cacheKeys;
+
+  RequestCmd(ThingTransport transport, ThingRequest[] requests, AffordanceMetrics[] metrics) {
+    this.transport = transport;
+    this.requests = requests;
+    this.metrics = metrics;
+    this.responses = new ThingResponse[requests.length];
+    this.error = Optional.empty();
+  }
+
+  /**
+   * Reads properties through a read cache, such that cached results are reused and in-flight
+   * reads are joined.
+   *
+   * @param readCache The read cache.
+   * @param cacheKeys The cache key (i.e., the semantic type) of each request, or null for
+   * requests that are not cached.
+   * @return This command.
+   */
+  RequestCmd readThrough(ReadCache<ThingResponse> readCache, String[] cacheKeys) {
+    this.readCache = readCache;
+    this.cacheKeys = cacheKeys;
+    return this;
+  }
+
+  @Override
+  public void exec() {
+    if (requests.length == 1) {
+      try {
+        responses[0] = send(0);
+      } catch (IOException e) {
+        error = Optional.of(e);
+      }
+      return;
+    }
+
+    // Issue all requests in parallel over the transport's pooled connections
+    List<Future<ThingResponse>> futures = new ArrayList<Future<ThingResponse>>();
+    for (int i = 0; i < requests.length; i ++) {
+      int index = i;
+      futures.add(ThingExecutors.requests().submit(() -> send(index)));
+    }
+
+    for (int i = 0; i < futures.size(); i ++) {
+      try {
+        responses[i] = futures.get(i).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        error = Optional.of(new IOException("Interrupted while waiting for responses.", e));
+        return;
+      } catch (ExecutionException e) {
+        if (!error.isPresent()) {
+          error = Optional.of(e.getCause() instanceof IOException ? (IOException) e.getCause()
+              : new IOException(e.getCause().getMessage(), e.getCause()));
+        }
+      }
+    }
+  }
+
+  /* Only reads that miss the cache are recorded as requests. */
+  private ThingResponse send(int index) throws IOException {
+    if (readCache != null && cacheKeys[index] != null) {
+      return readCache.read(cacheKeys[index],
+          () -> execute(transport, requests[index], metrics[index]));
+    }
+
+    return execute(transport, requests[index], metrics[index]);
+  }
+
+  /* Traces and issues a request, and records its network latency and outcome. */
+  static ThingResponse execute(ThingTransport transport, ThingRequest request,
+      AffordanceMetrics metrics) throws IOException {
+    // Formatted and written in the background, and only if request tracing is enabled
+    RequestTracer.getInstance().trace(metrics.getTitle(), request);
+
+    long start = System.nanoTime();
+
+    try {
+      ThingResponse response = transport.execute(request);
+      metrics.recordResponse(response.getStatusCode());
+      return response;
+    } catch (IOException e) {
+      metrics.recordError();
+      throw e;
+    } finally {
+      metrics.recordLatency(Phase.NETWORK, System.nanoTime() - start);
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package tools;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Traces the requests issued by Thing artifacts without slowing down the request path. Traced
+ * requests are handed to a bounded buffer and are formatted and written by a background thread to
+ * the <code>tools.trace</code> logger, i.e. to the handlers configured for that logger (e.g., a
+ * <code>FileHandler</code> in <code>logging.properties</code>). When the buffer is full, traces are
+ * dropped rather than blocking the caller.
+ *
+ * Tracing is enabled by setting the level of the <code>tools.trace</code> logger to
+ * <code>FINE</code> or lower. The system properties <code>tools.trace.bufferSize</code> (default
+ * 1024) and <code>tools.trace.sampleRate</code> (between 0 and 1, default 1) set the size of the
+ * buffer and the fraction of requests that are traced.
+ *
+ */
+public class RequestTracer {
+  private static final RequestTracer INSTANCE = new RequestTracer(Logger.getLogger("tools.trace"),
+      Integer.getInteger("tools.trace.bufferSize", 1024),
+      Double.parseDouble(System.getProperty("tools.trace.sampleRate", "1")));
+
+  private final Logger logger;
+  private final BlockingQueue<Trace> buffer;
+  private final LongAdder dropped;
+  private volatile double sampleRate;
+
+  RequestTracer(Logger logger, int bufferSize, double sampleRate) {
+    this.logger = logger;
+    this.buffer = new ArrayBlockingQueue<Trace>(bufferSize);
+    this.dropped = new LongAdder();
+    this.sampleRate = sampleRate;
+
+    Thread writer = ThingExecutors.daemonThreads("request-trace").newThread(this::drain);
+    writer.start();
+  }
+
+  public static RequestTracer getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @param sampleRate The fraction of requests to be traced, between 0 and 1.
+   */
+  public void setSampleRate(double sampleRate) {
+    this.sampleRate = sampleRate;
+  }
+
+  /**
+   * @return The number of traces dropped because the buffer was full.
+   */
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  /**
+   * Traces a request, if tracing is enabled and the request is sampled. The request is formatted
+   * later by the background writer, so it should not be modified once it is traced.
+   *
+   * @param source The name of the Thing or artifact that issues the request.
+   * @param request The request to be traced.
+   */
+  public void trace(String source, ThingRequest request) {
+    if (!logger.isLoggable(Level.FINE)) {
+      return;
+    }
+
+    double rate = sampleRate;
+    if (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate) {
+      return;
+    }
+
+    if (!buffer.offer(new Trace(source, request, System.currentTimeMillis()))) {
+      dropped.increment();
+    }
+  }
+
+  private void drain() {
+    while (true) {
+      try {
+        Trace trace = buffer.take();
+        LogRecord record = new LogRecord(Level.FINE, "[{0}] {1}");
+        record.setParameters(new Object[] { trace.source, trace.request });
+        record.setMillis(trace.timestamp);
+        record.setLoggerName(logger.getName());
+        logger.log(record);
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException e) {
+        // Keep draining, a failing handler should not stop tracing
+      }
+    }
+  }
+
+  private static class Trace {
+    private final String source;
+    private final ThingRequest request;
+    private final long timestamp;
+
+    Trace(String source, ThingRequest request, long timestamp) {
+      this.source = source;
+      this.request = request;
+      this.timestamp = timestamp;
+    }
+  }
+}
@@ -0,0 +1,370 @@
+package tools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+import ch.unisg.ics.interactions.wot.td.vocabularies.TD;
+import tools.HostGuards.Guard;
+
+/**
+ * A {@link ThingTransport} that protects Thing artifacts (and the threads they use) from slow or
+ * unavailable hosts. Requests are sent via a delegate transport, with:
+ * <ul>
+ * <li>a deadline for each request, including all of its retries;</li>
+ * <li>retries with jittered exponential backoff, only for idempotent requests (reads, and writes
+ * via idempotent HTTP methods) unless retrying actions is enabled;</li>
+ * <li>a {@link CircuitBreaker} per host, such that requests to a failing host fail fast;</li>
+ * <li>a bulkhead per host that caps the number of concurrent requests to the host.</li>
+ * </ul>
+ *
+ * All of these are disabled by default, i.e. requests are passed through to the delegate until a
+ * {@link Policy} enables them. Breakers and bulkheads are shared by all transports via the
+ * {@link HostGuards} registry. Connection errors, timeouts, and responses with a 5xx status code
+ * count as failures.
+ *
+ */
+public class ResilientTransport implements ThingTransport {
+  private static final Set<String> IDEMPOTENT_METHODS = new HashSet<String>(
+      Arrays.asList("GET", "HEAD", "PUT", "DELETE", "OPTIONS"));
+  private static final long BASE_BACKOFF_MILLIS = 100;
+  private static final long MAX_BACKOFF_MILLIS = 2000;
+
+  private volatile ThingTransport delegate;
+  private volatile Policy policy;
+  private final HostGuards guards;
+  /* The hosts this transport sent requests to. */
+  private final Set<String> hosts;
+
+  /**
+   * @param delegate The transport used to send requests.
+   */
+  public ResilientTransport(ThingTransport delegate) {
+    this(delegate, HostGuards.getInstance());
+  }
+
+  ResilientTransport(ThingTransport delegate, HostGuards guards) {
+    this.delegate = delegate;
+    this.policy = new Policy();
+    this.guards = guards;
+    this.hosts = ConcurrentHashMap.newKeySet();
+  }
+
+  public void setDelegate(ThingTransport delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * Sets the policy used for new requests. The breakers and bulkheads of the hosts this transport
+   * sent requests to are reset with the settings of the policy, also for the other transports
+   * that share them.
+   *
+   * @param policy The resilience policy.
+   */
+  public void setPolicy(Policy policy) {
+    this.policy = policy;
+
+    for (String host : hosts) {
+      guards.reset(host, policy);
+    }
+  }
+
+  /**
+   * Enables or disables retrying action invocations, without resetting breakers and bulkheads.
+   *
+   * @param retryActions When set to true, failed action invocations are retried.
+   */
+  public void setRetryActions(boolean retryActions) {
+    this.policy = new Policy(policy).setRetryActions(retryActions);
+  }
+
+  /**
+   * @param host The host (i.e., the authority of request targets, such as
+   * <code>localhost:1080</code>).
+   * @return The breaker that guards the host, if the policy of this transport uses breakers.
+   */
+  public Optional<CircuitBreaker> getCircuitBreaker(String host) {
+    if (!policy.usesBreaker()) {
+      return Optional.empty();
+    }
+
+    return Optional.ofNullable(guards.getCircuitBreaker(host));
+  }
+
+  @Override
+  public ThingResponse execute(ThingRequest request) throws IOException {
+    return execute(request, delegateRequest -> delegate.execute(delegateRequest),
+        ThingResponse::getStatusCode);
+  }
+
+  /**
+   * Opens a response stream with the same protections as {@link #execute(ThingRequest)}. The
+   * request only counts against the host's bulkhead until the response headers are received, and
+   * streams are retried only if they fail before they are returned.
+   */
+  @Override
+  public ThingResponseStream open(ThingRequest request) throws IOException {
+    return execute(request, delegateRequest -> delegate.open(delegateRequest),
+        ThingResponseStream::getStatusCode);
+  }
+
+  private <T> T execute(ThingRequest request, Exchange<T> exchange, ToIntFunction<T> statusCode)
+      throws IOException {
+    Policy policy = this.policy;
+    Guard host = guardOf(URI.create(request.getTarget()).getAuthority(), policy);
+    long deadline = policy.deadlineMillis > 0
+        ? System.currentTimeMillis() + policy.deadlineMillis : Long.MAX_VALUE;
+    int attempts = isRetryable(request, policy) ? policy.maxRetries + 1 : 1;
+
+    for (int attempt = 1; ; attempt ++) {
+      try {
+        T response = executeOnce(request, host, policy, deadline, exchange, statusCode);
+
+        if (attempt == attempts || !isTransient(statusCode.applyAsInt(response))) {
+          return response;
+        }
+
+        if (response instanceof Closeable) {
+          // Release the connection of a response that is not returned
+          ((Closeable) response).close();
+        }
+      } catch (CircuitOpenException e) {
+        throw e;
+      } catch (IOException e) {
+        if (attempt == attempts) {
+          throw e;
+        }
+      }
+
+      if (!backOff(attempt, deadline)) {
+        throw new IOException("Deadline exceeded for request to: " + request.getTarget());
+      }
+    }
+  }
+
+  private <T> T executeOnce(ThingRequest request, Guard host, Policy policy, long deadline,
+      Exchange<T> exchange, ToIntFunction<T> statusCode) throws IOException {
+    // Breakers and bulkheads shared with other transports are only used if this policy enables them
+    CircuitBreaker breaker = policy.usesBreaker() ? host.breaker : null;
+    Semaphore bulkhead = policy.usesBulkhead() ? host.bulkhead : null;
+
+    if (breaker != null && !breaker.tryAcquire()) {
+      throw new CircuitOpenException("Circuit open, failing fast for: " + request.getTarget());
+    }
+
+    boolean permitted = bulkhead == null;
+
+    try {
+      permitted = permitted || bulkhead.tryAcquire(remaining(deadline), TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    if (!permitted) {
+      if (breaker != null) {
+        // Not a failure of the host, but a probe (if any) has to be given back
+        breaker.release();
+      }
+      throw new IOException("Too many concurrent requests to: " + request.getTarget());
+    }
+
+    boolean recorded = breaker == null;
+
+    try {
+      if (deadline != Long.MAX_VALUE) {
+        request.setTimeout(Math.max(1, remaining(deadline)));
+      }
+
+      T response = exchange.send(request);
+
+      if (breaker != null) {
+        if (statusCode.applyAsInt(response) >= 500) {
+          breaker.recordFailure();
+        } else {
+          breaker.recordSuccess();
+        }
+      }
+
+      recorded = true;
+      return response;
+    } catch (IOException e) {
+      if (breaker != null) {
+        breaker.recordFailure();
+      }
+      recorded = true;
+      throw e;
+    } finally {
+      if (!recorded) {
+        // E.g., a runtime exception of the delegate, which must not leave a probe pending
+        breaker.release();
+      }
+
+      if (bulkhead != null) {
+        bulkhead.release();
+      }
+    }
+  }
+
+  private Guard guardOf(String authority, Policy policy) {
+    if (!policy.usesBreaker() && !policy.usesBulkhead()) {
+      return null;
+    }
+
+    hosts.add(authority == null ? "" : authority);
+    return guards.get(authority, policy);
+  }
+
+  private static boolean isRetryable(ThingRequest request, Policy policy) {
+    if (request.getOperationType().equals(TD.invokeAction)) {
+      return policy.retryActions;
+    }
+
+    return IDEMPOTENT_METHODS.contains(request.getMethod());
+  }
+
+  private static boolean isTransient(int statusCode) {
+    return statusCode == 502 || statusCode == 503 || statusCode == 504;
+  }
+
+  /* Sleeps for a random time of up to 100 ms * 2^(attempt - 1), capped at 2 s and at the
+   * deadline. Returns false if the deadline does not leave time for another attempt. */
+  private static boolean backOff(int attempt, long deadline) {
+    long maxBackoff = Math.min(MAX_BACKOFF_MILLIS,
+        BASE_BACKOFF_MILLIS << Math.min(attempt - 1, 20));
+    long backoff = ThreadLocalRandom.current().nextLong(maxBackoff + 1);
+
+    if (backoff >= remaining(deadline)) {
+      return false;
+    }
+
+    try {
+      Thread.sleep(backoff);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private static long remaining(long deadline) {
+    return deadline == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - System.currentTimeMillis();
+  }
+
+  /* Sends a request via the delegate, e.g. to receive a full response or a response stream. */
+  private interface Exchange<T> {
+    T send(ThingRequest request) throws IOException;
+  }
+
+  /**
+   * Raised when a request is not sent because the breaker of its host is open.
+   */
+  public static class CircuitOpenException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * The settings of a {@link ResilientTransport}. By default, requests are passed through: they
+   * have no deadline other than the delegate's timeouts, are not retried, and are neither guarded
+   * by a breaker nor limited by a bulkhead.
+   */
+  public static class Policy {
+    private long deadlineMillis;
+    private int maxRetries;
+    private boolean retryActions;
+    private int failureThreshold;
+    private long openMillis;
+    private int maxConcurrentRequests;
+
+    public Policy() {
+      this.deadlineMillis = 0;
+      this.maxRetries = 0;
+      this.retryActions = false;
+      this.failureThreshold = 0;
+      this.openMillis = 10000;
+      this.maxConcurrentRequests = 0;
+    }
+
+    private Policy(Policy policy) {
+      this.deadlineMillis = policy.deadlineMillis;
+      this.maxRetries = policy.maxRetries;
+      this.retryActions = policy.retryActions;
+      this.failureThreshold = policy.failureThreshold;
+      this.openMillis = policy.openMillis;
+      this.maxConcurrentRequests = policy.maxConcurrentRequests;
+    }
+
+    /**
+     * @param millis The deadline of a request, including its retries. 0 disables the deadline.
+     */
+    public Policy setDeadline(long millis) {
+      this.deadlineMillis = millis;
+      return this;
+    }
+
+    public Policy setMaxRetries(int maxRetries) {
+      this.maxRetries = maxRetries;
+      return this;
+    }
+
+    public Policy setRetryActions(boolean retryActions) {
+      this.retryActions = retryActions;
+      return this;
+    }
+
+    /**
+     * @param failureThreshold The number of consecutive failures after which the breaker of a
+     * host opens. 0 disables the breaker.
+     */
+    public Policy setFailureThreshold(int failureThreshold) {
+      this.failureThreshold = failureThreshold;
+      return this;
+    }
+
+    public Policy setOpenDuration(long millis) {
+      this.openMillis = millis;
+      return this;
+    }
+
+    /**
+     * @param maxConcurrentRequests The maximum number of concurrent requests to a host. 0 disables
+     * the bulkhead.
+     */
+    public Policy setMaxConcurrentRequests(int maxConcurrentRequests) {
+      this.maxConcurrentRequests = maxConcurrentRequests;
+      return this;
+    }
+
+    int getFailureThreshold() {
+      return failureThreshold;
+    }
+
+    long getOpenDuration() {
+      return openMillis;
+    }
+
+    int getMaxConcurrentRequests() {
+      return maxConcurrentRequests;
+    }
+
+    boolean usesBreaker() {
+      return failureThreshold > 0;
+    }
+
+    boolean usesBulkhead() {
+      return maxConcurrentRequests > 0;
+    }
+  }
+}
@@ -0,0 +1,473 @@
+package tools;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import ch.unisg.ics.interactions.wot.td.ThingDescription;
+import ch.unisg.ics.interactions.wot.td.affordances.ActionAffordance;
+import ch.unisg.ics.interactions.wot.td.affordances.Form;
+import ch.unisg.ics.interactions.wot.td.affordances.PropertyAffordance;
+import ch.unisg.ics.interactions.wot.td.schemas.ArraySchema;
+import ch.unisg.ics.interactions.wot.td.schemas.BooleanSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.DataSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.IntegerSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.NullSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.NumberSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.ObjectSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.StringSchema;
+import ch.unisg.ics.interactions.wot.td.security.APIKeySecurityScheme;
+import ch.unisg.ics.interactions.wot.td.security.APIKeySecurityScheme.TokenLocation;
+import ch.unisg.ics.interactions.wot.td.security.NoSecurityScheme;
+import ch.unisg.ics.interactions.wot.td.security.SecurityScheme;
+
+/**
+ * A directory of TD snapshots: the last parsed model of each TD retrieved by the {@link
+ * ThingDescriptionCache}, together with the validators (ETag / Last-Modified) it was served with.
+ * After a restart, the cache revalidates a snapshot with a conditional request instead of
+ * downloading the TD again, and falls back to the snapshot if the TD cannot be retrieved.
+ *
+ * Snapshots store the parsed model (affordances, forms, data schemas, and security schemes) in a
+ * compact binary format, one compressed file per TD URL, and TDs are rebuilt from them with the
+ * TD builders, such that a snapshot does not have to be parsed as RDF again. Only the parts of
+ * the model used by the artifacts are stored (e.g., not the RDF graph, nor the enumerations and
+ * bounds of data schemas). TDs with security schemes other than API keys or no security are not
+ * snapshotted. Snapshots are replaced atomically, and unreadable snapshots (e.g., written by an
+ * incompatible version) are ignored.
+ *
+ */
+public class TDSnapshotStore {
+  private static final int MAGIC = 0x54445332;
+
+  private static final int NO_SECURITY = 0;
+  private static final int API_KEY = 1;
+
+  private final Path directory;
+
+  /**
+   * @param directory The directory in which snapshots are stored. It is created if it does not
+   * exist.
+   */
+  public TDSnapshotStore(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Reads the snapshot of a TD.
+   *
+   * @param url The URL of the TD.
+   * @return The snapshot, or an empty optional if there is no readable snapshot for the URL.
+   */
+  public Optional<Snapshot> read(String url) {
+    try (InputStream file = Files.newInputStream(pathOf(url));
+        DataInputStream in = new DataInputStream(new GZIPInputStream(file))) {
+      if (in.readInt() != MAGIC || !in.readUTF().equals(url)) {
+        return Optional.empty();
+      }
+
+      String etag = readOptional(in);
+      String lastModified = readOptional(in);
+
+      return Optional.of(new Snapshot(readThingDescription(in), etag, lastModified));
+    } catch (IOException | RuntimeException e) {
+      // Missing, corrupted, or truncated snapshots are treated alike
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Writes (or replaces) the snapshot of a TD.
+   *
+   * @param url The URL of the TD.
+   * @param snapshot The snapshot.
+   * @throws IOException If the snapshot could not be written, or if the TD uses features that
+   * snapshots do not support.
+   */
+  public void write(String url, Snapshot snapshot) throws IOException {
+    Files.createDirectories(directory);
+
+    Path target = pathOf(url);
+    Path temp = Files.createTempFile(directory, "td", ".tmp");
+
+    try {
+      try (OutputStream file = Files.newOutputStream(temp);
+          DataOutputStream out = new DataOutputStream(new GZIPOutputStream(file))) {
+        out.writeInt(MAGIC);
+        out.writeUTF(url);
+        writeOptional(out, snapshot.etag);
+        writeOptional(out, snapshot.lastModified);
+        writeThingDescription(out, snapshot.td);
+      }
+
+      // Readers never see a partially written snapshot
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Removes the snapshot of a TD, if any.
+   *
+   * @param url The URL of the TD.
+   * @throws IOException If the snapshot could not be removed.
+   */
+  public void remove(String url) throws IOException {
+    Files.deleteIfExists(pathOf(url));
+  }
+
+  private Path pathOf(String url) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256")
+          .digest(url.getBytes(StandardCharsets.UTF_8));
+      StringBuilder name = new StringBuilder();
+
+      for (byte b : digest) {
+        name.append(Character.forDigit((b >> 4) & 0xf, 16))
+          .append(Character.forDigit(b & 0xf, 16));
+      }
+
+      return directory.resolve(name.append(".td").toString());
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform supports SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void writeThingDescription(DataOutputStream out, ThingDescription td)
+      throws IOException {
+    out.writeUTF(td.getTitle());
+    writeOptional(out, td.getThingURI().orElse(null));
+    writeOptional(out, td.getBaseURI().orElse(null));
+    writeStrings(out, td.getSemanticTypes());
+
+    List<SecurityScheme> schemes = td.getSecuritySchemes();
+    out.writeInt(schemes.size());
+
+    for (SecurityScheme scheme : schemes) {
+      if (scheme instanceof APIKeySecurityScheme) {
+        APIKeySecurityScheme apiKeyScheme = (APIKeySecurityScheme) scheme;
+        out.write(API_KEY);
+        out.writeUTF(apiKeyScheme.getIn().name());
+        writeOptional(out, apiKeyScheme.getName().orElse(null));
+      } else if (scheme instanceof NoSecurityScheme) {
+        out.write(NO_SECURITY);
+      } else {
+        throw new IOException("Unsupported security scheme: " + scheme.getSchemaType());
+      }
+    }
+
+    out.writeInt(td.getProperties().size());
+
+    for (PropertyAffordance property : td.getProperties()) {
+      writeOptional(out, property.getTitle().orElse(null));
+      writeStrings(out, property.getSemanticTypes());
+      writeForms(out, property.getForms());
+      writeSchema(out, property.getDataSchema());
+      out.writeBoolean(property.isObservable());
+    }
+
+    out.writeInt(td.getActions().size());
+
+    for (ActionAffordance action : td.getActions()) {
+      writeOptional(out, action.getTitle().orElse(null));
+      writeStrings(out, action.getSemanticTypes());
+      writeForms(out, action.getForms());
+      writeOptionalSchema(out, action.getInputSchema());
+      writeOptionalSchema(out, action.getOutputSchema());
+    }
+  }
+
+  private static ThingDescription readThingDescription(DataInputStream in) throws IOException {
+    ThingDescription.Builder builder = new ThingDescription.Builder(in.readUTF());
+    String thingUri = readOptional(in);
+    String baseUri = readOptional(in);
+
+    if (thingUri != null) {
+      builder.addThingURI(thingUri);
+    }
+    if (baseUri != null) {
+      builder.addBaseURI(baseUri);
+    }
+
+    for (String semanticType : readStrings(in)) {
+      builder.addSemanticType(semanticType);
+    }
+
+    for (int i = in.readInt(); i > 0; i --) {
+      switch (in.read()) {
+        case API_KEY:
+          TokenLocation location = TokenLocation.valueOf(in.readUTF());
+          String name = readOptional(in);
+          builder.addSecurityScheme(name == null ? new APIKeySecurityScheme()
+              : new APIKeySecurityScheme(location, name));
+          break;
+        case NO_SECURITY:
+          builder.addSecurityScheme(new NoSecurityScheme());
+          break;
+        default:
+          throw new EOFException("Invalid snapshot");
+      }
+    }
+
+    for (int i = in.readInt(); i > 0; i --) {
+      String title = readOptional(in);
+      List<String> semanticTypes = readStrings(in);
+      List<Form> forms = readForms(in);
+      PropertyAffordance.Builder property = new PropertyAffordance.Builder(readSchema(in), forms)
+          .addSemanticTypes(semanticTypes);
+
+      if (title != null) {
+        property.addTitle(title);
+      }
+      if (in.readBoolean()) {
+        property.addObserve();
+      }
+
+      builder.addProperty(property.build());
+    }
+
+    for (int i = in.readInt(); i > 0; i --) {
+      String title = readOptional(in);
+      List<String> semanticTypes = readStrings(in);
+      ActionAffordance.Builder action = new ActionAffordance.Builder(readForms(in))
+          .addSemanticTypes(semanticTypes);
+      Optional<DataSchema> input = readOptionalSchema(in);
+      Optional<DataSchema> output = readOptionalSchema(in);
+
+      if (title != null) {
+        action.addTitle(title);
+      }
+      if (input.isPresent()) {
+        action.addInputSchema(input.get());
+      }
+      if (output.isPresent()) {
+        action.addOutputSchema(output.get());
+      }
+
+      builder.addAction(action.build());
+    }
+
+    return builder.build();
+  }
+
+  private static void writeForms(DataOutputStream out, List<Form> forms) throws IOException {
+    out.writeInt(forms.size());
+
+    for (Form form : forms) {
+      out.writeUTF(form.getTarget());
+      out.writeUTF(form.getContentType());
+      writeOptional(out, form.getMethodName().orElse(null));
+      writeStrings(out, form.getOperationTypes());
+    }
+  }
+
+  private static List<Form> readForms(DataInputStream in) throws IOException {
+    List<Form> forms = new ArrayList<Form>();
+
+    for (int i = in.readInt(); i > 0; i --) {
+      Form.Builder form = new Form.Builder(in.readUTF()).setContentType(in.readUTF());
+      String methodName = readOptional(in);
+
+      if (methodName != null) {
+        form.setMethodName(methodName);
+      }
+
+      for (String operationType : readStrings(in)) {
+        form.addOperationType(operationType);
+      }
+
+      forms.add(form.build());
+    }
+
+    return forms;
+  }
+
+  private static void writeSchema(DataOutputStream out, DataSchema schema) throws IOException {
+    out.writeUTF(schema.getDatatype());
+    writeStrings(out, schema.getSemanticTypes());
+
+    if (schema instanceof ObjectSchema) {
+      ObjectSchema objectSchema = (ObjectSchema) schema;
+      out.writeInt(objectSchema.getProperties().size());
+
+      for (Map.Entry<String, DataSchema> property : objectSchema.getProperties().entrySet()) {
+        out.writeUTF(property.getKey());
+        writeSchema(out, property.getValue());
+      }
+
+      writeStrings(out, objectSchema.getRequiredProperties());
+    } else if (schema instanceof ArraySchema) {
+      ArraySchema arraySchema = (ArraySchema) schema;
+      out.writeInt(arraySchema.getItems().size());
+
+      for (DataSchema item : arraySchema.getItems()) {
+        writeSchema(out, item);
+      }
+
+      out.writeInt(arraySchema.getMinItems().orElse(-1));
+      out.writeInt(arraySchema.getMaxItems().orElse(-1));
+    }
+  }
+
+  private static DataSchema readSchema(DataInputStream in) throws IOException {
+    String datatype = in.readUTF();
+    List<String> semanticTypes = readStrings(in);
+    DataSchema.Builder<?, ?> builder;
+
+    switch (datatype) {
+      case DataSchema.OBJECT:
+        ObjectSchema.Builder objectSchema = new ObjectSchema.Builder();
+
+        for (int i = in.readInt(); i > 0; i --) {
+          objectSchema.addProperty(in.readUTF(), readSchema(in));
+        }
+
+        objectSchema.addRequiredProperties(readStrings(in).toArray(new String[0]));
+        builder = objectSchema;
+        break;
+      case DataSchema.ARRAY:
+        ArraySchema.Builder arraySchema = new ArraySchema.Builder();
+
+        for (int i = in.readInt(); i > 0; i --) {
+          arraySchema.addItem(readSchema(in));
+        }
+
+        int minItems = in.readInt();
+        int maxItems = in.readInt();
+
+        if (minItems >= 0) {
+          arraySchema.addMinItems(minItems);
+        }
+        if (maxItems >= 0) {
+          arraySchema.addMaxItems(maxItems);
+        }
+
+        builder = arraySchema;
+        break;
+      case DataSchema.BOOLEAN:
+        builder = new BooleanSchema.Builder();
+        break;
+      case DataSchema.INTEGER:
+        builder = new IntegerSchema.Builder();
+        break;
+      case DataSchema.NUMBER:
+        builder = new NumberSchema.Builder();
+        break;
+      case DataSchema.STRING:
+        builder = new StringSchema.Builder();
+        break;
+      case DataSchema.NULL:
+        builder = new NullSchema.Builder();
+        break;
+      default:
+        throw new EOFException("Invalid snapshot");
+    }
+
+    for (String semanticType : semanticTypes) {
+      builder.addSemanticType(semanticType);
+    }
+
+    return builder.build();
+  }
+
+  private static void writeOptionalSchema(DataOutputStream out, Optional<DataSchema> schema)
+      throws IOException {
+    out.writeBoolean(schema.isPresent());
+
+    if (schema.isPresent()) {
+      writeSchema(out, schema.get());
+    }
+  }
+
+  private static Optional<DataSchema> readOptionalSchema(DataInputStream in) throws IOException {
+    return in.readBoolean() ? Optional.of(readSchema(in)) : Optional.empty();
+  }
+
+  private static void writeStrings(DataOutputStream out, Iterable<String> values)
+      throws IOException {
+    List<String> list = new ArrayList<String>();
+    values.forEach(list::add);
+    out.writeInt(list.size());
+
+    for (String value : list) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static List<String> readStrings(DataInputStream in) throws IOException {
+    List<String> values = new ArrayList<String>();
+
+    for (int i = in.readInt(); i > 0; i --) {
+      values.add(in.readUTF());
+    }
+
+    return values;
+  }
+
+  private static String readOptional(DataInputStream in) throws IOException {
+    switch (in.read()) {
+      case 0:
+        return null;
+      case 1:
+        return in.readUTF();
+      default:
+        throw new EOFException("Invalid snapshot");
+    }
+  }
+
+  private static void writeOptional(DataOutputStream out, String value) throws IOException {
+    if (value == null) {
+      out.write(0);
+    } else {
+      out.write(1);
+      out.writeUTF(value);
+    }
+  }
+
+  /** A parsed TD and the validators its representation was served with. */
+  public static class Snapshot {
+    private final ThingDescription td;
+    private final String etag;
+    private final String lastModified;
+
+    /**
+     * @param td The parsed TD.
+     * @param etag The ETag of the TD's representation, or null.
+     * @param lastModified The Last-Modified date of the TD's representation, or null.
+     */
+    public Snapshot(ThingDescription td, String etag, String lastModified) {
+      this.td = td;
+      this.etag = etag;
+      this.lastModified = lastModified;
+    }
+
+    public ThingDescription getThingDescription() {
+      return td;
+    }
+
+    public Optional<String> getETag() {
+      return Optional.ofNullable(etag);
+    }
+
+    public Optional<String> getLastModified() {
+      return Optional.ofNullable(lastModified);
+    }
+  }
+}
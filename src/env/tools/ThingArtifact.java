@@ -1,56 +1,76 @@
 package tools;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 import cartago.Artifact;
+import cartago.IBlockingCmd;
+import cartago.INTERNAL_OPERATION;
 import cartago.OPERATION;
 import cartago.OpFeedbackParam;
 import ch.unisg.ics.interactions.wot.td.ThingDescription;
-import ch.unisg.ics.interactions.wot.td.ThingDescription.TDFormat;
-import ch.unisg.ics.interactions.wot.td.affordances.ActionAffordance;
-import ch.unisg.ics.interactions.wot.td.affordances.Form;
-import ch.unisg.ics.interactions.wot.td.affordances.PropertyAffordance;
-import ch.unisg.ics.interactions.wot.td.clients.TDHttpRequest;
-import ch.unisg.ics.interactions.wot.td.clients.TDHttpResponse;
-import ch.unisg.ics.interactions.wot.td.io.TDGraphReader;
 import ch.unisg.ics.interactions.wot.td.schemas.ArraySchema;
 import ch.unisg.ics.interactions.wot.td.schemas.DataSchema;
-import ch.unisg.ics.interactions.wot.td.schemas.ObjectSchema;
-import ch.unisg.ics.interactions.wot.td.security.APIKeySecurityScheme;
 import ch.unisg.ics.interactions.wot.td.security.SecurityScheme;
 import ch.unisg.ics.interactions.wot.td.vocabularies.TD;
-import ch.unisg.ics.interactions.wot.td.vocabularies.WoTSec;
+import tools.AffordanceIndex.ResolvedAffordance;
+import tools.AffordanceMetrics.Phase;
+import tools.CircuitBreaker.State;
+import tools.WriteBehindSlot.Pending;
 
 /**
  * A CArtAgO artifact that can interpret a W3C WoT Thing Description (TD) and exposes the affordances 
  * of the described Thing to agents. The artifact uses the hypermedia controls provided in the TD to
  * compose and issue HTTP requests for the exposed affordances.
  * 
+ * Requests are issued without holding the artifact's lock: while a request is in flight, other 
+ * agents can use the artifact, and multiple requests to the same Thing can be outstanding at once.
+ * 
  * Contributors:
  * - Andrei Ciortea (author), Interactions-HSG, University of St. Gallen
  *
  */
 public class ThingArtifact extends Artifact {
-  private ThingDescription td;
-  private Optional<String> apiKey;
-  private boolean dryRun;
+  private static final int DEFAULT_MIN_POLL_INTERVAL = 500;
+  private static final int DEFAULT_MAX_POLL_INTERVAL = 10000;
+  
+  private AffordanceIndex index;
+  private String thingUrl;
+  private String thingName;
+  private ThingTransport transport;
+  private boolean ownsTransport;
+  private ThingClient client;
+  private String thingHost;
+  private State circuitState;
+  private boolean circuitRefreshScheduled;
+  private Map<String, Observation> observations;
+  private ReadCache<ThingResponse> readCache;
+  private Map<String, WriteBehindSlot> writeBehind;
+  private Map<String, Cursor> cursors;
+  private int cursorSequence;
   
   /**
    * Method called by CArtAgO to initialize the artifact. The W3C WoT Thing Description (TD) used by
-   * this artifact is retrieved and parsed during initialization. 
+   * this artifact is retrieved and parsed during initialization. Parsed TDs are shared via the
+   * {@link ThingDescriptionCache}, such that artifacts created for the same TD retrieve and parse
+   * it only once.
    * 
    * @param url A URL that dereferences to a W3C WoT Thing Description.
    */
   public void init(String url) {
     try {
-     td = TDGraphReader.readFromURL(TDFormat.RDF_TURTLE, url);
+     // Only the index is kept, the parsed TD is held by the cache
+     ThingDescription td = ThingDescriptionCache.getInstance().get(url);
+     index = AffordanceIndex.of(td);
+     thingName = td.getTitle();
      
      for (SecurityScheme scheme : td.getSecuritySchemes()) {
        defineObsProperty("securityScheme", scheme.getSchemaType());
@@ -59,8 +79,30 @@ public class ThingArtifact extends Artifact {
       failed(e.getMessage());
     }
     
-    this.apiKey = Optional.empty();
-    this.dryRun = false;
+    this.thingUrl = url;
+    // The artifact holds a reference to the shared transport, which it releases on dispose
+    this.transport = HttpClientTransport.forWorkspace(getId().getWorkspaceId().getName());
+    this.ownsTransport = true;
+    this.client = new ThingClient(transport, this::log);
+    // Breakers are kept per host of the request targets, which may not serve the TD
+    this.thingHost = index.getHost().orElse(URI.create(url).getAuthority());
+    this.circuitState = State.CLOSED;
+    this.circuitRefreshScheduled = false;
+    defineObsProperty("circuitState", circuitState.label());
+    this.observations = new HashMap<String, Observation>();
+    this.readCache = new ReadCache<ThingResponse>(response -> response.getStatusCode() == 200);
+    this.writeBehind = new HashMap<String, WriteBehindSlot>();
+    this.cursors = new HashMap<String, Cursor>();
+    
+    // Allows recording or replaying a whole MAS without changing the agents
+    String replayFile = System.getProperty("tools.replay.file");
+    String recordFile = System.getProperty("tools.record.file");
+    
+    if (replayFile != null) {
+      replayFrom(replayFile, Boolean.getBoolean("tools.replay.realTime"));
+    } else if (recordFile != null) {
+      recordTo(recordFile);
+    }
   }
   
   /**
@@ -68,11 +110,12 @@ public class ThingArtifact extends Artifact {
    * this artifact is retrieved and parsed during initialization.
    * 
    * @param url A URL that dereferences to a W3C WoT Thing Description.
-   * @param dryRun When set to true, the requests are logged, but not executed.
+   * @param dryRun When set to true, the requests are logged, but not executed. To exercise plans
+   * offline with the values of a Thing, use a recording instead (see <code>replayFrom</code>).
    */
   public void init(String url, boolean dryRun) {
     init(url);
-    this.dryRun = dryRun;
+    client.setDryRun(dryRun);
   }
   
   /**
@@ -101,6 +144,188 @@ public class ThingArtifact extends Artifact {
     readProperty(semanticType, Optional.of(tags), output);
   }
   
+  /**
+   * CArtAgO operation for reading multiple properties of a Thing using a semantic model of the 
+   * Thing. The requests are issued in parallel. Properties that are cached are read through the
+   * read cache, the same as with <code>readProperty</code>.
+   * 
+   * @param semanticTypes A list of IRIs that identify the property types.
+   * @param values The read values, in the order of the given semantic types. Each value is a list
+   * as returned by <code>readProperty</code>. For properties with object schemas, the value is a
+   * list with two elements: the list of tags and the list of values.
+   */
+  @OPERATION
+  public void readProperties(Object[] semanticTypes, OpFeedbackParam<Object[]> values) {
+    long start = System.nanoTime();
+    ResolvedAffordance[] properties = new ResolvedAffordance[semanticTypes.length];
+    AffordanceMetrics[] metrics = new AffordanceMetrics[semanticTypes.length];
+    ThingRequest[] requests = new ThingRequest[semanticTypes.length];
+    String[] cacheKeys = new String[semanticTypes.length];
+    
+    for (int i = 0; i < semanticTypes.length; i ++) {
+      if (!(semanticTypes[i] instanceof String)) {
+        failed("Illegal arguments: the semantic types should be strings.");
+      }
+      
+      long lookupStart = System.nanoTime();
+      properties[i] = getPropertyOrFail((String) semanticTypes[i], TD.readProperty);
+      metrics[i] = metricsFor(properties[i]);
+      metrics[i].recordLatency(Phase.LOOKUP, System.nanoTime() - lookupStart);
+      requests[i] = prepareRequest(properties[i], Optional.empty()).orElse(null);
+      cacheKeys[i] = readCache.isCached((String) semanticTypes[i]) ? (String) semanticTypes[i] 
+          : null;
+    }
+    
+    if (client.isDryRun()) {
+      return;
+    }
+    
+    if (requests.length == 0) {
+      values.set(new Object[0]);
+      return;
+    }
+    
+    ThingResponse[] responses = issueRequests(client.read(requests, metrics, readCache, cacheKeys),
+        false);
+    Object[] out = new Object[responses.length];
+    
+    for (int i = 0; i < responses.length; i ++) {
+      if (responses[i].getStatusCode() != 200) {
+        failed("Status code: " + responses[i].getStatusCode() + " for property: " 
+            + semanticTypes[i]);
+      }
+      
+      DataSchema schema = properties[i].getSchema().get();
+      OpFeedbackParam<Object[]> value = new OpFeedbackParam<Object[]>();
+      long decodeStart = System.nanoTime();
+      
+      try {
+        if (schema.getDatatype() == DataSchema.OBJECT) {
+          OpFeedbackParam<Object[]> tags = new OpFeedbackParam<Object[]>();
+          readPayloadWithSchema(responses[i], schema, Optional.of(tags), value);
+          out[i] = new Object[] { tags.get(), value.get() };
+        } else {
+          readPayloadWithSchema(responses[i], schema, Optional.empty(), value);
+          out[i] = value.get();
+        }
+      } catch (IllegalArgumentException e) {
+        failed(e.getMessage());
+      }
+      
+      metrics[i].recordLatency(Phase.DECODE, System.nanoTime() - decodeStart);
+    }
+    
+    long elapsed = System.nanoTime() - start;
+    for (AffordanceMetrics propertyMetrics : metrics) {
+      propertyMetrics.recordLatency(Phase.TOTAL, elapsed);
+    }
+    
+    values.set(out);
+  }
+  
+  /**
+   * CArtAgO operation for reading a large array property of a Thing (e.g., historical data) in 
+   * chunks. The read request is issued, and a cursor is returned once the response headers are 
+   * received. The items are then read with <code>readChunk</code> and parsed incrementally, such 
+   * that memory use depends on the chunk size instead of the size of the payload. Cursors are 
+   * closed once all items are read, via <code>closeCursor</code>, or when the artifact is disposed.
+   * 
+   * @param semanticType An IRI that identifies the property type. The property must have an 
+   * array schema.
+   * @param cursorId The identifier of the cursor.
+   */
+  @OPERATION
+  public void openPropertyCursor(String semanticType, OpFeedbackParam<String> cursorId) {
+    ResolvedAffordance property = getPropertyOrFail(semanticType, TD.readProperty);
+    DataSchema schema = property.getSchema().get();
+    
+    if (!(schema instanceof ArraySchema)) {
+      failed("Chunked reads are only supported for properties with an array schema: " 
+          + semanticType);
+    }
+    
+    AffordanceMetrics metrics = metricsFor(property);
+    Optional<ThingRequest> request = prepareRequest(property, Optional.empty());
+    
+    if (!request.isPresent()) {
+      return;
+    }
+    
+    OpenCursorCmd cmd = new OpenCursorCmd(request.get(), (ArraySchema) schema, metrics);
+    await(cmd);
+    updateCircuitState();
+    
+    if (cmd.error.isPresent()) {
+      failed(cmd.error.get());
+    }
+    
+    String id = "cursor" + (++ cursorSequence);
+    cursors.put(id, new Cursor(cmd.reader, metrics));
+    cursorId.set(id);
+  }
+  
+  /**
+   * CArtAgO operation for reading the next chunk of items from a cursor opened with 
+   * <code>openPropertyCursor</code>.
+   * 
+   * @param cursorId The identifier of the cursor.
+   * @param maxItems The maximum number of items to read.
+   * @param items The items read, or an empty list if all items were read.
+   * @param exhausted True if all items were read, in which case the cursor is closed.
+   */
+  @OPERATION
+  public void readChunk(String cursorId, int maxItems, OpFeedbackParam<Object[]> items, 
+      OpFeedbackParam<Boolean> exhausted) {
+    Cursor cursor = cursors.get(cursorId);
+    
+    if (cursor == null) {
+      failed("Unknown cursor: " + cursorId);
+    }
+    
+    if (cursor.busy) {
+      failed("The cursor is already being read: " + cursorId);
+    }
+    
+    // The chunk is read and parsed without holding the artifact's lock
+    ReadChunkCmd cmd = new ReadChunkCmd(cursor.reader, maxItems);
+    cursor.busy = true;
+    await(cmd);
+    cursor.busy = false;
+    cursor.metrics.recordLatency(Phase.DECODE, cmd.elapsed);
+    
+    if (cmd.error.isPresent() || cursor.reader.isExhausted() || cursor.closed) {
+      closeCursor(cursorId, cursor);
+    }
+    
+    if (cmd.error.isPresent()) {
+      failed(cmd.error.get());
+    }
+    
+    items.set(cmd.chunk.orElse(new Object[0]));
+    exhausted.set(cursor.reader.isExhausted());
+  }
+  
+  /**
+   * CArtAgO operation for closing a cursor before all items were read. 
+   * 
+   * @param cursorId The identifier of the cursor.
+   */
+  @OPERATION
+  public void closeCursor(String cursorId) {
+    Cursor cursor = cursors.get(cursorId);
+    
+    if (cursor == null) {
+      return;
+    }
+    
+    if (cursor.busy) {
+      // Closed by the pending readChunk operation
+      cursor.closed = true;
+    } else {
+      closeCursor(cursorId, cursor);
+    }
+  }
+  
   /**
    * CArtAgO operation for writing a property of a Thing using a semantic model of the Thing.
    * 
@@ -110,18 +335,33 @@ public class ThingArtifact extends Artifact {
    */
   @OPERATION
   public void writeProperty(String semanticType, Object[] tags, Object[] payload) {
-    validateParameters(semanticType, tags, payload);
     if (payload.length == 0) {
       failed("The payload used when writing a property cannot be empty.");
     }
     
-    PropertyAffordance property = getFirstPropertyOrFail(semanticType);
-    Optional<TDHttpResponse> response = executePropertyRequest(property, TD.writeProperty, tags, 
-        payload);
+    long start = System.nanoTime();
+    ResolvedAffordance property = getPropertyOrFail(semanticType, TD.writeProperty);
+    AffordanceMetrics metrics = metricsFor(property);
+    metrics.recordLatency(Phase.LOOKUP, System.nanoTime() - start);
+    
+    WriteBehindSlot slot = writeBehind.get(semanticType);
+    
+    if (slot != null) {
+      // The value is sent by the flusher, together with (or instead of) other pending writes
+      slot.offer(encodePayload(property, metrics, tags, payload).get());
+      // Reads must not return values older than the pending write until it is flushed
+      readCache.invalidate();
+      return;
+    }
+    
+    Optional<ThingResponse> response = executeRequest(property, metrics, tags, payload);
     
-    if (response.isPresent() && response.get().getStatusCode() != 200) {
+    if (response.isPresent() 
+        && !ThingClient.succeeded(TD.writeProperty, response.get().getStatusCode())) {
       failed("Status code: " + response.get().getStatusCode());
     }
+    
+    metrics.recordLatency(Phase.TOTAL, System.nanoTime() - start);
   }
   
   /**
@@ -144,29 +384,24 @@ public class ThingArtifact extends Artifact {
    */
   @OPERATION
   public void invokeAction(String semanticType, Object[] tags, Object[] payload) {
-    validateParameters(semanticType, tags, payload);
-    
-    Optional<ActionAffordance> action = td.getFirstActionBySemanticType(semanticType);
+    long start = System.nanoTime();
+    Optional<ResolvedAffordance> action = index.get(TD.invokeAction, semanticType);
     
     if (action.isPresent()) {
-      Optional<Form> form = action.get().getFirstForm();
+      AffordanceMetrics metrics = metricsFor(action.get());
+      metrics.recordLatency(Phase.LOOKUP, System.nanoTime() - start);
       
-      if (!form.isPresent()) {
-        // Should not happen (an exception will be raised by the TD library first)
-        failed("Invalid TD: the invoked action does not have a valid form.");
-      }
+      Optional<ThingResponse> response = executeRequest(action.get(), metrics, tags, payload);
       
-      Optional<DataSchema> inputSchema = action.get().getInputSchema();
-      if (!inputSchema.isPresent() && payload.length > 0) {
-        failed("This type of action does not take any input: " + semanticType);
-      }
-      
-      Optional<TDHttpResponse> response = executeRequest(TD.invokeAction, form.get(), inputSchema, 
-          tags, payload);
-      
-      if (response.isPresent() && response.get().getStatusCode() != 200 && response.get().getStatusCode() != 202) {
+      if (response.isPresent() 
+          && !ThingClient.succeeded(TD.invokeAction, response.get().getStatusCode())) {
         failed("Status code: " + response.get().getStatusCode());
       }
+      
+      metrics.recordLatency(Phase.TOTAL, System.nanoTime() - start);
+    } else if (index.hasAction(semanticType)) {
+      // Should not happen (an exception will be raised by the TD library first)
+      failed("Invalid TD: the invoked action does not have a valid form.");
     } else {
       failed("Unknown action: " + semanticType);
     }
@@ -183,6 +418,223 @@ public class ThingArtifact extends Artifact {
     invokeAction(semanticType, new Object[0], payload);
   }
   
+  /**
+   * CArtAgO operation that mirrors a property of the Thing as an observable property of this 
+   * artifact. The observable property is kept up to date in the background and is updated only
+   * when the property's value changes. If the TD provides an <code>observeProperty</code> form, it
+   * is used for long polling. Otherwise, the property is polled with conditional requests, and the
+   * polling interval adapts between 500 ms (while the value changes) and 10 s. Long-polling 
+   * requests that fail or return without a new value are retried with exponential backoff.
+   * 
+   * Note that each observation keeps a CArtAgO thread busy until it is stopped, the same as each
+   * property with write-behind. Artifacts that observe many properties should be avoided in large
+   * populations of agents.
+   * 
+   * @param semanticType An IRI that identifies the property type.
+   * @param name The name of the observable property. For properties with object schemas, the 
+   * observable property has two values: the list of tags and the list of values.
+   */
+  @OPERATION
+  public void observeProperty(String semanticType, String name) {
+    observeProperty(semanticType, name, DEFAULT_MIN_POLL_INTERVAL, DEFAULT_MAX_POLL_INTERVAL);
+  }
+  
+  /**
+   * CArtAgO operation that mirrors a property of the Thing as an observable property of this 
+   * artifact (see {@link #observeProperty(String, String)}).
+   * 
+   * @param semanticType An IRI that identifies the property type.
+   * @param name The name of the observable property.
+   * @param minInterval The polling interval in milliseconds used while the value changes.
+   * @param maxInterval The maximum polling interval in milliseconds used while the value does not
+   * change.
+   */
+  @OPERATION
+  public void observeProperty(String semanticType, String name, int minInterval, 
+      int maxInterval) {
+    if (client.isDryRun()) {
+      failed("Properties cannot be observed in dry run mode.");
+    }
+    
+    if (observations.containsKey(name)) {
+      failed("An observable property with this name already exists: " + name);
+    }
+    
+    if (minInterval <= 0 || maxInterval < minInterval) {
+      failed("Illegal arguments: invalid polling intervals.");
+    }
+    
+    Optional<ResolvedAffordance> observeForm = index.get(AffordanceIndex.OBSERVE_PROPERTY, 
+        semanticType);
+    ResolvedAffordance property = observeForm.isPresent() ? observeForm.get() 
+        : getPropertyOrFail(semanticType, TD.readProperty);
+    
+    observations.put(name, new Observation(property, minInterval, maxInterval));
+    execInternalOp("observe", name);
+  }
+  
+  /**
+   * CArtAgO operation that stops mirroring a property of the Thing and removes the corresponding
+   * observable property.
+   * 
+   * @param name The name of the observable property.
+   */
+  @OPERATION
+  public void stopObserving(String name) {
+    Observation observation = observations.remove(name);
+    
+    if (observation == null) {
+      failed("Unknown observable property: " + name);
+    }
+    
+    observation.active = false;
+    
+    if (observation.lastValue != null) {
+      removeObsProperty(name);
+    }
+  }
+  
+  /**
+   * CArtAgO operation that enables caching of the values read for a property. While a cached value
+   * is fresh, reads are answered from the cache, and concurrent reads of the property share a 
+   * single request. Cached values are discarded when a property is written or an action is 
+   * invoked via this artifact.
+   * 
+   * @param semanticType An IRI that identifies the property type.
+   * @param ttl The time-to-live of cached values in milliseconds. A value of 0 disables caching.
+   */
+  @OPERATION
+  public void setReadCacheTTL(String semanticType, int ttl) {
+    getPropertyOrFail(semanticType, TD.readProperty);
+    readCache.setTTL(semanticType, ttl);
+  }
+  
+  /**
+   * CArtAgO operation for retrieving the metrics recorded for an affordance of the Thing, across
+   * all artifacts that use the same TD. Latencies are given in microseconds per phase of the 
+   * operation (lookup, encode, network, decode, and total).
+   * 
+   * @param semanticType An IRI that identifies the affordance type.
+   * @param operationType An operation type defined by the W3C WoT TD recommendation (e.g., 
+   * <code>https://www.w3.org/2019/wot/td#readProperty</code>).
+   * @param tags The names of the metrics (e.g., <code>requests</code>, <code>errors</code>, 
+   * <code>status.200</code>, <code>network.p99</code>).
+   * @param values The values of the metrics, in the order of the tags.
+   */
+  @OPERATION
+  public void getOperationMetrics(String semanticType, String operationType, 
+      OpFeedbackParam<Object[]> tags, OpFeedbackParam<Object[]> values) {
+    Optional<ResolvedAffordance> affordance = index.get(operationType, semanticType);
+    
+    if (!affordance.isPresent()) {
+      failed("Unknown affordance: " + semanticType + " for operation type: " + operationType);
+    }
+    
+    AffordanceMetrics metrics = metricsFor(affordance.get());
+    List<Object> names = new ArrayList<Object>();
+    List<Object> numbers = new ArrayList<Object>();
+    
+    names.add("requests");
+    numbers.add(metrics.getRequestCount());
+    names.add("errors");
+    numbers.add(metrics.getErrorCount());
+    
+    for (Map.Entry<String, Long> count : metrics.getStatusCodeCounts().entrySet()) {
+      names.add("status." + count.getKey());
+      numbers.add(count.getValue());
+    }
+    
+    for (Map.Entry<String, Long> latency : metrics.getLatencies().entrySet()) {
+      names.add(latency.getKey());
+      numbers.add(latency.getValue());
+    }
+    
+    tags.set(names.toArray());
+    values.set(numbers.toArray());
+  }
+  
+  /**
+   * CArtAgO operation that enables write-behind for a property. With write-behind, 
+   * <code>writeProperty</code> returns as soon as the value is stored in a slot that keeps only 
+   * the last written value, and values are sent to the Thing in the background at a maximum 
+   * rate. Values written in between are merged, i.e. only the last one is sent. The artifact
+   * signals <code>writeCompleted(SemanticType, Coalesced)</code> when a value was written, where
+   * <code>Coalesced</code> is the number of replaced values that were not sent, and 
+   * <code>writeFailed(SemanticType, Reason)</code> when a write failed. The values are sent by a
+   * CArtAgO thread that is kept busy until write-behind is disabled.
+   * 
+   * @param semanticType An IRI that identifies the property type.
+   * @param maxRate The maximum number of writes per second. A value of 0 disables write-behind,
+   * after sending the pending value (if any).
+   */
+  @OPERATION
+  public void setWriteBehind(String semanticType, int maxRate) {
+    getPropertyOrFail(semanticType, TD.writeProperty);
+    
+    if (client.isDryRun() && maxRate > 0) {
+      failed("Write-behind cannot be used in dry run mode.");
+    }
+    
+    if (maxRate < 0) {
+      failed("Illegal arguments: the maximum rate cannot be negative.");
+    }
+    
+    WriteBehindSlot previous = writeBehind.remove(semanticType);
+    
+    if (previous != null) {
+      previous.close();
+    }
+    
+    if (maxRate > 0) {
+      WriteBehindSlot slot = new WriteBehindSlot();
+      writeBehind.put(semanticType, slot);
+      execInternalOp("flushWrites", semanticType, slot, Math.max(1, 1000 / maxRate));
+    }
+  }
+  
+  /**
+   * CArtAgO operation that configures how requests to the Thing deal with a slow or unavailable
+   * host. Requests are passed through as they are until this operation is used. Idempotent 
+   * requests (reads, and writes via idempotent HTTP methods) are retried with jittered 
+   * exponential backoff. After a number of consecutive failures, the circuit breaker of the host 
+   * opens and requests fail fast until the breaker lets a probe request through. The breaker and 
+   * the limit of concurrent requests are shared by all artifacts that send requests to the host. 
+   * The state of the breaker is exposed in the observable property <code>circuitState</code> 
+   * (<code>closed</code>, <code>open</code>, or <code>half_open</code>).
+   * 
+   * @param deadline The deadline of a request in milliseconds, including its retries. 0 disables
+   * the deadline.
+   * @param maxRetries The maximum number of retries of idempotent requests.
+   * @param failureThreshold The number of consecutive failures after which the breaker opens. 0 
+   * disables the breaker.
+   * @param openDuration The time in milliseconds after which an open breaker lets a probe through.
+   * @param maxConcurrentRequests The maximum number of concurrent requests to the host. 0 disables
+   * the limit.
+   */
+  @OPERATION
+  public void configureResilience(int deadline, int maxRetries, int failureThreshold, 
+      int openDuration, int maxConcurrentRequests) {
+    try {
+      client.configureResilience(deadline, maxRetries, failureThreshold, openDuration, 
+          maxConcurrentRequests);
+    } catch (IllegalArgumentException e) {
+      failed(e.getMessage());
+    }
+    
+    updateCircuitState();
+  }
+  
+  /**
+   * CArtAgO operation that enables retrying action invocations. Actions are not retried by 
+   * default, since invoking an action more than once may not be safe.
+   * 
+   * @param retryActions When set to true, failed action invocations are retried.
+   */
+  @OPERATION
+  public void setRetryActions(boolean retryActions) {
+    client.setRetryActions(retryActions);
+  }
+  
   /**
    * CArtAgO operation that sets an authentication token (used with APIKeySecurityScheme).
    * 
@@ -191,247 +643,660 @@ public class ThingArtifact extends Artifact {
   @OPERATION
   public void setAPIKey(String token) {
     if (token != null && !token.isEmpty()) {
-      this.apiKey = Optional.of(token);
+      client.setCredential(Credential.apiKey(token));
     }
   }
   
-  /* Set a primitive payload. */
-  TDHttpRequest setPrimitivePayload(TDHttpRequest request, DataSchema schema, Object payload) {
+  /**
+   * CArtAgO operation that sets a bearer token sent with all requests (e.g., a token issued to the 
+   * agent out of band).
+   * 
+   * @param token The bearer token.
+   */
+  @OPERATION
+  public void setBearerToken(String token) {
+    if (token != null && !token.isEmpty()) {
+      client.setCredential(Credential.bearer(token));
+    }
+  }
+  
+  /**
+   * CArtAgO operation that authenticates requests with bearer tokens obtained via the OAuth 2.0 
+   * client credentials grant. Tokens are shared by all artifacts that use the same client, and are 
+   * refreshed in the background before they expire. The operation completes once a token was 
+   * obtained, and fails if the token endpoint cannot be reached or rejects the client.
+   * 
+   * @param tokenUrl The URL of the authorization server's token endpoint.
+   * @param clientId The client identifier.
+   * @param clientSecret The client secret.
+   * @param scopes The scopes to request (may be empty).
+   */
+  @OPERATION
+  public void setOAuth2ClientCredentials(String tokenUrl, String clientId, String clientSecret, 
+      Object[] scopes) {
+    List<String> scopeList = new ArrayList<String>();
+    
+    for (Object scope : scopes) {
+      scopeList.add(String.valueOf(scope));
+    }
+    
+    OAuth2ClientCredentials oauth = TokenCache.getInstance().acquire(tokenUrl, clientId, 
+        clientSecret, scopeList);
+    
+    if (!oauth.hasToken()) {
+      // Only the first artifact that uses the client waits for its token
+      AwaitTokenCmd cmd = new AwaitTokenCmd(oauth);
+      await(cmd);
+      
+      if (cmd.error.isPresent()) {
+        oauth.release();
+        failed("Unable to obtain an access token: " + cmd.error.get().getMessage());
+      }
+    }
+    
+    client.setCredential(oauth);
+  }
+  
+  /**
+   * CArtAgO operation that configures a connection pool used only by this artifact.
+   * 
+   * @param maxConnections The maximum number of pooled connections.
+   * @param maxConnectionsPerRoute The maximum number of pooled connections per host.
+   * @param connectTimeout The connect timeout in milliseconds.
+   * @param responseTimeout The response timeout in milliseconds.
+   */
+  @OPERATION
+  public void configureTransport(int maxConnections, int maxConnectionsPerRoute, 
+      int connectTimeout, int responseTimeout) {
+    setTransport(buildTransport(maxConnections, maxConnectionsPerRoute, connectTimeout, 
+        responseTimeout), true);
+  }
+  
+  /**
+   * CArtAgO operation that configures the connection pool shared by all Thing artifacts in the
+   * workspace of this artifact. Other artifacts pick up the new pool when they are created, and
+   * the previous pool is closed once no artifact uses it anymore.
+   * 
+   * @param maxConnections The maximum number of pooled connections.
+   * @param maxConnectionsPerRoute The maximum number of pooled connections per host.
+   * @param connectTimeout The connect timeout in milliseconds.
+   * @param responseTimeout The response timeout in milliseconds.
+   */
+  @OPERATION
+  public void configureWorkspaceTransport(int maxConnections, int maxConnectionsPerRoute, 
+      int connectTimeout, int responseTimeout) {
+    HttpClientTransport shared = buildTransport(maxConnections, maxConnectionsPerRoute, 
+        connectTimeout, responseTimeout);
+    HttpClientTransport.setForWorkspace(getId().getWorkspaceId().getName(), shared);
+    setTransport(shared, true);
+  }
+  
+  /**
+   * CArtAgO operation that records the requests issued by this artifact, and the responses 
+   * received for them, to a file. Exchanges are appended to the file if it already exists. 
+   * Multiple artifacts can record to the same file.
+   * 
+   * @param file The path of the recording file.
+   */
+  @OPERATION
+  public void recordTo(String file) {
     try {
-      if (payload instanceof Boolean) {
-        // Matches to TD BooleanSchema
-        request.setPrimitivePayload(schema, (boolean) payload);
-      } else if (payload instanceof Byte || payload instanceof Integer || payload instanceof Long) {
-        // Matches to TD IntegerSchema
-        request.setPrimitivePayload(schema, Long.valueOf(String.valueOf(payload)));
-      } else if (payload instanceof Float || payload instanceof Double) {
-        // Matches to TD NumberSchema
-        request.setPrimitivePayload(schema, Double.valueOf(String.valueOf(payload)));
-      } else if (payload instanceof String) {
-        // Matches to TD StringSchema
-        request.setPrimitivePayload(schema, (String) payload);
-      } else {
-        failed("Unable to detect the primitive datatype of payload: " 
-            + payload.getClass().getCanonicalName());
+      ThingRecording.Appender appender = ThingRecording.appenderFor(Paths.get(file));
+      boolean owned = ownsTransport;
+      
+      // The recording transport takes over the current transport, including its ownership
+      this.ownsTransport = false;
+      setTransport(new RecordingTransport(transport, appender), owned);
+    } catch (IOException e) {
+      failed("Unable to record to " + file + ": " + e.getMessage());
+    }
+  }
+  
+  /**
+   * CArtAgO operation that answers the requests of this artifact from a recording (see 
+   * <code>recordTo</code>) instead of issuing them. No requests are sent to the Thing, and the 
+   * responses recorded for each affordance are returned in the recorded order (and from the start 
+   * again once all were returned). Multiple artifacts can replay the same file, each from its own 
+   * position.
+   * 
+   * @param file The path of the recording file.
+   * @param realTime When set to true, responses are returned after their recorded latency. 
+   * Otherwise, they are returned as fast as possible.
+   */
+  @OPERATION
+  public void replayFrom(String file, boolean realTime) {
+    try {
+      setTransport(new ReplayTransport(ThingRecording.load(Paths.get(file)), realTime), true);
+    } catch (IOException e) {
+      failed("Unable to replay " + file + ": " + e.getMessage());
+    }
+  }
+  
+  /* Set the transport used to issue requests (e.g., a stub transport used in tests). */
+  void setTransport(ThingTransport transport, boolean owned) {
+    closeOwnedTransport();
+    this.transport = transport;
+    this.ownsTransport = owned;
+    
+    if (client != null) {
+      client.setTransport(transport);
+    }
+  }
+  
+  @Override
+  protected void dispose() {
+    if (observations != null) {
+      for (Observation observation : observations.values()) {
+        observation.active = false;
       }
-    } catch (IllegalArgumentException e) {
-      failed(e.getMessage());
     }
     
-    return request;
+    if (writeBehind != null) {
+      for (WriteBehindSlot slot : writeBehind.values()) {
+        slot.close();
+      }
+    }
+    
+    if (cursors != null) {
+      for (Map.Entry<String, Cursor> cursor : new ArrayList<>(cursors.entrySet())) {
+        closeCursor(cursor.getKey(), cursor.getValue());
+      }
+    }
+    
+    if (client != null) {
+      client.release();
+    }
+    
+    closeOwnedTransport();
   }
   
-  /* Set a TD ObjectSchema payload */
-  TDHttpRequest setObjectPayload(TDHttpRequest request, DataSchema schema, Object[] tags, 
-      Object[] payload) {
-    Map<String, Object> requestPayload = new HashMap<String, Object>();
+  /* Keeps an observable property in sync with a property of the Thing. */
+  @INTERNAL_OPERATION
+  void observe(String name) {
+    Observation observation = observations.get(name);
+    ResolvedAffordance property = observation.property;
+    boolean longPolling = property.getOperationType().equals(AffordanceIndex.OBSERVE_PROPERTY);
+    AffordanceMetrics metrics = metricsFor(property);
     
-    for (int i = 0; i < tags.length; i ++) {
-      if (tags[i] instanceof String) {
-        requestPayload.put((String) tags[i], payload[i]);
+    while (observation.active) {
+      ThingRequest request = client.newRequest(property);
+      
+      if (!longPolling) {
+        observation.setConditionalHeaders(request);
+      }
+      
+      RequestCmd cmd = client.send(new ThingRequest[] { request }, 
+          new AffordanceMetrics[] { metrics });
+      await(cmd);
+      updateCircuitState();
+      
+      if (!observation.active) {
+        break;
+      }
+      
+      boolean changed = false;
+      boolean answered = false;
+      
+      if (cmd.error.isPresent()) {
+        log("Unable to observe property " + name + ": " + cmd.error.get().getMessage());
+      } else if (cmd.responses[0].getStatusCode() == 200) {
+        observation.setValidators(cmd.responses[0]);
+        
+        try {
+          changed = updateObservedValue(name, observation, cmd.responses[0]);
+          answered = changed;
+        } catch (IllegalArgumentException e) {
+          log("Unable to observe property " + name + ": " + e.getMessage());
+        }
+      } else if (cmd.responses[0].getStatusCode() == 304) {
+        answered = true;
+      } else {
+        log("Unable to observe property " + name + ", status code: " 
+            + cmd.responses[0].getStatusCode());
+      }
+      
+      observation.adaptInterval(changed);
+      
+      if (!longPolling) {
+        await_time(observation.interval);
+      } else if (answered) {
+        observation.resetBackoff();
+      } else {
+        // Errors and immediate answers without a new value would otherwise re-poll in a loop
+        await_time(observation.nextBackoff());
       }
     }
+  }
+  
+  /* Sends the values written to a property with write-behind, at most one per interval. */
+  @INTERNAL_OPERATION
+  void flushWrites(String semanticType, WriteBehindSlot slot, int minInterval) {
+    ResolvedAffordance property = index.get(TD.writeProperty, semanticType).get();
+    AffordanceMetrics metrics = metricsFor(property);
     
-    request.setObjectPayload((ObjectSchema) schema, requestPayload);
+    while (true) {
+      TakeCmd take = new TakeCmd(slot);
+      await(take);
+      
+      if (!take.pending.isPresent()) {
+        break;
+      }
+      
+      Pending pending = take.pending.get();
+      ThingRequest request = client.newRequest(property).setPayload(pending.getPayload());
+      
+      RequestCmd cmd = client.send(new ThingRequest[] { request }, 
+          new AffordanceMetrics[] { metrics });
+      await(cmd);
+      updateCircuitState();
+      readCache.invalidate();
+      
+      if (cmd.error.isPresent()) {
+        signal("writeFailed", semanticType, cmd.error.get().getMessage());
+      } else if (cmd.responses[0].getStatusCode() != 200) {
+        signal("writeFailed", semanticType, "Status code: " + cmd.responses[0].getStatusCode());
+      } else {
+        signal("writeCompleted", semanticType, pending.getCoalesced());
+      }
+      
+      await_time(minInterval);
+    }
+  }
+  
+  /* Updates the circuit state once the open breaker of the Thing's host lets a probe through. */
+  @INTERNAL_OPERATION
+  void refreshCircuitState() {
+    long remaining = client.getResilience().getCircuitBreaker(thingHost)
+        .map(CircuitBreaker::getRemainingOpenTime)
+        .orElse(0L);
     
-    return request;
+    if (remaining > 0) {
+      await_time(remaining);
+    }
+    
+    circuitRefreshScheduled = false;
+    updateCircuitState();
   }
   
-  /* Set a TD ArraySchema payload */
-  TDHttpRequest setArrayPayload(TDHttpRequest request, DataSchema schema, Object[] payload) {
-    request.setArrayPayload((ArraySchema) schema, Arrays.asList(payload));
-    return request;
+  private boolean updateObservedValue(String name, Observation observation, 
+      ThingResponse response) {
+    DataSchema schema = observation.property.getSchema().get();
+    Object decoded = PayloadBinding.decode(response, schema);
+    
+    // Unchanged values (e.g., numeric arrays) are detected before they are boxed for agents
+    if (observation.lastValue != null && Objects.deepEquals(observation.lastValue, decoded)) {
+      return false;
+    }
+    
+    OpFeedbackParam<Object[]> value = new OpFeedbackParam<Object[]>();
+    Object[] values;
+    
+    if (schema.getDatatype() == DataSchema.OBJECT) {
+      OpFeedbackParam<Object[]> tags = new OpFeedbackParam<Object[]>();
+      PayloadBinding.bind(decoded, Optional.of(tags), value);
+      values = new Object[] { tags.get(), value.get() };
+    } else {
+      PayloadBinding.bind(decoded, Optional.empty(), value);
+      values = new Object[] { value.get() };
+    }
+    
+    if (observation.lastValue == null) {
+      defineObsProperty(name, values);
+    } else {
+      getObsProperty(name).updateValues(values);
+    }
+    
+    observation.lastValue = decoded;
+    return true;
+  }
+  
+  /* Mirrors the state of the breaker of the Thing's host in the circuitState property. */
+  private void updateCircuitState() {
+    // Without a breaker, the circuit is always closed
+    State state = client.getResilience().getCircuitBreaker(thingHost)
+        .map(CircuitBreaker::getState)
+        .orElse(State.CLOSED);
+    
+    if (state != circuitState) {
+      circuitState = state;
+      getObsProperty("circuitState").updateValue(state.label());
+    }
+    
+    if (state == State.OPEN && !circuitRefreshScheduled) {
+      circuitRefreshScheduled = true;
+      execInternalOp("refreshCircuitState");
+    }
+  }
+  
+  private HttpClientTransport buildTransport(int maxConnections, int maxConnectionsPerRoute, 
+      int connectTimeout, int responseTimeout) {
+    return new HttpClientTransport.Builder()
+        .setMaxConnections(maxConnections)
+        .setMaxConnectionsPerRoute(maxConnectionsPerRoute)
+        .setConnectTimeout(connectTimeout)
+        .setResponseTimeout(responseTimeout)
+        .build();
   }
   
-  private void validateParameters(String semanticType, Object[] tags, Object[] payload) {
-    if (tags.length > 0 && tags.length != payload.length) {
-      failed("Illegal arguments: the lists of tags and action parameters should have equal length.");
+  private void closeOwnedTransport() {
+    if (ownsTransport && transport instanceof Closeable) {
+      try {
+        ((Closeable) transport).close();
+      } catch (IOException e) {
+        log("Unable to close transport: " + e.getMessage());
+      }
     }
   }
   
   private void readProperty(String semanticType, Optional<OpFeedbackParam<Object[]>> tags, 
       OpFeedbackParam<Object[]> output) {
-    PropertyAffordance property = getFirstPropertyOrFail(semanticType);
-    Optional<TDHttpResponse> response = executePropertyRequest(property, TD.readProperty, 
-        new Object[0], new Object[0]);
+    long start = System.nanoTime();
+    ResolvedAffordance property = getPropertyOrFail(semanticType, TD.readProperty);
+    AffordanceMetrics metrics = metricsFor(property);
+    metrics.recordLatency(Phase.LOOKUP, System.nanoTime() - start);
     
-    if (!dryRun) {
+    Optional<ThingRequest> request = prepareRequest(property, Optional.empty());
+    Optional<ThingResponse> response = Optional.empty();
+    
+    if (request.isPresent()) {
+      // Cached properties are read through the cache, which also joins reads in flight
+      String cacheKey = readCache.isCached(semanticType) ? semanticType : null;
+      response = Optional.of(issueRequests(client.read(new ThingRequest[] { request.get() }, 
+          new AffordanceMetrics[] { metrics }, readCache, new String[] { cacheKey }), false)[0]);
+    }
+    
+    if (!client.isDryRun()) {
       if (!response.isPresent()) {
         failed("Something went wrong with the read property request.");
       }
       
       // Using numeric values here to avoid adding a dependency to the JaCaMo project
       if (response.get().getStatusCode() == 200) {
-        readPayloadWithSchema(response.get(), property.getDataSchema(), tags, output);
+        long decodeStart = System.nanoTime();
+        
+        try {
+          readPayloadWithSchema(response.get(), property.getSchema().get(), tags, output);
+        } catch (IllegalArgumentException e) {
+          failed(e.getMessage());
+        }
+        
+        metrics.recordLatency(Phase.DECODE, System.nanoTime() - decodeStart);
       } else {
         failed("Status code: " + response.get().getStatusCode());
       }
     }
+    
+    metrics.recordLatency(Phase.TOTAL, System.nanoTime() - start);
   }
   
-  private PropertyAffordance getFirstPropertyOrFail(String semanticType) {
-    Optional<PropertyAffordance> property = td.getFirstPropertyBySemanticType(semanticType);
+  private ResolvedAffordance getPropertyOrFail(String semanticType, String operationType) {
+    Optional<ResolvedAffordance> property = index.get(operationType, semanticType);
     
     if (!property.isPresent()) {
+      if (index.hasProperty(semanticType)) {
+        // Should not happen (an exception will be raised by the TD library first)
+        failed("Invalid TD: the property does not have a valid form.");
+      }
+      
       failed("Unknown property: " + semanticType);
     }
     
     return property.get();
   }
   
-  // TODO: Reading payloads of type object currently works with 2 limitations:
-  // - only the first semantic tag is retrieved for object properties (one that is not a data schema)
-  // - we cannot use nested objects with the current ThingArtifact API (needs a more elaborated
-  // JaCa - WoT bridge)
-  @SuppressWarnings("unchecked")
-  private void readPayloadWithSchema(TDHttpResponse response, DataSchema schema, 
+  private void readPayloadWithSchema(ThingResponse response, DataSchema schema, 
       Optional<OpFeedbackParam<Object[]>> tags, OpFeedbackParam<Object[]> output) {
+    PayloadBinding.decode(response, schema, tags, output);
+  }
+  
+  private Optional<ThingResponse> executeRequest(ResolvedAffordance affordance, 
+      AffordanceMetrics metrics, Object[] tags, Object[] payload) {
+    Optional<ThingRequest> thingRequest = prepareRequest(affordance, 
+        encodePayload(affordance, metrics, tags, payload));
     
-    switch (schema.getDatatype()) {
-      case DataSchema.BOOLEAN:
-        output.set(new Boolean[] { response.getPayloadAsBoolean() });
-        break;
-      case DataSchema.STRING:
-        output.set(new String[] { response.getPayloadAsString() });
-        break;
-      case DataSchema.INTEGER:
-        output.set(new Integer[] { response.getPayloadAsInteger() });
-        break;
-      case DataSchema.NUMBER:
-        output.set(new Double[] { response.getPayloadAsDouble() });
-        break;
-      case DataSchema.OBJECT:
-        // Only consider this case if the invoked CArtAgO operation was for an object payload
-        // (i.e., a list of tags is expected).
-        if (tags.isPresent()) {
-          Map<String, Object> payload = response.getPayloadAsObject((ObjectSchema) schema);
-          List<String> tagList = new ArrayList<String>();
-          List<Object> data = new ArrayList<Object>();
-          
-          for (String tag : payload.keySet()) {
-            tagList.add(tag);
-            Object value = payload.get(tag);
-            if (value instanceof Collection<?>) {
-              data.add(nestedListsToArrays((Collection<Object>) value));
-            } else {
-              data.add(value);
-            }
-          }
-          
-          tags.get().set(tagList.toArray());
-          output.set(data.toArray());
-        }
-        break;
-      case DataSchema.ARRAY:
-        List<Object> payload = response.getPayloadAsArray((ArraySchema) schema);
-        output.set(nestedListsToArrays(payload));
-        break;
-      default:
-        break;
+    if (!thingRequest.isPresent()) {
+      return Optional.empty();
     }
+    
+    // Writes and actions may change the Thing's state
+    boolean invalidatesReads = !affordance.getOperationType().equals(TD.readProperty);
+    
+    ThingResponse[] responses = issueRequests(client.send(new ThingRequest[] { 
+        thingRequest.get() }, new AffordanceMetrics[] { metrics }), invalidatesReads);
+    
+    return Optional.of(responses[0]);
   }
   
-  @SuppressWarnings("unchecked")
-  Object[] nestedListsToArrays(Collection<Object> data) {
-    Object[] out = data.toArray();
+  /* Validate and serialize a payload in the content type of the affordance's form. */
+  private Optional<byte[]> encodePayload(ResolvedAffordance affordance, 
+      AffordanceMetrics metrics, Object[] tags, Object[] payload) {
+    Optional<byte[]> encoded = Optional.empty();
     
-    for (int i = 0; i < out.length; i ++) {
-      if (out[i] instanceof Collection<?>) {
-        out[i] = nestedListsToArrays((Collection<Object>) out[i]);
-      }
+    try {
+      encoded = client.encode(affordance, metrics, tags, payload);
+    } catch (IllegalArgumentException e) {
+      failed(e.getMessage());
     }
     
-    return out;
+    return encoded;
+  }
+  
+  /* Composes the request. Returns an empty optional for dry runs. */
+  private Optional<ThingRequest> prepareRequest(ResolvedAffordance affordance, 
+      Optional<byte[]> payload) {
+    return client.prepare(affordance, affordance.getForm().getTarget(), payload);
   }
   
-  private Optional<TDHttpResponse> executePropertyRequest(PropertyAffordance property, 
-    String operationType, Object[] tags, Object[] payload) {
-    Optional<Form> form = property.getFirstFormForOperationType(operationType);
+  private ThingResponse[] issueRequests(RequestCmd cmd, boolean invalidatesReads) {
+    // Release the artifact while the requests are in flight, such that other operations on
+    // this artifact (and on the same Thing) can proceed concurrently
+    await(cmd);
+    updateCircuitState();
     
-    if (!form.isPresent()) {
-      // Should not happen (an exception will be raised by the TD library first)
-      failed("Invalid TD: the property does not have a valid form.");
+    if (invalidatesReads) {
+      readCache.invalidate();
     }
     
-    DataSchema schema = property.getDataSchema();
+    if (cmd.error.isPresent()) {
+      failed(cmd.error.get().getMessage());
+    }
     
-    return executeRequest(operationType, form.get(), Optional.of(schema), tags, payload);
+    client.completed(cmd);
+    return cmd.responses;
   }
   
-  private Optional<TDHttpResponse> executeRequest(String operationType, Form form, 
-      Optional<DataSchema> schema, Object[] tags, Object[] payload) {
-    if (schema.isPresent() && payload.length > 0) {
-      // Request with payload
-      if (tags.length > 0) {
-        return executeRequestObjectPayload(operationType, form, schema.get(), tags, payload);
-      } else if (payload.length == 1 && !(payload[0] instanceof Object[])) {
-        return executeRequestPrimitivePayload(operationType, form, schema.get(), payload[0]);
-      } else if (payload.length >= 1) {
-        return executeRequestArrayPayload(operationType, form, schema.get(), payload);
-      } else {
-        failed("Could not detect the type of payload (primitive, object, or array).");
-        return Optional.empty();
-      }
-    } else {
-      // Request without payload
-      TDHttpRequest request = new TDHttpRequest(form, operationType);
-      return issueRequest(request);
-    }
+  private AffordanceMetrics metricsFor(ResolvedAffordance affordance) {
+    // Titles are not unique, metrics are kept per TD
+    return OperationMetrics.getInstance().forAffordance(thingUrl, thingName, affordance);
   }
   
-  private Optional<TDHttpResponse> executeRequestPrimitivePayload(String operationType, Form form, 
-      DataSchema schema, Object payload) {
-    TDHttpRequest request = new TDHttpRequest(form, operationType);
-    request = setPrimitivePayload(request, schema, payload);
+  private void closeCursor(String cursorId, Cursor cursor) {
+    cursors.remove(cursorId);
     
-    return issueRequest(request);
+    try {
+      cursor.reader.close();
+    } catch (IOException e) {
+      log("Unable to close cursor " + cursorId + ": " + e.getMessage());
+    }
   }
   
-  private Optional<TDHttpResponse> executeRequestObjectPayload(String operationType, Form form, 
-      DataSchema schema, Object[] tags, Object[] payload) {
-    if (schema.getDatatype() != DataSchema.OBJECT) {
-      failed("TD mismatch: illegal arguments, this affordance uses a data schema of type " 
-          + schema.getDatatype());
+  /* Blocking command used to issue a read and open a cursor over the response stream. */
+  private class OpenCursorCmd implements IBlockingCmd {
+    private final ThingRequest request;
+    private final ArraySchema schema;
+    private final AffordanceMetrics metrics;
+    private ChunkedArrayReader reader;
+    private Optional<String> error;
+    
+    OpenCursorCmd(ThingRequest request, ArraySchema schema, AffordanceMetrics metrics) {
+      this.request = request;
+      this.schema = schema;
+      this.metrics = metrics;
+      this.error = Optional.empty();
+    }
+    
+    @Override
+    public void exec() {
+      long start = System.nanoTime();
+      
+      try {
+        ThingResponseStream response = client.getResilience().open(request);
+        metrics.recordResponse(response.getStatusCode());
+        metrics.recordLatency(Phase.NETWORK, System.nanoTime() - start);
+        
+        if (response.getStatusCode() != 200) {
+          response.close();
+          error = Optional.of("Status code: " + response.getStatusCode());
+          return;
+        }
+        
+        reader = ChunkedArrayReader.of(response, schema);
+      } catch (IOException e) {
+        metrics.recordError();
+        metrics.recordLatency(Phase.NETWORK, System.nanoTime() - start);
+        error = Optional.of(e.getMessage());
+      } catch (IllegalArgumentException e) {
+        error = Optional.of(e.getMessage());
+      }
     }
+  }
+  
+  /* Blocking command used to wait for the first token of an OAuth 2.0 client. */
+  private static class AwaitTokenCmd implements IBlockingCmd {
+    private static final long TIMEOUT_MILLIS = 30000;
     
-    TDHttpRequest request = new TDHttpRequest(form, operationType);
-    request = setObjectPayload(request, schema, tags, payload);
+    private final OAuth2ClientCredentials oauth;
+    private Optional<IOException> error;
     
-    return issueRequest(request);
+    AwaitTokenCmd(OAuth2ClientCredentials oauth) {
+      this.oauth = oauth;
+      this.error = Optional.empty();
+    }
+    
+    @Override
+    public void exec() {
+      try {
+        oauth.awaitToken(TIMEOUT_MILLIS);
+      } catch (IOException e) {
+        error = Optional.of(e);
+      }
+    }
   }
   
-  private Optional<TDHttpResponse> executeRequestArrayPayload(String operationType, Form form, 
-      DataSchema schema, Object[] payload) {
-    if (schema.getDatatype() != DataSchema.ARRAY) {
-      failed("TD mismatch: illegal arguments, this affordance uses a data schema of type " 
-          + schema.getDatatype());
+  /* Blocking command used to read the next chunk from a cursor. */
+  private static class ReadChunkCmd implements IBlockingCmd {
+    private final ChunkedArrayReader reader;
+    private final int maxItems;
+    private Optional<Object[]> chunk;
+    private Optional<String> error;
+    private long elapsed;
+    
+    ReadChunkCmd(ChunkedArrayReader reader, int maxItems) {
+      this.reader = reader;
+      this.maxItems = maxItems;
+      this.chunk = Optional.empty();
+      this.error = Optional.empty();
     }
     
-    TDHttpRequest request = new TDHttpRequest(form, operationType);
-    request = setArrayPayload(request, schema, payload);
+    @Override
+    public void exec() {
+      long start = System.nanoTime();
+      
+      try {
+        chunk = reader.next(maxItems);
+      } catch (IOException | IllegalArgumentException e) {
+        error = Optional.of(e.getMessage());
+      } finally {
+        elapsed = System.nanoTime() - start;
+      }
+    }
+  }
+  
+  /* A cursor over the items of an array property, read in chunks. */
+  private static class Cursor {
+    private final ChunkedArrayReader reader;
+    private final AffordanceMetrics metrics;
+    private boolean busy;
+    private boolean closed;
     
-    return issueRequest(request);
+    Cursor(ChunkedArrayReader reader, AffordanceMetrics metrics) {
+      this.reader = reader;
+      this.metrics = metrics;
+    }
   }
   
-  private Optional<TDHttpResponse> issueRequest(TDHttpRequest request) {
-    Optional<SecurityScheme> scheme = td.getSecuritySchemeByType(WoTSec.APIKeySecurityScheme);
+  /* Blocking command used to wait for a value written with write-behind. */
+  private static class TakeCmd implements IBlockingCmd {
+    private final WriteBehindSlot slot;
+    private Optional<Pending> pending;
     
-    if (scheme.isPresent() && apiKey.isPresent()) {
-      request.setAPIKey((APIKeySecurityScheme) scheme.get(), apiKey.get());
+    TakeCmd(WriteBehindSlot slot) {
+      this.slot = slot;
+      this.pending = Optional.empty();
     }
     
-    if (this.dryRun) {
-      log(request.toString());
-      return Optional.empty();
-    } else {
-      log(request.toString());
+    @Override
+    public void exec() {
       try {
-        return Optional.of(request.execute());
-      } catch (IOException e) {
-        failed(e.getMessage());
+        pending = slot.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
       }
     }
+  }
+  
+  /* The state of a property mirrored as an observable property. */
+  private static class Observation {
+    private final ResolvedAffordance property;
+    private final int minInterval;
+    private final int maxInterval;
+    private int interval;
+    private int backoff;
+    private boolean active;
+    private Object lastValue;
+    private Optional<String> etag;
+    private Optional<String> lastModified;
+    
+    Observation(ResolvedAffordance property, int minInterval, int maxInterval) {
+      this.property = property;
+      this.minInterval = minInterval;
+      this.maxInterval = maxInterval;
+      this.interval = minInterval;
+      this.backoff = minInterval;
+      this.active = true;
+      this.etag = Optional.empty();
+      this.lastModified = Optional.empty();
+    }
     
-    return Optional.empty();
+    void setConditionalHeaders(ThingRequest request) {
+      if (etag.isPresent()) {
+        request.setHeader("If-None-Match", etag.get());
+      }
+      
+      if (lastModified.isPresent()) {
+        request.setHeader("If-Modified-Since", lastModified.get());
+      }
+    }
+    
+    void setValidators(ThingResponse response) {
+      etag = response.getHeader("ETag");
+      lastModified = response.getHeader("Last-Modified");
+    }
+    
+    /* Poll faster while the value changes, and back off while it does not. */
+    void adaptInterval(boolean changed) {
+      interval = changed ? minInterval : Math.min(interval * 2, maxInterval);
+    }
+    
+    /* The delay before the next long-polling request after a failed or unanswered one. */
+    int nextBackoff() {
+      int delay = backoff;
+      backoff = Math.min(backoff * 2, maxInterval);
+      return delay;
+    }
+    
+    void resetBackoff() {
+      backoff = minInterval;
+    }
   }
 }
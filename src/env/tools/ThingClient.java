@@ -0,0 +1,276 @@
+package tools;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.apache.hc.core5.http.HttpHeaders;
+
+import ch.unisg.ics.interactions.wot.td.vocabularies.TD;
+import tools.AffordanceIndex.ResolvedAffordance;
+import tools.AffordanceMetrics.Phase;
+
+/**
+ * The request path shared by {@link ThingArtifact} and {@link ThingFleetArtifact}. A client
+ * validates and encodes payloads, composes the requests for resolved affordances (with the target
+ * of the Thing, the credential, and compression), and builds the commands that issue them through
+ * a {@link ResilientTransport}, reading cached properties through a {@link ReadCache}. The
+ * artifacts await these commands, such that their locks are released while requests are in
+ * flight, and fail their operations with the errors reported by the client.
+ *
+ */
+public class ThingClient {
+  private final ResilientTransport resilience;
+  private final Consumer<String> log;
+  private Optional<Credential> credential;
+  private boolean dryRun;
+  private boolean retryActions;
+
+  /**
+   * @param transport The transport used to issue requests.
+   * @param log Used to log the requests composed in dry runs (e.g., the artifact's log).
+   */
+  public ThingClient(ThingTransport transport, Consumer<String> log) {
+    this(new ResilientTransport(transport), log);
+  }
+
+  ThingClient(ResilientTransport resilience, Consumer<String> log) {
+    this.resilience = resilience;
+    this.log = log;
+    this.credential = Optional.empty();
+    this.dryRun = false;
+    this.retryActions = false;
+  }
+
+  public ResilientTransport getResilience() {
+    return resilience;
+  }
+
+  public void setTransport(ThingTransport transport) {
+    resilience.setDelegate(transport);
+  }
+
+  public boolean isDryRun() {
+    return dryRun;
+  }
+
+  /**
+   * @param dryRun When set to true, requests are logged, but not issued.
+   */
+  public void setDryRun(boolean dryRun) {
+    this.dryRun = dryRun;
+  }
+
+  /**
+   * Sets the credential used with all requests. The previous credential is released, since shared
+   * credentials are reference counted (also if the same one is set again).
+   *
+   * @param newCredential The credential.
+   */
+  public void setCredential(Credential newCredential) {
+    release();
+    credential = Optional.of(newCredential);
+  }
+
+  /**
+   * Configures how requests deal with a slow or unavailable host (see
+   * {@link ThingArtifact#configureResilience(int, int, int, int, int)}).
+   *
+   * @throws IllegalArgumentException If a setting is negative.
+   */
+  public void configureResilience(int deadline, int maxRetries, int failureThreshold,
+      int openDuration, int maxConcurrentRequests) {
+    if (deadline < 0 || maxRetries < 0 || failureThreshold < 0 || openDuration < 0
+        || maxConcurrentRequests < 0) {
+      throw new IllegalArgumentException("Illegal arguments: invalid resilience settings.");
+    }
+
+    resilience.setPolicy(new ResilientTransport.Policy()
+        .setDeadline(deadline)
+        .setMaxRetries(maxRetries)
+        .setFailureThreshold(failureThreshold)
+        .setOpenDuration(openDuration)
+        .setMaxConcurrentRequests(maxConcurrentRequests)
+        .setRetryActions(retryActions));
+  }
+
+  /**
+   * @param retryActions When set to true, failed action invocations are retried.
+   */
+  public void setRetryActions(boolean retryActions) {
+    this.retryActions = retryActions;
+    resilience.setRetryActions(retryActions);
+  }
+
+  /**
+   * Validates a payload and serializes it in the content type of the affordance's form (e.g., JSON
+   * or CBOR). The time spent is recorded in the encode phase of the affordance's metrics.
+   *
+   * @param affordance The affordance the payload is sent to.
+   * @param metrics The metrics of the affordance.
+   * @param tags A list of IRIs that identify the parameters in the payload. Used for object
+   * schemas.
+   * @param payload The payload.
+   * @return The serialized payload, or an empty optional if the payload is empty.
+   * @throws IllegalArgumentException If the payload does not match the affordance's schema.
+   */
+  public Optional<byte[]> encode(ResolvedAffordance affordance, AffordanceMetrics metrics,
+      Object[] tags, Object[] payload) {
+    if (tags.length > 0 && tags.length != payload.length) {
+      throw new IllegalArgumentException("Illegal arguments: the lists of tags and action "
+          + "parameters should have equal length.");
+    }
+
+    if (payload.length == 0) {
+      return Optional.empty();
+    }
+
+    if (!affordance.getSchema().isPresent()) {
+      throw new IllegalArgumentException("This type of action does not take any input: "
+          + affordance.getSemanticType());
+    }
+
+    long start = System.nanoTime();
+    byte[] encoded = PayloadBinding.encode(affordance.getForm().getContentType(),
+        affordance.getSchema().get(), tags, payload);
+    metrics.recordLatency(Phase.ENCODE, System.nanoTime() - start);
+
+    return Optional.of(encoded);
+  }
+
+  /**
+   * Composes a request for an affordance, sent to the target of its form.
+   *
+   * @param affordance The affordance.
+   * @return The request, with the credential headers and without a payload.
+   */
+  public ThingRequest newRequest(ResolvedAffordance affordance) {
+    return newRequest(affordance, affordance.getForm().getTarget());
+  }
+
+  /**
+   * Composes a request for an affordance, sent to a different target than the form's (e.g., the
+   * same affordance on another instance of a Thing).
+   *
+   * @param affordance The affordance.
+   * @param target The target IRI of the request.
+   * @return The request, with the credential headers and without a payload.
+   */
+  public ThingRequest newRequest(ResolvedAffordance affordance, String target) {
+    ThingRequest request = new ThingRequest(affordance.getForm(), affordance.getOperationType(),
+        target);
+
+    if (credential.isPresent()) {
+      request.setCredentialHeaders(credential.get().headersFor(affordance.getSecurityScheme()));
+    }
+
+    if (affordance.isCompressible()) {
+      request.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+    }
+
+    return request;
+  }
+
+  /**
+   * Composes a request with a payload. In dry runs, the request is logged instead.
+   *
+   * @param affordance The affordance.
+   * @param target The target IRI of the request.
+   * @param payload The serialized payload, if any.
+   * @return The request, or an empty optional in dry runs.
+   */
+  public Optional<ThingRequest> prepare(ResolvedAffordance affordance, String target,
+      Optional<byte[]> payload) {
+    ThingRequest request = newRequest(affordance, target);
+
+    if (payload.isPresent()) {
+      request.setPayload(payload.get());
+    }
+
+    if (dryRun) {
+      // Dry runs are meant for inspecting requests, so these are always logged in full
+      log.accept(request.toString());
+      return Optional.empty();
+    }
+
+    return Optional.of(request);
+  }
+
+  /**
+   * @param requests The requests to be issued in parallel.
+   * @param metrics The metrics of each request's affordance.
+   * @return The command that issues the requests, to be awaited by an artifact.
+   */
+  RequestCmd send(ThingRequest[] requests, AffordanceMetrics[] metrics) {
+    return new RequestCmd(this::issue, requests, metrics);
+  }
+
+  /**
+   * @param requests The reads to be issued in parallel.
+   * @param metrics The metrics of each read's affordance.
+   * @param readCache The cache of the Thing the properties are read from.
+   * @param cacheKeys The cache key of each read, or null for reads that are not cached.
+   * @return The command that issues the reads, to be awaited by an artifact.
+   */
+  RequestCmd read(ThingRequest[] requests, AffordanceMetrics[] metrics,
+      ReadCache<ThingResponse> readCache, String[] cacheKeys) {
+    return send(requests, metrics).readThrough(readCache, cacheKeys);
+  }
+
+  /**
+   * Issues a request on the calling thread (e.g., on a request thread of a fan-out).
+   *
+   * @param request The request.
+   * @param metrics The metrics of the request's affordance.
+   * @return The response.
+   * @throws IOException If no response was received.
+   */
+  ThingResponse execute(ThingRequest request, AffordanceMetrics metrics) throws IOException {
+    return RequestCmd.execute(this::issue, request, metrics);
+  }
+
+  /* Issues a request, unless the credential can no longer authenticate it. */
+  private ThingResponse issue(ThingRequest request) throws IOException {
+    if (credential.isPresent()) {
+      credential.get().check();
+    }
+
+    return resilience.execute(request);
+  }
+
+  /**
+   * Processes the responses of a command once it was awaited: if a response was rejected as
+   * unauthorized, the credential is renewed (e.g., an OAuth 2.0 token is refreshed).
+   *
+   * @param cmd The awaited command.
+   */
+  void completed(RequestCmd cmd) {
+    if (!credential.isPresent() || cmd.error.isPresent()) {
+      return;
+    }
+
+    for (ThingResponse response : cmd.responses) {
+      if (response.getStatusCode() == 401) {
+        credential.get().onUnauthorized();
+        break;
+      }
+    }
+  }
+
+  /** Releases the credential, if it is shared with other artifacts. */
+  public void release() {
+    if (credential.isPresent()) {
+      credential.get().release();
+    }
+  }
+
+  /**
+   * @param operationType The operation type of a request.
+   * @param statusCode The status code of the response.
+   * @return True if the status code is the one expected for the operation type.
+   */
+  static boolean succeeded(String operationType, int statusCode) {
+    // Actions may be accepted and completed later
+    return statusCode == 200 || (statusCode == 202 && operationType.equals(TD.invokeAction));
+  }
+}
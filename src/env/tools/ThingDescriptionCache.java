@@ -0,0 +1,309 @@
+package tools;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.ParseException;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.util.Timeout;
+
+import ch.unisg.ics.interactions.wot.td.ThingDescription;
+import ch.unisg.ics.interactions.wot.td.ThingDescription.TDFormat;
+import ch.unisg.ics.interactions.wot.td.io.TDGraphReader;
+import tools.TDSnapshotStore.Snapshot;
+
+/**
+ * A JVM-wide cache of parsed W3C WoT Thing Descriptions (TDs), keyed by URL. All artifacts created
+ * for the same TD share one parsed model, and concurrent requests for a URL that is not yet cached
+ * trigger a single retrieval.
+ *
+ * Cached TDs are considered fresh for a configurable time-to-live. Stale TDs are revalidated with
+ * a conditional request (ETag / Last-Modified) when the server provided validators, and re-parsed
+ * only if they changed. When the cache is full, the least recently used TD is evicted.
+ *
+ * If the system property <code>tools.td.snapshotDir</code> is set, retrieved TDs are also stored in
+ * a {@link TDSnapshotStore} in that directory. After a restart, a TD that is not cached in memory
+ * yet is revalidated against its snapshot, such that an unchanged TD is not downloaded again, and
+ * the snapshot is used if the TD server cannot be reached or fails (with a 5xx status code).
+ * Snapshots store the parsed model, such that TDs loaded from snapshots are not parsed again.
+ *
+ * The default cache can be configured via the system properties <code>tools.td.cache.maxEntries
+ * </code> and <code>tools.td.cache.ttl</code> (in milliseconds). TDs are retrieved with the
+ * connect and response timeouts of Thing requests (<code>tools.http.connectTimeout</code> and
+ * <code>tools.http.responseTimeout</code>), such that a TD server that does not answer cannot
+ * block the artifacts that wait for its TDs.
+ *
+ */
+public class ThingDescriptionCache {
+  private static final int DEFAULT_MAX_ENTRIES = 256;
+  private static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000;
+  private static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+  private static final long DEFAULT_RESPONSE_TIMEOUT_MILLIS = 30000;
+
+  private static final Logger LOGGER = Logger.getLogger(ThingDescriptionCache.class.getName());
+
+  private static final ThingDescriptionCache INSTANCE = new ThingDescriptionCache(
+      Integer.getInteger("tools.td.cache.maxEntries", DEFAULT_MAX_ENTRIES),
+      Long.getLong("tools.td.cache.ttl", DEFAULT_TTL_MILLIS),
+      Optional.ofNullable(System.getProperty("tools.td.snapshotDir"))
+          .map(dir -> new TDSnapshotStore(Paths.get(dir))));
+
+  private final int maxEntries;
+  private final long ttlMillis;
+  private final Map<String, Entry> entries;
+  private final Map<String, CompletableFuture<Entry>> inFlight;
+  private final Optional<TDSnapshotStore> snapshots;
+  private final CloseableHttpClient client;
+
+  ThingDescriptionCache(int maxEntries, long ttlMillis) {
+    this(maxEntries, ttlMillis, Optional.empty());
+  }
+
+  ThingDescriptionCache(int maxEntries, long ttlMillis, Optional<TDSnapshotStore> snapshots) {
+    this.maxEntries = maxEntries;
+    this.ttlMillis = ttlMillis;
+    this.snapshots = snapshots;
+    // Access-ordered, such that the eldest entry is the least recently used one
+    this.entries = Collections.synchronizedMap(new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > ThingDescriptionCache.this.maxEntries;
+      }
+    });
+    this.inFlight = new ConcurrentHashMap<String, CompletableFuture<Entry>>();
+    this.client = HttpClients.custom()
+        .setDefaultRequestConfig(RequestConfig.custom()
+            .setConnectTimeout(Timeout.ofMilliseconds(
+                Long.getLong("tools.http.connectTimeout", DEFAULT_CONNECT_TIMEOUT_MILLIS)))
+            .setResponseTimeout(Timeout.ofMilliseconds(
+                Long.getLong("tools.http.responseTimeout", DEFAULT_RESPONSE_TIMEOUT_MILLIS)))
+            .build())
+        .build();
+  }
+
+  /**
+   * @return The cache shared by all artifacts in this JVM.
+   */
+  public static ThingDescriptionCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Retrieves a TD from the cache. If the TD is not cached or if it is stale, it is retrieved (or
+   * revalidated) and parsed. Concurrent calls for the same URL share a single retrieval.
+   *
+   * @param url A URL that dereferences to a W3C WoT Thing Description.
+   * @return The parsed TD.
+   * @throws IOException If the TD could not be retrieved or parsed.
+   */
+  public ThingDescription get(String url) throws IOException {
+    Entry entry = entries.get(url);
+
+    if (entry != null && !entry.isStale(System.currentTimeMillis())) {
+      return entry.td;
+    }
+
+    CompletableFuture<Entry> loading = new CompletableFuture<Entry>();
+    CompletableFuture<Entry> current = inFlight.computeIfAbsent(url, key -> loading);
+
+    if (current != loading) {
+      return join(current).td;
+    }
+
+    try {
+      // A retrieval that completed since the lookup above already cached the TD
+      Entry latest = entries.get(url);
+      Entry loaded;
+
+      if (latest != null && !latest.isStale(System.currentTimeMillis())) {
+        loaded = latest;
+      } else {
+        loaded = load(url, Optional.ofNullable(latest != null ? latest : entry));
+        entries.put(url, loaded);
+      }
+
+      loading.complete(loaded);
+      return loaded.td;
+    } catch (IOException | RuntimeException e) {
+      loading.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(url, loading);
+    }
+  }
+
+  /**
+   * Removes a TD from the cache, such that the next retrieval fetches it again.
+   *
+   * @param url The URL of the TD.
+   */
+  public void invalidate(String url) {
+    entries.remove(url);
+  }
+
+  /**
+   * Removes all TDs from the cache.
+   */
+  public void clear() {
+    entries.clear();
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  private Entry load(String url, Optional<Entry> previous) throws IOException {
+    if (!url.startsWith("http://") && !url.startsWith("https://")) {
+      // Conditional requests are only supported for HTTP(S) URLs
+      return new Entry(TDGraphReader.readFromURL(TDFormat.RDF_TURTLE, url), null, null);
+    }
+
+    // TDs not cached in memory yet are revalidated against their snapshot (if any)
+    Optional<Snapshot> snapshot = (previous.isPresent() || !snapshots.isPresent())
+        ? Optional.<Snapshot>empty() : snapshots.get().read(url);
+    String etag = previous.isPresent() ? previous.get().etag
+        : snapshot.flatMap(Snapshot::getETag).orElse(null);
+    String lastModified = previous.isPresent() ? previous.get().lastModified
+        : snapshot.flatMap(Snapshot::getLastModified).orElse(null);
+
+    HttpGet request = new HttpGet(url);
+    request.setHeader(HttpHeaders.ACCEPT, "text/turtle");
+
+    if (etag != null) {
+      request.setHeader(HttpHeaders.IF_NONE_MATCH, etag);
+    }
+    if (lastModified != null) {
+      request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+    }
+
+    try (CloseableHttpResponse response = client.execute(request)) {
+      int statusCode = response.getCode();
+
+      // Using numeric values here to avoid adding a dependency to the JaCaMo project
+      if (statusCode == 304 && previous.isPresent()) {
+        EntityUtils.consume(response.getEntity());
+        return new Entry(previous.get().td, etag, lastModified);
+      }
+
+      if (statusCode == 304 && snapshot.isPresent()) {
+        EntityUtils.consume(response.getEntity());
+        return new Entry(snapshot.get().getThingDescription(), etag, lastModified);
+      }
+
+      if (statusCode != 200 || response.getEntity() == null) {
+        EntityUtils.consume(response.getEntity());
+        throw new StatusCodeException("Unable to retrieve TD from " + url + ", status code: "
+            + statusCode, statusCode);
+      }
+
+      String representation = EntityUtils.toString(response.getEntity());
+      ThingDescription td = TDGraphReader.readFromString(TDFormat.RDF_TURTLE, representation);
+      Entry entry = new Entry(td, headerValue(response.getFirstHeader(HttpHeaders.ETAG)),
+          headerValue(response.getFirstHeader(HttpHeaders.LAST_MODIFIED)));
+      storeSnapshot(url, new Snapshot(td, entry.etag, entry.lastModified));
+
+      return entry;
+    } catch (ParseException e) {
+      throw new IOException(e.getMessage(), e);
+    } catch (IOException e) {
+      // A TD that is gone (e.g., 404 or 410) is not served from its snapshot, only a TD whose
+      // server is unreachable or failing
+      boolean unavailable = !(e instanceof StatusCodeException)
+          || ((StatusCodeException) e).statusCode >= 500;
+
+      if (!snapshot.isPresent() || !unavailable) {
+        throw e;
+      }
+
+      LOGGER.log(Level.WARNING, "Unable to retrieve TD from " + url + ", using snapshot: "
+          + e.getMessage());
+      return new Entry(snapshot.get().getThingDescription(), etag, lastModified);
+    }
+  }
+
+  private void storeSnapshot(String url, Snapshot snapshot) {
+    if (!snapshots.isPresent()) {
+      return;
+    }
+
+    try {
+      snapshots.get().write(url, snapshot);
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to store snapshot of TD " + url + ": " + e.getMessage());
+
+      try {
+        // A previous snapshot would be outdated
+        snapshots.get().remove(url);
+      } catch (IOException removeError) {
+        LOGGER.log(Level.WARNING, "Unable to remove snapshot of TD " + url + ": "
+            + removeError.getMessage());
+      }
+    }
+  }
+
+  private String headerValue(Header header) {
+    return header == null ? null : header.getValue();
+  }
+
+  private Entry join(CompletableFuture<Entry> loading) throws IOException {
+    try {
+      return loading.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for TD retrieval.", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause().getMessage(), e.getCause());
+    }
+  }
+
+  /* Raised when the server answers a TD request with an unexpected status code. */
+  private static class StatusCodeException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    StatusCodeException(String message, int statusCode) {
+      super(message);
+      this.statusCode = statusCode;
+    }
+  }
+
+  private class Entry {
+    private final ThingDescription td;
+    private final String etag;
+    private final String lastModified;
+    private final long validatedAt;
+
+    Entry(ThingDescription td, String etag, String lastModified) {
+      this.td = td;
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.validatedAt = System.currentTimeMillis();
+    }
+
+    boolean isStale(long now) {
+      return now - validatedAt >= ttlMillis;
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package tools;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread pools shared by Thing artifacts to issue requests concurrently. Threads are daemon
+ * threads, such that pending requests do not prevent the MAS from shutting down.
+ *
+ */
+public final class ThingExecutors {
+  private static final ExecutorService REQUEST_EXECUTOR =
+      Executors.newCachedThreadPool(daemonThreads("thing-request"));
+
+  private ThingExecutors() { }
+
+  /**
+   * @return The pool used to issue requests in parallel.
+   */
+  public static ExecutorService requests() {
+    return REQUEST_EXECUTOR;
+  }
+
+  /**
+   * @param prefix The prefix used to name created threads.
+   * @return A factory that creates named daemon threads.
+   */
+  public static ThreadFactory daemonThreads(String prefix) {
+    AtomicInteger count = new AtomicInteger();
+
+    return runnable -> {
+      Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
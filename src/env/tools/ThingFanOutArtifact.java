@@ -0,0 +1,253 @@
+package tools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+
+import cartago.Artifact;
+import cartago.OPERATION;
+import cartago.OpFeedbackParam;
+import ch.unisg.ics.interactions.wot.td.ThingDescription;
+import ch.unisg.ics.interactions.wot.td.schemas.DataSchema;
+import ch.unisg.ics.interactions.wot.td.vocabularies.TD;
+import tools.AffordanceIndex.ResolvedAffordance;
+
+/**
+ * A CArtAgO artifact for invoking the same action on many Things at once, e.g. sending a whole
+ * cell of robots to a position. The Things are given by the URLs of their W3C WoT Thing
+ * Descriptions (TDs), which are retrieved via the {@link ThingDescriptionCache} before any request
+ * is issued. All requests are then issued concurrently over the workspace's connection pool, with
+ * a bounded level of parallelism and a timeout per Thing. The reason why a Thing could not be
+ * reached is logged.
+ *
+ */
+public class ThingFanOutArtifact extends Artifact {
+  private static final int DEFAULT_PARALLELISM = 16;
+  private static final int DEFAULT_TIMEOUT = 5000;
+
+  private int parallelism;
+  private int timeout;
+  private Optional<Credential> credential;
+  private ThingTransport transport;
+
+  /**
+   * Method called by CArtAgO to initialize the artifact with a parallelism of 16 requests and a
+   * timeout of 5 s per Thing.
+   */
+  public void init() {
+    init(DEFAULT_PARALLELISM, DEFAULT_TIMEOUT);
+  }
+
+  /**
+   * Method called by CArtAgO to initialize the artifact.
+   *
+   * @param parallelism The maximum number of requests in flight at once.
+   * @param timeout The timeout per Thing in milliseconds.
+   */
+  public void init(int parallelism, int timeout) {
+    if (parallelism <= 0 || timeout <= 0) {
+      failed("Illegal arguments: the parallelism and the timeout should be positive.");
+    }
+
+    this.parallelism = parallelism;
+    this.timeout = timeout;
+    this.credential = Optional.empty();
+    this.transport = HttpClientTransport.forWorkspace(getId().getWorkspaceId().getName());
+  }
+
+  /**
+   * CArtAgO operation for invoking an action on many Things using a semantic model of the Things.
+   *
+   * @param urls A list of URLs that dereference to the TDs of the Things.
+   * @param semanticType An IRI that identifies the action type.
+   * @param tags A list of IRIs that identify parameters sent in the payload. Used for object
+   * schemas.
+   * @param payload The payload to be issued when invoking the action.
+   * @param statusCodes The status code received from each Thing, in the order of the given URLs.
+   * The status code is 0 if no response was received (e.g., the Thing timed out, its TD could not
+   * be retrieved, or it has no such action), and the reason is logged.
+   */
+  @OPERATION
+  public void invokeAction(Object[] urls, String semanticType, Object[] tags, Object[] payload,
+      OpFeedbackParam<Object[]> statusCodes) {
+    if (tags.length > 0 && tags.length != payload.length) {
+      failed("Illegal arguments: the lists of tags and action parameters should have equal "
+          + "length.");
+    }
+
+    // The requests run while the artifact is unlocked, so they use the current configuration
+    ThingTransport transport = this.transport;
+    Optional<Credential> credential = this.credential;
+    int timeout = this.timeout;
+    List<Callable<Target>> lookups = new ArrayList<Callable<Target>>();
+
+    for (Object url : urls) {
+      if (!(url instanceof String)) {
+        failed("Illegal arguments: the TD URLs should be strings.");
+      }
+
+      lookups.add(() -> resolve((String) url, semanticType));
+    }
+
+    // TDs are retrieved first, such that the timeout of a request does not include its TD
+    FanOutCmd<Target> resolved = new FanOutCmd<Target>(lookups, parallelism, timeout);
+    await(resolved);
+
+    List<Callable<ThingResponse>> requests = new ArrayList<Callable<ThingResponse>>();
+    int[] indexes = new int[urls.length];
+
+    for (int i = 0; i < urls.length; i ++) {
+      Optional<Target> target = resolved.getResult(i);
+      indexes[i] = target.isPresent() ? requests.size() : -1;
+
+      if (target.isPresent()) {
+        requests.add(() -> invokeAction(transport, credential, timeout, target.get(), tags,
+            payload));
+      }
+    }
+
+    FanOutCmd<ThingResponse> cmd = new FanOutCmd<ThingResponse>(requests, parallelism, timeout);
+    await(cmd);
+
+    int[] received = FanOutCmd.statusCodesOf(cmd);
+    int[] codes = new int[urls.length];
+
+    for (int i = 0; i < urls.length; i ++) {
+      Optional<String> error = indexes[i] < 0 ? resolved.getError(i)
+          : cmd.getError(indexes[i]);
+      codes[i] = indexes[i] < 0 ? 0 : received[indexes[i]];
+
+      if (error.isPresent()) {
+        log("Unable to invoke " + semanticType + " on " + urls[i] + ": " + error.get());
+      }
+    }
+
+    statusCodes.set(toObjects(codes));
+  }
+
+  /**
+   * CArtAgO operation for invoking an action on many Things using a semantic model of the Things.
+   *
+   * @param urls A list of URLs that dereference to the TDs of the Things.
+   * @param semanticType An IRI that identifies the action type.
+   * @param payload The payload to be issued when invoking the action.
+   * @param statusCodes The status code received from each Thing, in the order of the given URLs.
+   */
+  @OPERATION
+  public void invokeAction(Object[] urls, String semanticType, Object[] payload,
+      OpFeedbackParam<Object[]> statusCodes) {
+    invokeAction(urls, semanticType, new Object[0], payload, statusCodes);
+  }
+
+  /**
+   * CArtAgO operation that sets the maximum number of requests in flight at once and the timeout
+   * per Thing.
+   *
+   * @param parallelism The maximum number of requests in flight at once.
+   * @param timeout The timeout per Thing in milliseconds.
+   */
+  @OPERATION
+  public void configureFanOut(int parallelism, int timeout) {
+    if (parallelism <= 0 || timeout <= 0) {
+      failed("Illegal arguments: the parallelism and the timeout should be positive.");
+    }
+
+    this.parallelism = parallelism;
+    this.timeout = timeout;
+  }
+
+  /**
+   * CArtAgO operation that sets an authentication token used with all Things (used with
+   * APIKeySecurityScheme).
+   *
+   * @param token The authentication token.
+   */
+  @OPERATION
+  public void setAPIKey(String token) {
+    if (token != null && !token.isEmpty()) {
+      this.credential = Optional.of(Credential.apiKey(token));
+    }
+  }
+
+  /* Set the transport used to issue requests (e.g., a stub transport used in tests). */
+  void setTransport(ThingTransport transport) {
+    releaseTransport();
+    this.transport = transport;
+  }
+
+  @Override
+  protected void dispose() {
+    releaseTransport();
+  }
+
+  /* Releases the reference to the workspace's transport, if this artifact still uses it. */
+  private void releaseTransport() {
+    if (transport instanceof HttpClientTransport) {
+      try {
+        ((HttpClientTransport) transport).close();
+      } catch (IOException e) {
+        log("Unable to close transport: " + e.getMessage());
+      }
+    }
+  }
+
+  /* Runs on a request thread: retrieves the Thing's TD and resolves the action. */
+  private static Target resolve(String url, String semanticType) throws IOException {
+    ThingDescription td = ThingDescriptionCache.getInstance().get(url);
+    Optional<ResolvedAffordance> action = AffordanceIndex.of(td).get(TD.invokeAction,
+        semanticType);
+
+    if (!action.isPresent()) {
+      throw new IOException("Unknown action: " + semanticType + " for Thing: " + url);
+    }
+
+    return new Target(td.getTitle(), action.get(),
+        OperationMetrics.getInstance().forAffordance(url, td.getTitle(), action.get()));
+  }
+
+  /* Runs on a request thread: invokes the action on a Thing. */
+  private static ThingResponse invokeAction(ThingTransport transport,
+      Optional<Credential> credential, int timeout, Target target, Object[] tags,
+      Object[] payload) throws IOException {
+    ResolvedAffordance action = target.action;
+    ThingRequest request = new ThingRequest(action.getForm(), TD.invokeAction)
+        .setTimeout(timeout);
+    Optional<DataSchema> schema = action.getSchema();
+
+    if (schema.isPresent() && payload.length > 0) {
+      request.setPayload(PayloadBinding.encode(action.getForm().getContentType(),
+          schema.get(), tags, payload));
+    }
+
+    if (credential.isPresent()) {
+      request.setCredentialHeaders(credential.get().headersFor(action.getSecurityScheme()));
+    }
+
+    return RequestCmd.execute(transport, request, target.metrics);
+  }
+
+  static Object[] toObjects(int[] values) {
+    Object[] objects = new Object[values.length];
+
+    for (int i = 0; i < values.length; i ++) {
+      objects[i] = values[i];
+    }
+
+    return objects;
+  }
+
+  /* The action resolved in the TD of a Thing. */
+  private static class Target {
+    private final String title;
+    private final ResolvedAffordance action;
+    private final AffordanceMetrics metrics;
+
+    Target(String title, ResolvedAffordance action, AffordanceMetrics metrics) {
+      this.title = title;
+      this.action = action;
+      this.metrics = metrics;
+    }
+  }
+}
@@ -0,0 +1,640 @@
+package tools;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import cartago.Artifact;
+import cartago.OPERATION;
+import cartago.OpFeedbackParam;
+import ch.unisg.ics.interactions.wot.td.ThingDescription;
+import ch.unisg.ics.interactions.wot.td.security.SecurityScheme;
+import ch.unisg.ics.interactions.wot.td.vocabularies.TD;
+import tools.AffordanceIndex.ResolvedAffordance;
+import tools.AffordanceMetrics.Phase;
+
+/**
+ * A CArtAgO artifact that exposes the affordances of a fleet of identical Things (e.g., forklift
+ * robots of the same model) to agents. The artifact uses a single W3C WoT Thing Description (TD)
+ * as a template that is bound to many Thing instances, and its operations take the id of the Thing
+ * instance to interact with.
+ *
+ * The form targets in the TD template are rebased to the base URI of each instance: targets that
+ * start with the template's base URI (or with the URL of the template, if the TD has no base URI)
+ * are resolved against the instance's base URI. All instances share the parsed TD, the affordance
+ * index, the payload codecs, and the workspace's connection pool, such that only the (lazily
+ * computed) targets and the read cache are kept per instance. Requests are composed and issued via
+ * a {@link ThingClient}, the same as with {@link ThingArtifact}.
+ *
+ */
+public class ThingFleetArtifact extends Artifact {
+  private static final String THING_ID_VARIABLE = "{thingId}";
+  private static final int DEFAULT_FAN_OUT_PARALLELISM = 16;
+  private static final int DEFAULT_FAN_OUT_TIMEOUT = 5000;
+
+  private AffordanceIndex index;
+  private String thingName;
+  private String templateBase;
+  private Optional<String> baseUriTemplate;
+  private ThingTransport transport;
+  private ThingClient client;
+  private Map<String, ThingInstance> things;
+  private Map<String, Integer> readCacheTTLs;
+  private int fanOutParallelism;
+  private int fanOutTimeout;
+
+  /**
+   * Method called by CArtAgO to initialize the artifact. The TD template is retrieved and parsed
+   * via the {@link ThingDescriptionCache}.
+   *
+   * @param url A URL that dereferences to the W3C WoT Thing Description used as a template.
+   */
+  public void init(String url) {
+    init(url, "", false);
+  }
+
+  /**
+   * Method called by CArtAgO to initialize the artifact.
+   *
+   * @param url A URL that dereferences to the W3C WoT Thing Description used as a template.
+   * @param baseUriTemplate A URI template used to compute the base URI of Things added without an
+   * explicit base URI, e.g. <code>http://robots.example.org/{thingId}</code>.
+   */
+  public void init(String url, String baseUriTemplate) {
+    init(url, baseUriTemplate, false);
+  }
+
+  /**
+   * Method called by CArtAgO to initialize the artifact.
+   *
+   * @param url A URL that dereferences to the W3C WoT Thing Description used as a template.
+   * @param baseUriTemplate A URI template used to compute the base URI of Things added without an
+   * explicit base URI. Can be empty.
+   * @param dryRun When set to true, the requests are logged, but not executed.
+   */
+  public void init(String url, String baseUriTemplate, boolean dryRun) {
+    try {
+      // Only the index is kept, the parsed TD is held by the cache
+      ThingDescription td = ThingDescriptionCache.getInstance().get(url);
+      index = AffordanceIndex.of(td);
+      thingName = td.getTitle();
+      templateBase = td.getBaseURI().orElse(url);
+
+      for (SecurityScheme scheme : td.getSecuritySchemes()) {
+        defineObsProperty("securityScheme", scheme.getSchemaType());
+      }
+    } catch (IOException e) {
+      failed(e.getMessage());
+    }
+
+    this.baseUriTemplate = baseUriTemplate.isEmpty() ? Optional.empty()
+        : Optional.of(baseUriTemplate);
+    this.transport = HttpClientTransport.forWorkspace(getId().getWorkspaceId().getName());
+    this.client = new ThingClient(transport, this::log);
+    this.client.setDryRun(dryRun);
+    this.things = new ConcurrentHashMap<String, ThingInstance>();
+    this.readCacheTTLs = new HashMap<String, Integer>();
+    this.fanOutParallelism = DEFAULT_FAN_OUT_PARALLELISM;
+    this.fanOutTimeout = DEFAULT_FAN_OUT_TIMEOUT;
+
+    defineObsProperty("thingCount", 0);
+  }
+
+  /**
+   * CArtAgO operation that adds a Thing instance to the fleet, with a base URI computed from the
+   * base URI template given when the artifact was created.
+   *
+   * @param thingId The id of the Thing instance.
+   */
+  @OPERATION
+  public void addThing(String thingId) {
+    if (!baseUriTemplate.isPresent()) {
+      failed("No base URI template was given for this fleet, the base URI of " + thingId
+          + " is required.");
+    }
+
+    addThing(thingId, baseUriTemplate.get().replace(THING_ID_VARIABLE, encode(thingId)));
+  }
+
+  /**
+   * CArtAgO operation that adds a Thing instance to the fleet.
+   *
+   * @param thingId The id of the Thing instance.
+   * @param baseUri The base URI of the Thing instance, which replaces the base URI of the TD
+   * template in all form targets.
+   */
+  @OPERATION
+  public void addThing(String thingId, String baseUri) {
+    ThingInstance thing = new ThingInstance(thingId, baseUri, templateBase);
+
+    if (things.putIfAbsent(thingId, thing) != null) {
+      failed("A Thing with this id already exists: " + thingId);
+    }
+
+    for (Map.Entry<String, Integer> ttl : readCacheTTLs.entrySet()) {
+      thing.readCache.setTTL(ttl.getKey(), ttl.getValue());
+    }
+
+    getObsProperty("thingCount").updateValue(things.size());
+  }
+
+  /**
+   * CArtAgO operation that removes a Thing instance from the fleet.
+   *
+   * @param thingId The id of the Thing instance.
+   */
+  @OPERATION
+  public void removeThing(String thingId) {
+    if (things.remove(thingId) == null) {
+      failed("Unknown Thing: " + thingId);
+    }
+
+    getObsProperty("thingCount").updateValue(things.size());
+  }
+
+  /**
+   * CArtAgO operation for retrieving the ids of the Thing instances in the fleet.
+   *
+   * @param thingIds The ids of the Thing instances.
+   */
+  @OPERATION
+  public void getThings(OpFeedbackParam<Object[]> thingIds) {
+    thingIds.set(things.keySet().toArray());
+  }
+
+  /**
+   * CArtAgO operation for reading a property of a Thing instance.
+   *
+   * @param thingId The id of the Thing instance.
+   * @param semanticType An IRI that identifies the property type.
+   * @param output The read value, as returned by <code>readProperty</code> of ThingArtifact.
+   */
+  @OPERATION
+  public void readProperty(String thingId, String semanticType, OpFeedbackParam<Object[]> output) {
+    readProperty(thingId, semanticType, Optional.empty(), output);
+  }
+
+  /**
+   * CArtAgO operation for reading a property of a Thing instance.
+   *
+   * @param thingId The id of the Thing instance.
+   * @param semanticType An IRI that identifies the property type.
+   * @param tags A list of IRIs, used if the property is an object schema.
+   * @param output The read value.
+   */
+  @OPERATION
+  public void readProperty(String thingId, String semanticType, OpFeedbackParam<Object[]> tags,
+      OpFeedbackParam<Object[]> output) {
+    readProperty(thingId, semanticType, Optional.of(tags), output);
+  }
+
+  /**
+   * CArtAgO operation for writing a property of a Thing instance.
+   *
+   * @param thingId The id of the Thing instance.
+   * @param semanticType An IRI that identifies the property type.
+   * @param tags A list of IRIs that identify parameters sent in the payload. Used for object
+   * schemas.
+   * @param payload The payload to be issued when writing the property.
+   */
+  @OPERATION
+  public void writeProperty(String thingId, String semanticType, Object[] tags, Object[] payload) {
+    if (payload.length == 0) {
+      failed("The payload used when writing a property cannot be empty.");
+    }
+
+    ThingInstance thing = getThingOrFail(thingId);
+    Optional<ThingResponse> response = executeRequest(thing, TD.writeProperty, semanticType,
+        tags, payload);
+
+    if (response.isPresent()
+        && !ThingClient.succeeded(TD.writeProperty, response.get().getStatusCode())) {
+      failed("Status code: " + response.get().getStatusCode());
+    }
+  }
+
+  /**
+   * CArtAgO operation for writing a property of a Thing instance.
+   *
+   * @param thingId The id of the Thing instance.
+   * @param semanticType An IRI that identifies the property type.
+   * @param payload The payload to be issued when writing the property.
+   */
+  @OPERATION
+  public void writeProperty(String thingId, String semanticType, Object[] payload) {
+    writeProperty(thingId, semanticType, new Object[0], payload);
+  }
+
+  /**
+   * CArtAgO operation for invoking an action on a Thing instance.
+   *
+   * @param thingId The id of the Thing instance.
+   * @param semanticType An IRI that identifies the action type.
+   * @param tags A list of IRIs that identify parameters sent in the payload. Used for object
+   * schemas.
+   * @param payload The payload to be issued when invoking the action.
+   */
+  @OPERATION
+  public void invokeAction(String thingId, String semanticType, Object[] tags, Object[] payload) {
+    ThingInstance thing = getThingOrFail(thingId);
+    Optional<ThingResponse> response = executeRequest(thing, TD.invokeAction, semanticType,
+        tags, payload);
+
+    if (response.isPresent()
+        && !ThingClient.succeeded(TD.invokeAction, response.get().getStatusCode())) {
+      failed("Status code: " + response.get().getStatusCode());
+    }
+  }
+
+  /**
+   * CArtAgO operation for invoking an action on a Thing instance.
+   *
+   * @param thingId The id of the Thing instance.
+   * @param semanticType An IRI that identifies the action type.
+   * @param payload The payload to be issued when invoking the action.
+   */
+  @OPERATION
+  public void invokeAction(String thingId, String semanticType, Object[] payload) {
+    invokeAction(thingId, semanticType, new Object[0], payload);
+  }
+
+  /**
+   * CArtAgO operation for invoking an action on many Thing instances at once. The requests are
+   * issued concurrently, with at most 16 requests in flight and a timeout of 5 s per Thing by
+   * default (see {@link #configureFanOut(int, int)}).
+   *
+   * @param thingIds The ids of the Thing instances.
+   * @param semanticType An IRI that identifies the action type.
+   * @param tags A list of IRIs that identify parameters sent in the payload. Used for object
+   * schemas.
+   * @param payload The payload to be issued when invoking the action.
+   * @param statusCodes The status code received from each Thing, in the order of the given ids.
+   * The status code is 0 if no response was received (e.g., the Thing timed out), and the reason
+   * is logged.
+   */
+  @OPERATION
+  public void invokeActionOnThings(Object[] thingIds, String semanticType, Object[] tags,
+      Object[] payload, OpFeedbackParam<Object[]> statusCodes) {
+    ResolvedAffordance action = getAffordanceOrFail(TD.invokeAction, semanticType);
+    ThingInstance[] targets = new ThingInstance[thingIds.length];
+
+    for (int i = 0; i < thingIds.length; i ++) {
+      targets[i] = getThingOrFail(String.valueOf(thingIds[i]));
+    }
+
+    if (targets.length == 0) {
+      statusCodes.set(new Object[0]);
+      return;
+    }
+
+    // All Things share the affordance, so the payload is encoded only once
+    Optional<byte[]> encoded = encodePayload(action, metricsFor(targets[0], action), tags,
+        payload);
+    List<Callable<ThingResponse>> requests = new ArrayList<Callable<ThingResponse>>();
+
+    for (ThingInstance thing : targets) {
+      AffordanceMetrics metrics = metricsFor(thing, action);
+      Optional<ThingRequest> request = client.prepare(action, thing.targetOf(action), encoded);
+
+      if (request.isPresent()) {
+        request.get().setTimeout(fanOutTimeout);
+        requests.add(() -> client.execute(request.get(), metrics));
+      }
+    }
+
+    if (client.isDryRun()) {
+      return;
+    }
+
+    FanOutCmd<ThingResponse> cmd = new FanOutCmd<ThingResponse>(requests, fanOutParallelism,
+        fanOutTimeout);
+    await(cmd);
+
+    for (int i = 0; i < targets.length; i ++) {
+      targets[i].readCache.invalidate();
+
+      if (cmd.getError(i).isPresent()) {
+        log("Unable to invoke " + semanticType + " on " + targets[i].id + ": "
+            + cmd.getError(i).get());
+      }
+    }
+
+    statusCodes.set(ThingFanOutArtifact.toObjects(FanOutCmd.statusCodesOf(cmd)));
+  }
+
+  /**
+   * CArtAgO operation for invoking an action on many Thing instances at once.
+   *
+   * @param thingIds The ids of the Thing instances.
+   * @param semanticType An IRI that identifies the action type.
+   * @param payload The payload to be issued when invoking the action.
+   * @param statusCodes The status code received from each Thing, in the order of the given ids.
+   */
+  @OPERATION
+  public void invokeActionOnThings(Object[] thingIds, String semanticType, Object[] payload,
+      OpFeedbackParam<Object[]> statusCodes) {
+    invokeActionOnThings(thingIds, semanticType, new Object[0], payload, statusCodes);
+  }
+
+  /**
+   * CArtAgO operation that sets the maximum number of requests in flight at once and the timeout
+   * per Thing used by <code>invokeActionOnThings</code>.
+   *
+   * @param parallelism The maximum number of requests in flight at once.
+   * @param timeout The timeout per Thing in milliseconds.
+   */
+  @OPERATION
+  public void configureFanOut(int parallelism, int timeout) {
+    if (parallelism <= 0 || timeout <= 0) {
+      failed("Illegal arguments: the parallelism and the timeout should be positive.");
+    }
+
+    this.fanOutParallelism = parallelism;
+    this.fanOutTimeout = timeout;
+  }
+
+  /**
+   * CArtAgO operation that configures how requests to the Things deal with slow or unavailable
+   * hosts, the same as <code>configureResilience</code> of ThingArtifact. Each host has its own
+   * circuit breaker, shared with all artifacts that send requests to the host.
+   *
+   * @param deadline The deadline of a request in milliseconds, including its retries. 0 disables
+   * the deadline.
+   * @param maxRetries The maximum number of retries of idempotent requests.
+   * @param failureThreshold The number of consecutive failures after which the breaker of a host
+   * opens. 0 disables the breakers.
+   * @param openDuration The time in milliseconds after which an open breaker lets a probe through.
+   * @param maxConcurrentRequests The maximum number of concurrent requests to a host. 0 disables
+   * the limit.
+   */
+  @OPERATION
+  public void configureResilience(int deadline, int maxRetries, int failureThreshold,
+      int openDuration, int maxConcurrentRequests) {
+    try {
+      client.configureResilience(deadline, maxRetries, failureThreshold, openDuration,
+          maxConcurrentRequests);
+    } catch (IllegalArgumentException e) {
+      failed(e.getMessage());
+    }
+  }
+
+  /**
+   * CArtAgO operation that enables retrying action invocations.
+   *
+   * @param retryActions When set to true, failed action invocations are retried.
+   */
+  @OPERATION
+  public void setRetryActions(boolean retryActions) {
+    client.setRetryActions(retryActions);
+  }
+
+  /**
+   * CArtAgO operation that enables caching of the values read for a property of all Things in the
+   * fleet, the same as <code>setReadCacheTTL</code> of ThingArtifact. Each Thing has its own
+   * cache, which is discarded when a property of the Thing is written or an action is invoked on
+   * the Thing via this artifact.
+   *
+   * @param semanticType An IRI that identifies the property type.
+   * @param ttl The time-to-live of cached values in milliseconds. A value of 0 disables caching.
+   */
+  @OPERATION
+  public void setReadCacheTTL(String semanticType, int ttl) {
+    getAffordanceOrFail(TD.readProperty, semanticType);
+    readCacheTTLs.put(semanticType, ttl);
+
+    for (ThingInstance thing : things.values()) {
+      thing.readCache.setTTL(semanticType, ttl);
+    }
+  }
+
+  /**
+   * CArtAgO operation that sets an authentication token used with all Things in the fleet (used
+   * with APIKeySecurityScheme).
+   *
+   * @param token The authentication token.
+   */
+  @OPERATION
+  public void setAPIKey(String token) {
+    if (token != null && !token.isEmpty()) {
+      client.setCredential(Credential.apiKey(token));
+    }
+  }
+
+  /* Set the transport used to issue requests (e.g., a stub transport used in tests). */
+  void setTransport(ThingTransport transport) {
+    releaseTransport();
+    this.transport = transport;
+    client.setTransport(transport);
+  }
+
+  @Override
+  protected void dispose() {
+    if (client != null) {
+      client.release();
+    }
+
+    releaseTransport();
+  }
+
+  /* Releases the reference to the workspace's transport, if this artifact still uses it. */
+  private void releaseTransport() {
+    if (transport instanceof HttpClientTransport) {
+      try {
+        ((HttpClientTransport) transport).close();
+      } catch (IOException e) {
+        log("Unable to close transport: " + e.getMessage());
+      }
+    }
+  }
+
+  private void readProperty(String thingId, String semanticType,
+      Optional<OpFeedbackParam<Object[]>> tags, OpFeedbackParam<Object[]> output) {
+    long start = System.nanoTime();
+    ThingInstance thing = getThingOrFail(thingId);
+    ResolvedAffordance property = getAffordanceOrFail(TD.readProperty, semanticType);
+    AffordanceMetrics metrics = metricsFor(thing, property);
+    metrics.recordLatency(Phase.LOOKUP, System.nanoTime() - start);
+
+    Optional<ThingRequest> request = client.prepare(property, thing.targetOf(property),
+        Optional.empty());
+
+    if (!request.isPresent()) {
+      return;
+    }
+
+    // Cached properties are read through the Thing's cache, which also joins reads in flight
+    String cacheKey = thing.readCache.isCached(semanticType) ? semanticType : null;
+    ThingResponse response = issueRequest(thing, client.read(
+        new ThingRequest[] { request.get() }, new AffordanceMetrics[] { metrics },
+        thing.readCache, new String[] { cacheKey }), false);
+
+    if (!ThingClient.succeeded(TD.readProperty, response.getStatusCode())) {
+      failed("Status code: " + response.getStatusCode());
+    }
+
+    long decodeStart = System.nanoTime();
+
+    try {
+      PayloadBinding.decode(response, property.getSchema().get(), tags, output);
+    } catch (IllegalArgumentException e) {
+      failed(e.getMessage());
+    }
+
+    metrics.recordLatency(Phase.DECODE, System.nanoTime() - decodeStart);
+    metrics.recordLatency(Phase.TOTAL, System.nanoTime() - start);
+  }
+
+  private Optional<ThingResponse> executeRequest(ThingInstance thing, String operationType,
+      String semanticType, Object[] tags, Object[] payload) {
+    long start = System.nanoTime();
+    ResolvedAffordance affordance = getAffordanceOrFail(operationType, semanticType);
+    AffordanceMetrics metrics = metricsFor(thing, affordance);
+    metrics.recordLatency(Phase.LOOKUP, System.nanoTime() - start);
+
+    Optional<ThingRequest> request = client.prepare(affordance, thing.targetOf(affordance),
+        encodePayload(affordance, metrics, tags, payload));
+
+    if (!request.isPresent()) {
+      return Optional.empty();
+    }
+
+    // Writes and actions may change the Thing's state
+    ThingResponse response = issueRequest(thing, client.send(
+        new ThingRequest[] { request.get() }, new AffordanceMetrics[] { metrics }), true);
+    metrics.recordLatency(Phase.TOTAL, System.nanoTime() - start);
+
+    return Optional.of(response);
+  }
+
+  /* Validate and serialize a payload in the content type of the affordance's form. */
+  private Optional<byte[]> encodePayload(ResolvedAffordance affordance,
+      AffordanceMetrics metrics, Object[] tags, Object[] payload) {
+    Optional<byte[]> encoded = Optional.empty();
+
+    try {
+      encoded = client.encode(affordance, metrics, tags, payload);
+    } catch (IllegalArgumentException e) {
+      failed(e.getMessage());
+    }
+
+    return encoded;
+  }
+
+  private ThingResponse issueRequest(ThingInstance thing, RequestCmd cmd,
+      boolean invalidatesReads) {
+    // Release the artifact while the request is in flight
+    await(cmd);
+
+    if (invalidatesReads) {
+      thing.readCache.invalidate();
+    }
+
+    if (cmd.error.isPresent()) {
+      failed(cmd.error.get().getMessage());
+    }
+
+    client.completed(cmd);
+    return cmd.responses[0];
+  }
+
+  private ThingInstance getThingOrFail(String thingId) {
+    ThingInstance thing = things.get(thingId);
+
+    if (thing == null) {
+      failed("Unknown Thing: " + thingId);
+    }
+
+    return thing;
+  }
+
+  private ResolvedAffordance getAffordanceOrFail(String operationType, String semanticType) {
+    Optional<ResolvedAffordance> affordance = index.get(operationType, semanticType);
+
+    if (!affordance.isPresent()) {
+      failed("Unknown affordance: " + semanticType);
+    }
+
+    return affordance.get();
+  }
+
+  /* Metrics are kept per Thing instance, identified by its base URI. */
+  private AffordanceMetrics metricsFor(ThingInstance thing, ResolvedAffordance affordance) {
+    return OperationMetrics.getInstance().forAffordance(thing.baseUri, thingName, affordance);
+  }
+
+  private static String encode(String thingId) {
+    try {
+      return URLEncoder.encode(thingId, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /* Resolve a target of the template against the base URI of an instance. */
+  static String rebase(String target, String templateBase, String instanceBase) {
+    if (!isUnder(target, templateBase)) {
+      // Targets on other hosts are shared by all instances
+      return target;
+    }
+
+    String path = target.substring(templateBase.length());
+
+    if (instanceBase.endsWith("/") && path.startsWith("/")) {
+      path = path.substring(1);
+    } else if (!instanceBase.endsWith("/") && !path.isEmpty() && !path.startsWith("/")
+        && templateBase.endsWith("/")) {
+      path = "/" + path;
+    }
+
+    return instanceBase + path;
+  }
+
+  /* A target is under a base URI if the base URI is followed by the end of a path segment. */
+  private static boolean isUnder(String target, String base) {
+    if (!target.startsWith(base)) {
+      return false;
+    }
+
+    if (target.length() == base.length() || base.endsWith("/")) {
+      return true;
+    }
+
+    char next = target.charAt(base.length());
+    return next == '/' || next == '?' || next == '#';
+  }
+
+  /* A Thing instance of the fleet, with the form targets rebased to its base URI. */
+  static class ThingInstance {
+    private final String id;
+    private final String baseUri;
+    private final String templateBase;
+    private final Map<ResolvedAffordance, String> targets;
+    final ReadCache<ThingResponse> readCache;
+
+    ThingInstance(String id, String baseUri, String templateBase) {
+      this.id = id;
+      this.baseUri = baseUri;
+      this.templateBase = templateBase;
+      this.targets = new ConcurrentHashMap<ResolvedAffordance, String>();
+      this.readCache = new ReadCache<ThingResponse>(response -> response.getStatusCode() == 200);
+    }
+
+    String targetOf(ResolvedAffordance affordance) {
+      String target = targets.get(affordance);
+
+      if (target == null) {
+        target = rebase(affordance.getForm().getTarget(), templateBase, baseUri);
+        targets.put(affordance, target);
+      }
+
+      return target;
+    }
+  }
+}
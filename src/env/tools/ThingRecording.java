@@ -0,0 +1,329 @@
+package tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A recording of the requests issued by Thing artifacts and of the responses received for them,
+ * used to replay a MAS without the Things (see {@link RecordingTransport} and {@link
+ * ReplayTransport}). Recordings are stored in a compact, append-only binary file: each exchange is
+ * appended (and flushed) as soon as its response is received, such that a recording interrupted
+ * by a crash can still be replayed up to its last complete exchange.
+ *
+ * Exchanges are indexed by affordance, i.e. by operation type, method, and target. Files are
+ * shared by all artifacts in the JVM: there is a single appender per file, and a file is loaded
+ * only once for all artifacts that replay it (unless it changed in the meantime).
+ *
+ */
+public final class ThingRecording {
+  private static final int MAGIC = 0x54524543;
+  private static final int VERSION = 1;
+  /* The response headers used by Thing artifacts, the others are not recorded. */
+  private static final String[] RECORDED_HEADERS = { "Content-Type", "ETag", "Last-Modified" };
+
+  private static final Map<Path, Appender> APPENDERS = new ConcurrentHashMap<Path, Appender>();
+  private static final Map<Path, ThingRecording> LOADED =
+      new ConcurrentHashMap<Path, ThingRecording>();
+
+  private final long size;
+  private final List<Exchange> exchanges;
+  private final Map<String, List<Exchange>> byAffordance;
+  private final Map<String, List<Exchange>> byRequest;
+
+  ThingRecording(List<Exchange> exchanges, long size) {
+    this.size = size;
+    this.exchanges = Collections.unmodifiableList(exchanges);
+    this.byAffordance = new HashMap<String, List<Exchange>>();
+    this.byRequest = new HashMap<String, List<Exchange>>();
+
+    for (Exchange exchange : exchanges) {
+      byAffordance.computeIfAbsent(exchange.affordanceKey(), key -> new ArrayList<Exchange>())
+          .add(exchange);
+      byRequest.computeIfAbsent(exchange.requestKey(), key -> new ArrayList<Exchange>())
+          .add(exchange);
+    }
+  }
+
+  /**
+   * Loads a recording, or returns the recording already loaded from the same file if the file did
+   * not grow since. An incomplete exchange at the end of the file (e.g., after a crash) is ignored.
+   *
+   * @param file The recording file.
+   * @return The recording.
+   * @throws IOException If the file cannot be read or is not a recording.
+   */
+  public static ThingRecording load(Path file) throws IOException {
+    Path key = file.toAbsolutePath().normalize();
+    long size = Files.size(key);
+    ThingRecording loaded = LOADED.get(key);
+
+    if (loaded != null && loaded.size == size) {
+      return loaded;
+    }
+
+    List<Exchange> exchanges = new ArrayList<Exchange>();
+
+    try (InputStream stream = Files.newInputStream(key);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Not a recording of Thing interactions: " + file);
+      }
+
+      while (true) {
+        try {
+          exchanges.add(Exchange.read(in));
+        } catch (EOFException e) {
+          // The end of the file, or an exchange that was not written completely
+          break;
+        }
+      }
+    } catch (EOFException e) {
+      throw new IOException("Not a recording of Thing interactions: " + file);
+    }
+
+    ThingRecording recording = new ThingRecording(exchanges, size);
+    LOADED.put(key, recording);
+    return recording;
+  }
+
+  /**
+   * Retrieves the appender of a recording file. The file is created if it does not exist, and
+   * exchanges are appended to it otherwise.
+   *
+   * @param file The recording file.
+   * @return The appender shared by all artifacts that record to the file.
+   * @throws IOException If the file cannot be opened.
+   */
+  public static Appender appenderFor(Path file) throws IOException {
+    try {
+      return APPENDERS.computeIfAbsent(file.toAbsolutePath().normalize(), key -> {
+        try {
+          return new Appender(key);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * @return All exchanges, in the order in which they were recorded.
+   */
+  public List<Exchange> getExchanges() {
+    return exchanges;
+  }
+
+  /* The exchanges recorded for the affordance targeted by a request. */
+  List<Exchange> exchangesFor(ThingRequest request) {
+    return byAffordance.getOrDefault(affordanceKey(request), Collections.<Exchange>emptyList());
+  }
+
+  /* The exchanges recorded for the same affordance and the same request payload. */
+  List<Exchange> exchangesWithPayload(ThingRequest request) {
+    return byRequest.getOrDefault(requestKey(request), Collections.<Exchange>emptyList());
+  }
+
+  static String affordanceKey(ThingRequest request) {
+    return affordanceKey(request.getOperationType(), request.getMethod(), request.getTarget());
+  }
+
+  static String requestKey(ThingRequest request) {
+    return requestKey(affordanceKey(request), request.getBody().orElse(null));
+  }
+
+  private static String affordanceKey(String operationType, String method, String target) {
+    return operationType + " " + method + " " + target;
+  }
+
+  private static String requestKey(String affordanceKey, byte[] payload) {
+    return payload == null ? affordanceKey
+        : affordanceKey + "\n" + Base64.getEncoder().encodeToString(payload);
+  }
+
+  /** Appends exchanges to a recording file. Appenders are thread-safe. */
+  public static class Appender {
+    private final DataOutputStream out;
+
+    private Appender(Path file) throws IOException {
+      if (file.getParent() != null) {
+        Files.createDirectories(file.getParent());
+      }
+
+      boolean empty = !Files.exists(file) || Files.size(file) == 0;
+      OutputStream stream = Files.newOutputStream(file, StandardOpenOption.CREATE,
+          StandardOpenOption.APPEND);
+      this.out = new DataOutputStream(new BufferedOutputStream(stream));
+
+      if (empty) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.flush();
+      }
+    }
+
+    /**
+     * Appends an exchange to the recording.
+     *
+     * @param request The request issued.
+     * @param response The response received.
+     * @param latencyNanos The time it took to receive the response, in nanoseconds.
+     * @throws IOException If the exchange could not be written.
+     */
+    public synchronized void append(ThingRequest request, ThingResponse response,
+        long latencyNanos) throws IOException {
+      Map<String, String> headers = new LinkedHashMap<String, String>();
+
+      for (String name : RECORDED_HEADERS) {
+        response.getHeader(name).ifPresent(value -> headers.put(name, value));
+      }
+
+      new Exchange(request.getOperationType(), request.getMethod(), request.getTarget(),
+          request.getBody().orElse(null), response.getStatusCode(), headers,
+          response.getBody().orElse(null), latencyNanos).write(out);
+      out.flush();
+    }
+  }
+
+  /** A request and the response received for it. */
+  public static class Exchange {
+    private final String operationType;
+    private final String method;
+    private final String target;
+    private final byte[] requestPayload;
+    private final int statusCode;
+    private final Map<String, String> headers;
+    private final byte[] responsePayload;
+    private final long latencyNanos;
+
+    Exchange(String operationType, String method, String target, byte[] requestPayload,
+        int statusCode, Map<String, String> headers, byte[] responsePayload, long latencyNanos) {
+      this.operationType = operationType;
+      this.method = method;
+      this.target = target;
+      this.requestPayload = requestPayload;
+      this.statusCode = statusCode;
+      this.headers = headers;
+      this.responsePayload = responsePayload;
+      this.latencyNanos = latencyNanos;
+    }
+
+    public String getOperationType() {
+      return operationType;
+    }
+
+    public String getMethod() {
+      return method;
+    }
+
+    public String getTarget() {
+      return target;
+    }
+
+    public int getStatusCode() {
+      return statusCode;
+    }
+
+    /**
+     * @return The recorded response headers (only the headers used by Thing artifacts).
+     */
+    public Map<String, String> getHeaders() {
+      return Collections.unmodifiableMap(headers);
+    }
+
+    public Optional<byte[]> getResponsePayload() {
+      return Optional.ofNullable(responsePayload);
+    }
+
+    public long getLatencyNanos() {
+      return latencyNanos;
+    }
+
+    String affordanceKey() {
+      return ThingRecording.affordanceKey(operationType, method, target);
+    }
+
+    String requestKey() {
+      return ThingRecording.requestKey(affordanceKey(), requestPayload);
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+      out.writeUTF(operationType);
+      out.writeUTF(method);
+      out.writeUTF(target);
+      writeBytes(out, requestPayload);
+      out.writeShort(statusCode);
+      out.writeByte(headers.size());
+
+      for (Map.Entry<String, String> header : headers.entrySet()) {
+        out.writeUTF(header.getKey());
+        out.writeUTF(header.getValue());
+      }
+
+      writeBytes(out, responsePayload);
+      out.writeLong(latencyNanos);
+    }
+
+    private static Exchange read(DataInputStream in) throws IOException {
+      String operationType = in.readUTF();
+      String method = in.readUTF();
+      String target = in.readUTF();
+      byte[] requestPayload = readBytes(in);
+      int statusCode = in.readUnsignedShort();
+      int headerCount = in.readUnsignedByte();
+      Map<String, String> headers = new LinkedHashMap<String, String>();
+
+      for (int i = 0; i < headerCount; i ++) {
+        headers.put(in.readUTF(), in.readUTF());
+      }
+
+      byte[] responsePayload = readBytes(in);
+      long latencyNanos = in.readLong();
+
+      return new Exchange(operationType, method, target, requestPayload, statusCode, headers,
+          responsePayload, latencyNanos);
+    }
+
+    /* Payloads are prefixed with their length, or -1 if there is no payload. */
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+      if (bytes == null) {
+        out.writeInt(-1);
+      } else {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+      int length = in.readInt();
+
+      if (length < 0) {
+        return null;
+      }
+
+      byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      return bytes;
+    }
+  }
+}
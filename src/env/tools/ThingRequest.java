@@ -0,0 +1,238 @@
+package tools;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.apache.hc.core5.http.HttpHeaders;
+
+import ch.unisg.ics.interactions.wot.td.affordances.Form;
+import ch.unisg.ics.interactions.wot.td.security.APIKeySecurityScheme;
+import ch.unisg.ics.interactions.wot.td.security.APIKeySecurityScheme.TokenLocation;
+
+/**
+ * A transport-independent request composed from a form of a W3C WoT Thing Description: the method
+ * and target given by the form's hypermedia controls, the request headers, and an optional
+ * (already serialized) payload. Requests accept responses in the content type of the form, and
+ * payloads are sent in that content type (e.g., JSON text or CBOR bytes).
+ *
+ */
+public class ThingRequest {
+  private static final String REDACTED = "[redacted]";
+
+  private final String operationType;
+  private final String method;
+  private final String target;
+  private final String contentType;
+  private final Map<String, String> headers;
+  private Optional<byte[]> payload;
+  private Optional<Long> timeout;
+  private Collection<String> credentialHeaders;
+
+  /**
+   * Composes a request for the given form and operation type.
+   *
+   * @param form The form that describes the hypermedia controls to be used.
+   * @param operationType The type of operation to be performed.
+   * @throws IllegalArgumentException If the form has no method binding for the operation type.
+   */
+  public ThingRequest(Form form, String operationType) {
+    this(form, operationType, form.getTarget());
+  }
+
+  /**
+   * Composes a request for the given form and operation type that is sent to a different target
+   * than the form's (e.g., the same affordance on another instance of a Thing).
+   *
+   * @param form The form that describes the hypermedia controls to be used.
+   * @param operationType The type of operation to be performed.
+   * @param target The target IRI of the request.
+   * @throws IllegalArgumentException If the form has no method binding for the operation type.
+   */
+  public ThingRequest(Form form, String operationType, String target) {
+    Optional<String> methodName = form.getMethodName(operationType);
+
+    if (!methodName.isPresent() && operationType.equals(AffordanceIndex.OBSERVE_PROPERTY)) {
+      // Observing a property is bound to a (long-polling) GET by default
+      methodName = Optional.of("GET");
+    }
+
+    if (!methodName.isPresent()) {
+      throw new IllegalArgumentException("No default binding for the given operation type: "
+          + operationType);
+    }
+
+    this.operationType = operationType;
+    this.method = methodName.get();
+    this.target = target;
+    this.contentType = form.getContentType();
+    this.headers = new LinkedHashMap<String, String>();
+    this.headers.put(HttpHeaders.CONTENT_TYPE, contentType);
+    this.headers.put(HttpHeaders.ACCEPT, contentType);
+    this.payload = Optional.empty();
+    this.timeout = Optional.empty();
+    this.credentialHeaders = Collections.emptySet();
+  }
+
+  public String getOperationType() {
+    return operationType;
+  }
+
+  public String getMethod() {
+    return method;
+  }
+
+  public String getTarget() {
+    return target;
+  }
+
+  public String getContentType() {
+    return contentType;
+  }
+
+  public Map<String, String> getHeaders() {
+    return Collections.unmodifiableMap(headers);
+  }
+
+  /**
+   * @return The payload as text, if the request has a payload in a textual content type (i.e.,
+   * not in CBOR).
+   */
+  public Optional<String> getPayload() {
+    if (!payload.isPresent() || CborCodec.isCbor(contentType)) {
+      return Optional.empty();
+    }
+
+    return Optional.of(new String(payload.get(), StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @return The serialized payload, in the content type of the request.
+   */
+  public Optional<byte[]> getBody() {
+    return payload;
+  }
+
+  /**
+   * @return The response timeout of this request in milliseconds, if it overrides the transport's
+   * default.
+   */
+  public Optional<Long> getTimeout() {
+    return timeout;
+  }
+
+  public ThingRequest setHeader(String name, String value) {
+    headers.put(name, value);
+    return this;
+  }
+
+  /**
+   * @param headers Headers added to the request.
+   * @return This request.
+   */
+  public ThingRequest setHeaders(Map<String, String> headers) {
+    this.headers.putAll(headers);
+    return this;
+  }
+
+  /**
+   * Adds authentication headers to the request. Their values are redacted when the request is
+   * logged or traced.
+   *
+   * @param headers Precomputed authentication headers (see {@link Credential}).
+   * @return This request.
+   */
+  public ThingRequest setCredentialHeaders(Map<String, String> headers) {
+    this.headers.putAll(headers);
+
+    if (credentialHeaders.isEmpty()) {
+      // The credential's (immutable) headers are shared, so this does not allocate
+      credentialHeaders = headers.keySet();
+    } else {
+      Set<String> names = new HashSet<String>(credentialHeaders);
+      names.addAll(headers.keySet());
+      credentialHeaders = names;
+    }
+
+    return this;
+  }
+
+  public ThingRequest setPayload(String payload) {
+    this.payload = Optional.of(payload.getBytes(StandardCharsets.UTF_8));
+    return this;
+  }
+
+  /**
+   * @param payload A payload serialized in the content type of the request (e.g., CBOR).
+   * @return This request.
+   */
+  public ThingRequest setPayload(byte[] payload) {
+    this.payload = Optional.of(payload);
+    return this;
+  }
+
+  /**
+   * Overrides the transport's response timeout for this request.
+   *
+   * @param millis The response timeout in milliseconds.
+   * @return This request.
+   */
+  public ThingRequest setTimeout(long millis) {
+    this.timeout = Optional.of(millis);
+    return this;
+  }
+
+  /**
+   * Adds an API key to the request as specified by an API key security scheme. Only API keys sent
+   * in request headers are currently supported.
+   *
+   * @param scheme The security scheme declared in the TD.
+   * @param token The API key.
+   * @return This request.
+   */
+  public ThingRequest setAPIKey(APIKeySecurityScheme scheme, String token) {
+    if (scheme.getIn() == TokenLocation.HEADER && scheme.getName().isPresent()) {
+      setCredentialHeaders(Collections.singletonMap(scheme.getName().get(), token));
+    }
+
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("[ThingRequest] Method: ").append(method)
+      .append(", Target: ").append(target);
+
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      builder.append(", ").append(header.getKey()).append(": ")
+        .append(isCredential(header.getKey()) ? REDACTED : header.getValue());
+    }
+
+    Optional<String> text = getPayload();
+
+    if (text.isPresent()) {
+      builder.append(", Payload: ").append(text.get());
+    } else if (payload.isPresent()) {
+      // Binary payloads are logged in hex
+      builder.append(", Payload: ");
+      for (byte b : payload.get()) {
+        builder.append(Character.forDigit((b >> 4) & 0xf, 16))
+          .append(Character.forDigit(b & 0xf, 16));
+      }
+    }
+
+    return builder.toString();
+  }
+
+  /* Credentials must not end up in logs or traces. */
+  private boolean isCredential(String name) {
+    return credentialHeaders.contains(name) || name.equalsIgnoreCase(HttpHeaders.AUTHORIZATION)
+        || name.equalsIgnoreCase(HttpHeaders.PROXY_AUTHORIZATION);
+  }
+}
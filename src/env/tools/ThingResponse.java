@@ -0,0 +1,84 @@
+package tools;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+import ch.unisg.ics.interactions.wot.td.clients.TDHttpResponse;
+
+/**
+ * A response received by a {@link ThingTransport}: the TD response used to read the payload, and
+ * the response headers (e.g., validators used for conditional requests). Binary payloads (e.g.,
+ * CBOR) are kept as bytes, since the TD response only reads payloads as text.
+ *
+ */
+public class ThingResponse {
+  private final TDHttpResponse response;
+  private final Map<String, String> headers;
+  private final Optional<byte[]> body;
+
+  /**
+   * @param response The TD response used to read the payload.
+   * @param headers The response headers. Only the first value of each header is kept, and header
+   * names are case-insensitive.
+   * @param body The binary payload, if the payload was not read by the TD response.
+   */
+  public ThingResponse(TDHttpResponse response, Map<String, String> headers,
+      Optional<byte[]> body) {
+    this.response = response;
+    this.headers = new HashMap<String, String>();
+    this.body = body;
+
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      this.headers.putIfAbsent(header.getKey().toLowerCase(Locale.ROOT), header.getValue());
+    }
+  }
+
+  public ThingResponse(TDHttpResponse response, Map<String, String> headers) {
+    this(response, headers, Optional.empty());
+  }
+
+  public ThingResponse(TDHttpResponse response) {
+    this(response, Collections.<String, String>emptyMap());
+  }
+
+  public int getStatusCode() {
+    return response.getStatusCode();
+  }
+
+  /**
+   * @return The payload as text, if the response has a textual payload.
+   */
+  public Optional<String> getPayload() {
+    return response.getPayload();
+  }
+
+  /**
+   * @return The payload as bytes, either the binary payload or the encoded textual payload.
+   */
+  public Optional<byte[]> getBody() {
+    if (body.isPresent()) {
+      return body;
+    }
+
+    return response.getPayload().map(payload -> payload.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @return The content type of the payload, if the response declares one.
+   */
+  public Optional<String> getContentType() {
+    return getHeader("Content-Type");
+  }
+
+  public Optional<String> getHeader(String name) {
+    return Optional.ofNullable(headers.get(name.toLowerCase(Locale.ROOT)));
+  }
+
+  public TDHttpResponse getTDHttpResponse() {
+    return response;
+  }
+}
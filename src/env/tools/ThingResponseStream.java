@@ -0,0 +1,84 @@
+package tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A response whose payload is read incrementally, e.g. a large array property. The stream holds on
+ * to the underlying connection until it is closed.
+ *
+ */
+public class ThingResponseStream implements Closeable {
+  private final int statusCode;
+  private final Map<String, String> headers;
+  private final InputStream payload;
+  private final Closeable resource;
+
+  /**
+   * @param statusCode The status code of the response.
+   * @param headers The response headers. Only the first value of each header is kept, and header
+   * names are case-insensitive.
+   * @param payload The (decompressed) payload.
+   * @param resource Released when the stream is closed (e.g., the connection).
+   */
+  public ThingResponseStream(int statusCode, Map<String, String> headers, InputStream payload,
+      Closeable resource) {
+    this.statusCode = statusCode;
+    this.headers = new HashMap<String, String>();
+    this.payload = payload;
+    this.resource = resource;
+
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      this.headers.putIfAbsent(header.getKey().toLowerCase(Locale.ROOT), header.getValue());
+    }
+  }
+
+  /**
+   * Wraps a response that was received in full, e.g. by transports that do not stream payloads.
+   *
+   * @param response The response.
+   * @return A stream over the response's payload.
+   */
+  public static ThingResponseStream of(ThingResponse response) {
+    Map<String, String> headers = new HashMap<String, String>();
+    response.getContentType().ifPresent(contentType -> headers.put("content-type", contentType));
+    InputStream payload = new ByteArrayInputStream(response.getBody().orElse(new byte[0]));
+
+    return new ThingResponseStream(response.getStatusCode(), headers, payload, payload);
+  }
+
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  public Optional<String> getHeader(String name) {
+    return Optional.ofNullable(headers.get(name.toLowerCase(Locale.ROOT)));
+  }
+
+  public Optional<String> getContentType() {
+    return getHeader("Content-Type");
+  }
+
+  public InputStream getPayload() {
+    return payload;
+  }
+
+  /**
+   * @return The response headers, with lowercase names.
+   */
+  public Map<String, String> getHeaders() {
+    return Collections.unmodifiableMap(headers);
+  }
+
+  @Override
+  public void close() throws IOException {
+    resource.close();
+  }
+}
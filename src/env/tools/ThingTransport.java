@@ -0,0 +1,32 @@
+package tools;
+
+import java.io.IOException;
+
+/**
+ * A transport used by Thing artifacts to issue the requests composed from a Thing Description.
+ * Implementations are expected to be thread-safe and to be shared by multiple artifacts.
+ *
+ */
+public interface ThingTransport {
+
+  /**
+   * Issues a request and waits for the response.
+   *
+   * @param request The request to be issued.
+   * @return The response received for the request.
+   * @throws IOException If the request could not be issued or no response was received.
+   */
+  ThingResponse execute(ThingRequest request) throws IOException;
+
+  /**
+   * Issues a request and returns once the response headers are received, such that the payload
+   * can be read incrementally. The default implementation waits for the whole response.
+   *
+   * @param request The request to be issued.
+   * @return The response, which has to be closed by the caller.
+   * @throws IOException If the request could not be issued or no response was received.
+   */
+  default ThingResponseStream open(ThingRequest request) throws IOException {
+    return ThingResponseStream.of(execute(request));
+  }
+}
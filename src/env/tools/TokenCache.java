@@ -0,0 +1,99 @@
+package tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+
+import tools.OAuth2ClientCredentials.HttpTokenEndpoint;
+import tools.OAuth2ClientCredentials.TokenEndpoint;
+
+/**
+ * A JVM-wide cache of OAuth 2.0 client credentials. Artifacts that use the same client (token
+ * endpoint, client ID and secret, and scopes) share a single credential, such that a token is
+ * requested once for all of them and refreshed by a single background task. The credential is
+ * closed when the last artifact that uses it releases it.
+ *
+ */
+public final class TokenCache {
+  private static final TokenCache INSTANCE = new TokenCache();
+
+  private final ScheduledExecutorService scheduler;
+  private final Map<String, Entry> entries;
+  private CloseableHttpClient client;
+
+  TokenCache() {
+    this.scheduler = Executors.newScheduledThreadPool(2, ThingExecutors.daemonThreads("token"));
+    this.entries = new HashMap<String, Entry>();
+  }
+
+  public static TokenCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Retrieves the credential of a client, and starts requesting a token if the client is not used
+   * yet. Each credential retrieved must be released via {@link Credential#release()}.
+   *
+   * @param tokenUrl The URL of the token endpoint.
+   * @param clientId The client identifier.
+   * @param clientSecret The client secret.
+   * @param scopes The scopes to request, if any.
+   * @return The shared credential.
+   */
+  public OAuth2ClientCredentials acquire(String tokenUrl, String clientId, String clientSecret,
+      List<String> scopes) {
+    List<String> sortedScopes = new ArrayList<String>(scopes);
+    Collections.sort(sortedScopes);
+    String key = tokenUrl + "\n" + clientId + "\n" + clientSecret + "\n" + sortedScopes;
+
+    return acquire(key, () -> new HttpTokenEndpoint(httpClient(), tokenUrl, clientId,
+        clientSecret, sortedScopes).requestToken());
+  }
+
+  synchronized OAuth2ClientCredentials acquire(String key, TokenEndpoint endpoint) {
+    Entry entry = entries.get(key);
+
+    if (entry == null) {
+      entry = new Entry();
+      entry.credential = new OAuth2ClientCredentials(endpoint, scheduler, () -> release(key));
+      entry.credential.start();
+      entries.put(key, entry);
+    }
+
+    entry.references ++;
+    return entry.credential;
+  }
+
+  /* Called once per acquired credential. The last release stops refreshing its token. */
+  private synchronized void release(String key) {
+    Entry entry = entries.get(key);
+
+    if (entry != null && -- entry.references == 0) {
+      entries.remove(key);
+      entry.credential.close();
+    }
+  }
+
+  /* Token requests are rare, so they use a client of their own that is created when needed. */
+  private synchronized CloseableHttpClient httpClient() {
+    if (client == null) {
+      client = HttpClients.custom()
+          .disableContentCompression()
+          .build();
+    }
+
+    return client;
+  }
+
+  private static class Entry {
+    private OAuth2ClientCredentials credential;
+    private int references;
+  }
+}
@@ -0,0 +1,87 @@
+package tools;
+
+import java.util.Optional;
+
+/**
+ * A slot that keeps the last value written to a property until it is flushed to the Thing. Values
+ * written while a previous value is still pending replace that value, such that a fast writer
+ * only causes requests at the rate at which the slot is flushed.
+ *
+ */
+public class WriteBehindSlot {
+  private byte[] payload;
+  private int coalesced;
+  private boolean closed;
+
+  /**
+   * Stores a value to be written, replacing a pending value (if any).
+   *
+   * @param payload The serialized payload to be written.
+   * @throws IllegalStateException If the slot is closed.
+   */
+  public synchronized void offer(byte[] payload) {
+    if (closed) {
+      throw new IllegalStateException("Write-behind is disabled for this property.");
+    }
+
+    if (this.payload != null) {
+      coalesced ++;
+    }
+
+    this.payload = payload;
+    notifyAll();
+  }
+
+  /**
+   * Waits for a pending value and removes it from the slot.
+   *
+   * @return The pending value, or an empty optional if the slot was closed and has no pending
+   * value.
+   * @throws InterruptedException If interrupted while waiting.
+   */
+  public synchronized Optional<Pending> take() throws InterruptedException {
+    while (payload == null && !closed) {
+      wait();
+    }
+
+    if (payload == null) {
+      return Optional.empty();
+    }
+
+    Pending pending = new Pending(payload, coalesced);
+    payload = null;
+    coalesced = 0;
+
+    return Optional.of(pending);
+  }
+
+  /**
+   * Closes the slot. A pending value can still be taken, but no new values are accepted.
+   */
+  public synchronized void close() {
+    closed = true;
+    notifyAll();
+  }
+
+  /** A value taken from the slot, with the number of values it replaced. */
+  public static class Pending {
+    private final byte[] payload;
+    private final int coalesced;
+
+    Pending(byte[] payload, int coalesced) {
+      this.payload = payload;
+      this.coalesced = coalesced;
+    }
+
+    public byte[] getPayload() {
+      return payload;
+    }
+
+    /**
+     * @return The number of earlier values that were replaced by this value without being sent.
+     */
+    public int getCoalesced() {
+      return coalesced;
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package tools;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import ch.unisg.ics.interactions.wot.td.affordances.ActionAffordance;
+import ch.unisg.ics.interactions.wot.td.affordances.Form;
+import ch.unisg.ics.interactions.wot.td.affordances.PropertyAffordance;
+import ch.unisg.ics.interactions.wot.td.vocabularies.TD;
+import tools.AffordanceIndex.ResolvedAffordance;
+
+/**
+ * Compares resolving affordances and forms by scanning the TD on every operation with the lookup
+ * in the precomputed {@link AffordanceIndex}.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AffordanceLookupBenchmark {
+
+  @Benchmark
+  public Optional<Form> scanProperty(ForkliftRobotState state) {
+    Optional<PropertyAffordance> property = state.td
+        .getFirstPropertyBySemanticType(ForkliftRobotState.LAST_CARRY);
+    return property.get().getFirstFormForOperationType(TD.readProperty);
+  }
+
+  @Benchmark
+  public Optional<ResolvedAffordance> indexedProperty(ForkliftRobotState state) {
+    return state.index.get(TD.readProperty, ForkliftRobotState.LAST_CARRY);
+  }
+
+  @Benchmark
+  public Optional<Form> scanAction(ForkliftRobotState state) {
+    Optional<ActionAffordance> action = state.td
+        .getFirstActionBySemanticType(ForkliftRobotState.MOVE_TO);
+    return action.get().getFirstFormForOperationType(TD.invokeAction);
+  }
+
+  @Benchmark
+  public Optional<ResolvedAffordance> indexedAction(ForkliftRobotState state) {
+    return state.index.get(TD.invokeAction, ForkliftRobotState.MOVE_TO);
+  }
+}
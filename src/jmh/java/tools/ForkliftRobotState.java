@@ -0,0 +1,54 @@
+package tools;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import ch.unisg.ics.interactions.wot.td.ThingDescription;
+import ch.unisg.ics.interactions.wot.td.ThingDescription.TDFormat;
+import ch.unisg.ics.interactions.wot.td.io.TDGraphReader;
+
+/**
+ * Benchmark state shared by all benchmarks: a {@link MockThingServer} that serves the forklift
+ * robot, together with its TD (as fetched from the server and as a Turtle string).
+ *
+ */
+@State(Scope.Benchmark)
+public class ForkliftRobotState {
+  static final String PREFIX = "http://example.org/";
+  static final String STATUS = PREFIX + "Status";
+  static final String POSITION = PREFIX + "Position";
+  static final String LAST_CARRY = PREFIX + "LastCarry";
+  static final String CARRY_FROM_TO = PREFIX + "CarryFromTo";
+  static final String MOVE_TO = PREFIX + "MoveTo";
+  static final String SOURCE_POSITION = PREFIX + "SourcePosition";
+  static final String TARGET_POSITION = PREFIX + "TargetPosition";
+
+  MockThingServer server;
+  String tdUrl;
+  String tdSource;
+  ThingDescription td;
+  AffordanceIndex index;
+
+  @Setup(Level.Trial)
+  public void start() throws IOException {
+    server = new MockThingServer(0);
+    tdUrl = server.getTDUrl();
+    tdSource = new String(Files.readAllBytes(Paths.get("mockserver", "forkliftRobot.ttl")),
+        StandardCharsets.UTF_8).replace("http://localhost:1080", server.getBaseUri());
+    td = TDGraphReader.readFromString(TDFormat.RDF_TURTLE, tdSource);
+    index = AffordanceIndex.of(td);
+  }
+
+  @TearDown(Level.Trial)
+  public void stop() {
+    server.close();
+  }
+}
@@ -0,0 +1,129 @@
+package tools;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hc.core5.http.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+import ch.unisg.ics.interactions.wot.td.clients.TDHttpRequest;
+import ch.unisg.ics.interactions.wot.td.schemas.ArraySchema;
+import ch.unisg.ics.interactions.wot.td.schemas.DataSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.NumberSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.ObjectSchema;
+import ch.unisg.ics.interactions.wot.td.vocabularies.TD;
+import tools.AffordanceIndex.ResolvedAffordance;
+
+/**
+ * Compares encoding payloads with <code>TDHttpRequest</code>, as the artifacts did before the
+ * {@link PayloadCodec}s, with the precompiled codecs, and decoding payloads via an intermediate
+ * JSON tree with the codecs' streaming decoder. Sensor series are decoded with and
+ * without a numeric item schema, i.e. into boxed items or into a <code>double[]</code>.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PayloadBenchmark {
+
+  @State(Scope.Thread)
+  public static class Payloads {
+    ResolvedAffordance carry;
+    ResolvedAffordance moveTo;
+    DataSchema lastCarrySchema;
+    Object[] carryTags;
+    Object[] carryValues;
+    Object[] moveToValues;
+    String lastCarryPayload;
+    DataSchema untypedSeriesSchema;
+    DataSchema seriesSchema;
+    String seriesPayload;
+
+    @Setup
+    public void init(ForkliftRobotState state) {
+      carry = state.index.get(TD.invokeAction, ForkliftRobotState.CARRY_FROM_TO).get();
+      moveTo = state.index.get(TD.invokeAction, ForkliftRobotState.MOVE_TO).get();
+      lastCarrySchema = state.index.get(TD.readProperty, ForkliftRobotState.LAST_CARRY).get()
+          .getSchema().get();
+
+      carryTags = new Object[] { ForkliftRobotState.SOURCE_POSITION,
+          ForkliftRobotState.TARGET_POSITION };
+      carryValues = new Object[] { new Object[] { 30, 50, 70 }, new Object[] { 30, 60, 70 } };
+      moveToValues = new Object[] { 30, 60, 70 };
+      lastCarryPayload = "{ \"sourcePosition\" : [30, 50, 70], \"targetPosition\" : [30, 60, 70] }";
+
+      untypedSeriesSchema = new ArraySchema.Builder().build();
+      seriesSchema = new ArraySchema.Builder().addItem(new NumberSchema.Builder().build()).build();
+      StringBuilder series = new StringBuilder("[");
+      for (int i = 0; i < 4096; i ++) {
+        series.append(i == 0 ? "" : ",").append(20 + Math.sin(i / 100.0));
+      }
+      seriesPayload = series.append("]").toString();
+    }
+  }
+
+  @Benchmark
+  public String encodeObjectWithTDHttpRequest(Payloads payloads) throws ParseException,
+      IOException {
+    Map<String, Object> values = new HashMap<String, Object>();
+    for (int i = 0; i < payloads.carryTags.length; i ++) {
+      values.put((String) payloads.carryTags[i], payloads.carryValues[i]);
+    }
+
+    TDHttpRequest request = new TDHttpRequest(payloads.carry.getForm(), TD.invokeAction);
+    request.setObjectPayload((ObjectSchema) payloads.carry.getSchema().get(), values);
+    return request.getPayload();
+  }
+
+  @Benchmark
+  public String encodeObjectWithCodec(Payloads payloads) {
+    return PayloadCodec.forSchema(payloads.carry.getSchema().get())
+        .encodeObject(payloads.carryTags, payloads.carryValues);
+  }
+
+  @Benchmark
+  public String encodeArrayWithTDHttpRequest(Payloads payloads) throws ParseException,
+      IOException {
+    TDHttpRequest request = new TDHttpRequest(payloads.moveTo.getForm(), TD.invokeAction);
+    request.setArrayPayload((ArraySchema) payloads.moveTo.getSchema().get(),
+        Arrays.asList(payloads.moveToValues));
+    return request.getPayload();
+  }
+
+  @Benchmark
+  public String encodeArrayWithCodec(Payloads payloads) {
+    return PayloadCodec.forSchema(payloads.moveTo.getSchema().get())
+        .encode(payloads.moveToValues);
+  }
+
+  @Benchmark
+  public JsonElement decodeObjectWithJsonTree(Payloads payloads) {
+    return JsonParser.parseString(payloads.lastCarryPayload);
+  }
+
+  @Benchmark
+  public Object decodeObjectWithCodec(Payloads payloads) {
+    return PayloadCodec.forSchema(payloads.lastCarrySchema).decode(payloads.lastCarryPayload);
+  }
+
+  @Benchmark
+  public Object decodeSeriesBoxed(Payloads payloads) {
+    return PayloadCodec.forSchema(payloads.untypedSeriesSchema).decode(payloads.seriesPayload);
+  }
+
+  @Benchmark
+  public Object decodeSeriesPrimitive(Payloads payloads) {
+    return PayloadCodec.forSchema(payloads.seriesSchema).decode(payloads.seriesPayload);
+  }
+}
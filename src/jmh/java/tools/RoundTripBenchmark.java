@@ -0,0 +1,85 @@
+package tools;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import ch.unisg.ics.interactions.wot.td.schemas.DataSchema;
+import ch.unisg.ics.interactions.wot.td.vocabularies.TD;
+import tools.AffordanceIndex.ResolvedAffordance;
+
+/**
+ * Measures end-to-end reads and action invocations against a {@link MockThingServer}, following
+ * the same steps as {@link ThingArtifact} (affordance lookup, encoding, transport, decoding), with
+ * a pooled transport shared by all threads or with a new connection per request. The artifact
+ * operations themselves cannot be invoked outside of a CArtAgO workspace.
+ *
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(4)
+public class RoundTripBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Transport {
+    @Param({ "pooled", "perRequest" })
+    String connections;
+
+    HttpClientTransport pooled;
+    Object[] moveToValues;
+
+    @Setup
+    public void init() {
+      pooled = new HttpClientTransport.Builder().build();
+      moveToValues = new Object[] { 30, 60, 70 };
+    }
+
+    @TearDown
+    public void close() throws IOException {
+      pooled.close();
+    }
+
+    ThingResponse execute(ThingRequest request) throws IOException {
+      if (connections.equals("pooled")) {
+        return pooled.execute(request);
+      }
+
+      try (HttpClientTransport transport = new HttpClientTransport.Builder().build()) {
+        return transport.execute(request);
+      }
+    }
+  }
+
+  @Benchmark
+  public Object readProperty(ForkliftRobotState state, Transport transport) throws IOException {
+    ResolvedAffordance property = state.index.get(TD.readProperty,
+        ForkliftRobotState.POSITION).get();
+    ThingRequest request = new ThingRequest(property.getForm(), TD.readProperty);
+
+    ThingResponse response = transport.execute(request);
+    DataSchema schema = property.getSchema().get();
+
+    return PayloadCodec.forSchema(schema).decode(response.getPayload().get());
+  }
+
+  @Benchmark
+  public int invokeAction(ForkliftRobotState state, Transport transport) throws IOException {
+    ResolvedAffordance action = state.index.get(TD.invokeAction,
+        ForkliftRobotState.MOVE_TO).get();
+    ThingRequest request = new ThingRequest(action.getForm(), TD.invokeAction)
+        .setPayload(PayloadCodec.forSchema(action.getSchema().get())
+            .encode(transport.moveToValues));
+
+    return transport.execute(request).getStatusCode();
+  }
+}
@@ -0,0 +1,39 @@
+package tools;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import ch.unisg.ics.interactions.wot.td.ThingDescription;
+import ch.unisg.ics.interactions.wot.td.ThingDescription.TDFormat;
+import ch.unisg.ics.interactions.wot.td.io.TDGraphReader;
+
+/**
+ * Measures the cost of obtaining a TD when an artifact is initialized: fetching and parsing the TD
+ * (as done by each artifact before the TD cache), parsing an already fetched TD, and hitting the
+ * {@link ThingDescriptionCache}.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TDLoadingBenchmark {
+
+  @Benchmark
+  public ThingDescription fetchAndParse(ForkliftRobotState state) throws IOException {
+    return TDGraphReader.readFromURL(TDFormat.RDF_TURTLE, state.tdUrl);
+  }
+
+  @Benchmark
+  public ThingDescription parse(ForkliftRobotState state) {
+    return TDGraphReader.readFromString(TDFormat.RDF_TURTLE, state.tdSource);
+  }
+
+  @Benchmark
+  public ThingDescription cacheHit(ForkliftRobotState state) throws IOException {
+    return ThingDescriptionCache.getInstance().get(state.tdUrl);
+  }
+}
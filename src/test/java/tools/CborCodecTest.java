@@ -0,0 +1,155 @@
+package tools;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import ch.unisg.ics.interactions.wot.td.schemas.ArraySchema;
+import ch.unisg.ics.interactions.wot.td.schemas.BooleanSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.DataSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.IntegerSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.NumberSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.ObjectSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.StringSchema;
+import tools.PayloadCodec.ObjectValue;
+
+public class CborCodecTest {
+  private static final String PREFIX = "http://example.org/";
+
+  @Test
+  public void testEncodesRFC8949Examples() {
+    CborCodec integers = CborCodec.forSchema(new IntegerSchema.Builder().build());
+    assertEquals("00", hex(integers.encode(0)));
+    assertEquals("17", hex(integers.encode(23)));
+    assertEquals("1818", hex(integers.encode(24)));
+    assertEquals("1903e8", hex(integers.encode(1000)));
+    assertEquals("1a000f4240", hex(integers.encode(1000000)));
+    assertEquals("1b000000e8d4a51000", hex(integers.encode(1000000000000L)));
+    assertEquals("20", hex(integers.encode(-1)));
+    assertEquals("3903e7", hex(integers.encode(-1000)));
+
+    CborCodec numbers = CborCodec.forSchema(new NumberSchema.Builder().build());
+    assertEquals("fb3ff199999999999a", hex(numbers.encode(1.1)));
+    assertEquals("fa3fc00000", hex(numbers.encode(1.5)));
+
+    assertEquals("f5", hex(CborCodec.forSchema(new BooleanSchema.Builder().build()).encode(true)));
+    assertEquals("6449455446",
+        hex(CborCodec.forSchema(new StringSchema.Builder().build()).encode("IETF")));
+    assertEquals("83010203", hex(CborCodec.forSchema(new ArraySchema.Builder()
+        .addItem(new IntegerSchema.Builder().build())
+        .build()).encode(new Object[] { 1, 2, 3 })));
+  }
+
+  @Test
+  public void testDecodesRFC8949Examples() {
+    CborCodec untyped = CborCodec.forSchema(null);
+    assertEquals(Long.MAX_VALUE, untyped.decode(bytes("1b7fffffffffffffff")));
+    assertEquals(-100, untyped.decode(bytes("3863")));
+    assertEquals(1.0, untyped.decode(bytes("f93c00")));
+    assertEquals(65504.0, untyped.decode(bytes("f97bff")));
+    assertEquals(-4.1, untyped.decode(bytes("fbc010666666666666")));
+    assertEquals("\u00fc", untyped.decode(bytes("62c3bc")));
+    assertEquals("streaming", untyped.decode(bytes("7f657374726561646d696e67ff")));
+    assertNull(untyped.decode(bytes("f6")));
+
+    // Tagged items are decoded without their tags
+    assertEquals(1363896240, untyped.decode(bytes("c11a514b67b0")));
+
+    // Indefinite-length arrays and maps
+    Object[] nested = (Object[]) untyped.decode(bytes("9f018202039f0405ffff"));
+    assertEquals(1, nested[0]);
+    assertArrayEquals(new Object[] { 2, 3 }, (Object[]) nested[1]);
+    assertArrayEquals(new Object[] { 4, 5 }, (Object[]) nested[2]);
+
+    Map<?, ?> map = (Map<?, ?>) untyped.decode(bytes("bf61610161629f0203ffff"));
+    assertEquals(1, map.get("a"));
+    assertArrayEquals(new Object[] { 2, 3 }, (Object[]) map.get("b"));
+  }
+
+  @Test
+  public void testDecodedShapesMatchJSON() {
+    DataSchema schema = new ArraySchema.Builder()
+        .addItem(new NumberSchema.Builder().build())
+        .build();
+    Object[] values = new Object[] { 1.5, 2, -0.25 };
+
+    Object json = PayloadCodec.forSchema(schema).decode(PayloadCodec.forSchema(schema)
+        .encode(values));
+    Object cbor = CborCodec.forSchema(schema).decode(CborCodec.forSchema(schema).encode(values));
+
+    assertArrayEquals((double[]) json, (double[]) cbor, 0);
+  }
+
+  @Test
+  public void testObjectRoundTrip() {
+    Object[] tags = new Object[] { PREFIX + "Age", PREFIX + "FirstName" };
+    Object[] params = new Object[] { 42, "John" };
+    CborCodec codec = CborCodec.forSchema(personSchema());
+
+    ObjectValue decoded = (ObjectValue) codec.decode(codec.encodeObject(tags, params));
+
+    // Properties are encoded in the order of the schema
+    assertArrayEquals(new Object[] { PREFIX + "FirstName", PREFIX + "Age" }, decoded.getTags());
+    assertArrayEquals(new Object[] { "John", 42 }, decoded.getValues());
+  }
+
+  @Test
+  public void testNumbersSentAsIntegers() {
+    assertEquals(3.0, CborCodec.forSchema(new NumberSchema.Builder().build())
+        .decode(bytes("03")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMismatchedPayload() {
+    CborCodec.forSchema(new BooleanSchema.Builder().build()).decode(bytes("6449455446"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTruncatedPayload() {
+    CborCodec.forSchema(new StringSchema.Builder().build()).decode(bytes("64494554"));
+  }
+
+  @Test
+  public void testContentTypes() {
+    assertTrue(CborCodec.isCbor("application/cbor"));
+    assertTrue(CborCodec.isCbor("Application/CBOR; foo=bar"));
+    assertFalse(CborCodec.isCbor("application/json"));
+  }
+
+  private DataSchema personSchema() {
+    return new ObjectSchema.Builder()
+        .addProperty("first_name", new StringSchema.Builder()
+            .addSemanticType(PREFIX + "FirstName")
+            .build())
+        .addProperty("age", new IntegerSchema.Builder()
+            .addSemanticType(PREFIX + "Age")
+            .build())
+        .build();
+  }
+
+  private static String hex(byte[] bytes) {
+    StringBuilder builder = new StringBuilder();
+
+    for (byte b : bytes) {
+      builder.append(String.format("%02x", b));
+    }
+
+    return builder.toString();
+  }
+
+  private static byte[] bytes(String hex) {
+    byte[] bytes = new byte[hex.length() / 2];
+
+    for (int i = 0; i < bytes.length; i ++) {
+      bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+    }
+
+    return bytes;
+  }
+}
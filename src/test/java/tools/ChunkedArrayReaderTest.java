@@ -0,0 +1,109 @@
+package tools;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import ch.unisg.ics.interactions.wot.td.schemas.ArraySchema;
+import ch.unisg.ics.interactions.wot.td.schemas.IntegerSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.NumberSchema;
+
+public class ChunkedArrayReaderTest {
+
+  @Test
+  public void testReadsJSONInChunks() throws IOException {
+    try (ChunkedArrayReader reader = ChunkedArrayReader.of(stream("application/json",
+        "[1, 2, 3, 4, 5]".getBytes(StandardCharsets.UTF_8)), integers())) {
+      assertArrayEquals(new Object[] { 1, 2 }, reader.next(2).get());
+      assertArrayEquals(new Object[] { 3, 4 }, reader.next(2).get());
+      assertFalse(reader.isExhausted());
+
+      assertArrayEquals(new Object[] { 5 }, reader.next(2).get());
+      assertTrue(reader.isExhausted());
+      assertEquals(5, reader.getPosition());
+      assertFalse(reader.next(2).isPresent());
+    }
+  }
+
+  @Test
+  public void testEndOfArrayDetectedWithLastChunk() throws IOException {
+    try (ChunkedArrayReader reader = ChunkedArrayReader.of(stream("application/json",
+        "[1.5, 2.5]".getBytes(StandardCharsets.UTF_8)), numbers())) {
+      assertArrayEquals(new Object[] { 1.5, 2.5 }, reader.next(2).get());
+      assertTrue(reader.isExhausted());
+    }
+  }
+
+  @Test
+  public void testNumericArrayItemsAreBoxed() throws IOException {
+    ArraySchema positions = new ArraySchema.Builder().addItem(integers()).build();
+
+    try (ChunkedArrayReader reader = ChunkedArrayReader.of(stream("application/json",
+        "[[1, 2], [3, 4], [5, 6]]".getBytes(StandardCharsets.UTF_8)), positions)) {
+      Object[] chunk = reader.next(2).get();
+
+      assertArrayEquals(new Object[] { 1, 2 }, (Object[]) chunk[0]);
+      assertArrayEquals(new Object[] { 3, 4 }, (Object[]) chunk[1]);
+      assertArrayEquals(new Object[] { 5, 6 }, (Object[]) reader.next(2).get()[0]);
+    }
+  }
+
+  @Test
+  public void testReadsCBORInChunks() throws IOException {
+    byte[] payload = CborCodec.forSchema(integers()).encode(new Object[] { 1, 2, 3 });
+
+    try (ChunkedArrayReader reader = ChunkedArrayReader.of(stream(CborCodec.CONTENT_TYPE,
+        payload), integers())) {
+      assertArrayEquals(new Object[] { 1, 2 }, reader.next(2).get());
+      assertArrayEquals(new Object[] { 3 }, reader.next(2).get());
+      assertTrue(reader.isExhausted());
+    }
+  }
+
+  @Test
+  public void testEmptyArray() throws IOException {
+    try (ChunkedArrayReader reader = ChunkedArrayReader.of(stream("application/json",
+        "[]".getBytes(StandardCharsets.UTF_8)), integers())) {
+      assertFalse(reader.next(10).isPresent());
+      assertTrue(reader.isExhausted());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMismatchedItem() throws IOException {
+    try (ChunkedArrayReader reader = ChunkedArrayReader.of(stream("application/json",
+        "[1, \"two\"]".getBytes(StandardCharsets.UTF_8)), integers())) {
+      reader.next(10);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidChunkSize() throws IOException {
+    try (ChunkedArrayReader reader = ChunkedArrayReader.of(stream("application/json",
+        "[1]".getBytes(StandardCharsets.UTF_8)), integers())) {
+      reader.next(0);
+    }
+  }
+
+  private static ThingResponseStream stream(String contentType, byte[] payload) {
+    ByteArrayInputStream in = new ByteArrayInputStream(payload);
+    return new ThingResponseStream(200, Collections.singletonMap("Content-Type", contentType), in,
+        in);
+  }
+
+  private static ArraySchema integers() {
+    return new ArraySchema.Builder().addItem(new IntegerSchema.Builder().build()).build();
+  }
+
+  private static ArraySchema numbers() {
+    return new ArraySchema.Builder().addItem(new NumberSchema.Builder().build()).build();
+  }
+}
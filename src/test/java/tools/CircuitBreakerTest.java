@@ -0,0 +1,69 @@
+package tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import tools.CircuitBreaker.State;
+
+public class CircuitBreakerTest {
+
+  @Test
+  public void testOpensAfterConsecutiveFailures() {
+    CircuitBreaker breaker = new CircuitBreaker(3, 60000);
+
+    breaker.recordFailure();
+    breaker.recordFailure();
+    breaker.recordSuccess();
+    breaker.recordFailure();
+    breaker.recordFailure();
+    assertEquals(State.CLOSED, breaker.getState());
+    assertTrue(breaker.tryAcquire());
+
+    breaker.recordFailure();
+    assertEquals(State.OPEN, breaker.getState());
+    assertFalse(breaker.tryAcquire());
+    assertTrue(breaker.getRemainingOpenTime() > 0);
+  }
+
+  @Test
+  public void testHalfOpenLetsOneProbeThrough() throws InterruptedException {
+    CircuitBreaker breaker = new CircuitBreaker(1, 50);
+    breaker.recordFailure();
+
+    Thread.sleep(100);
+    assertEquals(State.HALF_OPEN, breaker.getState());
+    assertTrue(breaker.tryAcquire());
+    assertFalse(breaker.tryAcquire());
+
+    breaker.recordSuccess();
+    assertEquals(State.CLOSED, breaker.getState());
+    assertTrue(breaker.tryAcquire());
+  }
+
+  @Test
+  public void testFailedProbeReopens() throws InterruptedException {
+    CircuitBreaker breaker = new CircuitBreaker(1, 50);
+    breaker.recordFailure();
+
+    Thread.sleep(100);
+    assertTrue(breaker.tryAcquire());
+    breaker.recordFailure();
+
+    assertEquals(State.OPEN, breaker.getState());
+    assertFalse(breaker.tryAcquire());
+  }
+
+  @Test
+  public void testReleasedProbeCanBeRetried() throws InterruptedException {
+    CircuitBreaker breaker = new CircuitBreaker(1, 50);
+    breaker.recordFailure();
+
+    Thread.sleep(100);
+    assertTrue(breaker.tryAcquire());
+    breaker.release();
+    assertTrue(breaker.tryAcquire());
+  }
+}
@@ -0,0 +1,76 @@
+package tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/*
+ * Counter artifacts can only be created in a CArtAgO workspace, so these tests cover the counting
+ * and publishing logic of BatchedCount, which the artifact delegates to.
+ */
+public class CounterTest {
+
+  @Test
+  public void testEachIncrementPublishedByDefault() {
+    BatchedCount count = new BatchedCount(5, 1);
+
+    assertTrue(count.add(1));
+    assertEquals(1, count.publish());
+    assertTrue(count.add(1));
+    assertEquals(1, count.publish());
+
+    assertEquals(7, count.getPublished());
+    assertEquals(7, count.get());
+  }
+
+  @Test
+  public void testIncrementsPublishedByDelta() {
+    BatchedCount count = new BatchedCount(0, 100);
+
+    for (int i = 0; i < 99; i ++) {
+      assertFalse(count.add(1));
+    }
+
+    assertEquals(0, count.getPublished());
+    assertEquals(99, count.get());
+
+    assertTrue(count.add(1));
+    assertEquals(100, count.publish());
+    assertEquals(100, count.getPublished());
+  }
+
+  @Test
+  public void testPendingIncrementsPublishedExplicitly() {
+    BatchedCount count = new BatchedCount(0, 0);
+
+    assertFalse(count.add(40));
+    assertFalse(count.add(1));
+    assertEquals(0, count.getPublished());
+    assertTrue(count.hasPending());
+
+    assertEquals(41, count.publish());
+    assertEquals(41, count.getPublished());
+    assertFalse(count.hasPending());
+  }
+
+  @Test
+  public void testDecrementsCountTowardsDelta() {
+    BatchedCount count = new BatchedCount(10, 5);
+
+    assertFalse(count.add(-4));
+    assertTrue(count.add(-1));
+    assertEquals(-5, count.publish());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidPublishing() {
+    Counter.validatePublishing(0, 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativePublishingDelta() {
+    Counter.validatePublishing(1000, -1);
+  }
+}
@@ -0,0 +1,95 @@
+package tools;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.junit.Test;
+
+import ch.unisg.ics.interactions.wot.td.clients.TDHttpResponse;
+
+public class FanOutCmdTest {
+
+  @Test
+  public void testTargetsRunConcurrently() {
+    List<Callable<ThingResponse>> targets = new ArrayList<Callable<ThingResponse>>();
+    for (int i = 0; i < 8; i ++) {
+      targets.add(() -> respondAfter(200, 200));
+    }
+
+    long start = System.currentTimeMillis();
+    FanOutCmd<ThingResponse> cmd = new FanOutCmd<ThingResponse>(targets, 8, 5000);
+    cmd.exec();
+
+    assertTrue(System.currentTimeMillis() - start < 1000);
+    assertArrayEquals(new int[] { 200, 200, 200, 200, 200, 200, 200, 200 },
+        FanOutCmd.statusCodesOf(cmd));
+  }
+
+  @Test
+  public void testParallelismIsBounded() {
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    List<Callable<ThingResponse>> targets = new ArrayList<Callable<ThingResponse>>();
+
+    for (int i = 0; i < 6; i ++) {
+      targets.add(() -> {
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+          return respondAfter(50, 202);
+        } finally {
+          inFlight.decrementAndGet();
+        }
+      });
+    }
+
+    FanOutCmd<ThingResponse> cmd = new FanOutCmd<ThingResponse>(targets, 2, 5000);
+    cmd.exec();
+
+    assertTrue(maxInFlight.get() <= 2);
+    assertArrayEquals(new int[] { 202, 202, 202, 202, 202, 202 }, FanOutCmd.statusCodesOf(cmd));
+  }
+
+  @Test
+  public void testFailedTargetsReportZero() {
+    List<Callable<ThingResponse>> targets = new ArrayList<Callable<ThingResponse>>();
+    targets.add(() -> respondAfter(0, 200));
+    targets.add(() -> { throw new IOException("Connection refused"); });
+    targets.add(() -> respondAfter(0, 500));
+
+    FanOutCmd<ThingResponse> cmd = new FanOutCmd<ThingResponse>(targets, 4, 5000);
+    cmd.exec();
+
+    assertArrayEquals(new int[] { 200, 0, 500 }, FanOutCmd.statusCodesOf(cmd));
+    assertEquals("Connection refused", cmd.getError(1).get());
+    assertFalse(cmd.getError(2).isPresent());
+  }
+
+  @Test
+  public void testTimedOutTargetsReportReason() {
+    List<Callable<ThingResponse>> targets = new ArrayList<Callable<ThingResponse>>();
+    targets.add(() -> respondAfter(0, 200));
+    targets.add(() -> respondAfter(5000, 200));
+
+    // The timeout is extended by a grace period of 1 s
+    FanOutCmd<ThingResponse> cmd = new FanOutCmd<ThingResponse>(targets, 4, 100);
+    cmd.exec();
+
+    assertArrayEquals(new int[] { 200, 0 }, FanOutCmd.statusCodesOf(cmd));
+    assertEquals("No result within 100 ms.", cmd.getError(1).get());
+  }
+
+  private static ThingResponse respondAfter(long millis, int statusCode)
+      throws InterruptedException {
+    Thread.sleep(millis);
+    return new ThingResponse(new TDHttpResponse(new BasicClassicHttpResponse(statusCode)));
+  }
+}
@@ -0,0 +1,75 @@
+package tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.unisg.ics.interactions.wot.td.affordances.Form;
+import ch.unisg.ics.interactions.wot.td.vocabularies.TD;
+
+public class HttpClientTransportTest {
+  private MockThingServer server;
+
+  @Before
+  public void init() throws IOException {
+    server = new MockThingServer(0);
+  }
+
+  @After
+  public void close() {
+    server.close();
+  }
+
+  @Test
+  public void testWorkspaceTransportIsShared() throws IOException {
+    HttpClientTransport first = HttpClientTransport.forWorkspace("shared");
+    HttpClientTransport second = HttpClientTransport.forWorkspace("shared");
+    assertSame(first, second);
+
+    // The workspace still uses the transport after all artifacts released it
+    first.close();
+    second.close();
+    assertTrue(isOpen(HttpClientTransport.forWorkspace("shared")));
+  }
+
+  @Test
+  public void testReplacedTransportClosedWhenUnused() throws IOException {
+    HttpClientTransport previous = HttpClientTransport.forWorkspace("replaced");
+    HttpClientTransport configured = new HttpClientTransport.Builder().build();
+
+    HttpClientTransport.setForWorkspace("replaced", configured);
+    assertSame(configured, HttpClientTransport.forWorkspace("replaced"));
+
+    // The previous transport is still used by an artifact
+    assertTrue(isOpen(previous));
+
+    previous.close();
+    assertFalse(isOpen(previous));
+
+    // The configured transport is also used by the workspace
+    configured.close();
+    assertTrue(isOpen(configured));
+  }
+
+  private boolean isOpen(HttpClientTransport transport) throws IOException {
+    ThingRequest request = new ThingRequest(new Form.Builder(server.getTDUrl())
+          .addOperationType(TD.readProperty)
+          .build(),
+        TD.readProperty);
+
+    try {
+      assertEquals(200, transport.execute(request).getStatusCode());
+      return true;
+    } catch (IllegalStateException e) {
+      // The connection pool was shut down
+      return false;
+    }
+  }
+}
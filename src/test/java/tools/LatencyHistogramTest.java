@@ -0,0 +1,45 @@
+package tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testBucketBounds() {
+    for (long value : new long[] { 0, 1, 7, 8, 15, 16, 1000, 123456789, Long.MAX_VALUE }) {
+      int bucket = LatencyHistogram.bucketOf(value);
+      assertTrue(LatencyHistogram.lowerBoundOf(bucket) <= value);
+      assertTrue(LatencyHistogram.upperBoundOf(bucket) >= value);
+    }
+  }
+
+  @Test
+  public void testPercentilesWithinPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    for (long value = 1; value <= 1000; value ++) {
+      histogram.record(value * 1000);
+    }
+
+    assertEquals(1000, histogram.getCount());
+    assertEquals(1000000, histogram.getMax());
+    assertEquals(500500, histogram.getMean(), 0.001);
+
+    long p50 = histogram.getValueAtPercentile(50);
+    long p99 = histogram.getValueAtPercentile(99);
+    assertTrue(p50 >= 500000 && p50 <= 500000 * 1.125);
+    assertTrue(p99 >= 990000 && p99 <= 1000000);
+    assertEquals(1000000, histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  public void testEmptyHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    assertEquals(0, histogram.getValueAtPercentile(99));
+    assertEquals(0, histogram.getMean(), 0);
+  }
+}
@@ -0,0 +1,215 @@
+package tools;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import jacamo.infra.JaCaMoLauncher;
+import tools.AffordanceMetrics.Phase;
+import tools.ThreadSaturationSampler.Pool;
+
+/**
+ * An end-to-end load test: launches a JaCaMo MAS in which a configurable number of agents (see
+ * <code>src/agt/load_agent.asl</code>) use their own <code>ThingArtifact</code>s against a
+ * {@link MockThingServer} with simulated latency, jitter, and errors. After the configured duration,
+ * the harness reports the throughput and latencies of each operation (from {@link
+ * OperationMetrics}) and how saturated the JVM's thread pools were (from a {@link
+ * ThreadSaturationSampler}), and stops the MAS.
+ *
+ * The test is configured with system properties (durations in seconds, latencies in
+ * milliseconds): <code>tools.load.agents</code>, <code>tools.load.duration</code>, <code>
+ * tools.load.latency</code>, <code>tools.load.jitter</code>, <code>tools.load.errorRate</code>, and
+ * <code>tools.load.thinkTime</code>. The report is printed and written in JSON format to <code>
+ * build/reports/loadtest/report.json</code>.
+ *
+ */
+public class LoadTestHarness {
+  private static final Path WORK_DIR = Paths.get("build", "loadtest");
+  private static final Path REPORT = Paths.get("build", "reports", "loadtest", "report.json");
+  private static final int REPORTED_POOLS = 10;
+
+  private final int agents;
+  private final long durationSeconds;
+  private final long latencyMillis;
+  private final long jitterMillis;
+  private final double errorRate;
+  private final long thinkTimeMillis;
+
+  LoadTestHarness(int agents, long durationSeconds, long latencyMillis, long jitterMillis,
+      double errorRate, long thinkTimeMillis) {
+    this.agents = agents;
+    this.durationSeconds = durationSeconds;
+    this.latencyMillis = latencyMillis;
+    this.jitterMillis = jitterMillis;
+    this.errorRate = errorRate;
+    this.thinkTimeMillis = thinkTimeMillis;
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    LoadTestHarness harness = new LoadTestHarness(
+        Integer.getInteger("tools.load.agents", 10),
+        Long.getLong("tools.load.duration", 60),
+        Long.getLong("tools.load.latency", 5),
+        Long.getLong("tools.load.jitter", 2),
+        Double.parseDouble(System.getProperty("tools.load.errorRate", "0")),
+        Long.getLong("tools.load.thinkTime", 0));
+
+    harness.run();
+
+    // Stops the MAS, which has no other way to terminate
+    System.exit(0);
+  }
+
+  void run() throws IOException, InterruptedException {
+    try (MockThingServer server = new MockThingServer(0)) {
+      server.simulate(latencyMillis, jitterMillis, errorRate);
+
+      Files.createDirectories(WORK_DIR);
+      Path jcm = WORK_DIR.resolve("load_test.jcm");
+      Files.write(jcm, generateJcm(server.getTDUrl()).getBytes(StandardCharsets.UTF_8));
+
+      try (ThreadSaturationSampler sampler = new ThreadSaturationSampler(100)) {
+        Thread mas = new Thread(() -> launch(jcm), "load-test-mas");
+        mas.setDaemon(true);
+
+        long start = System.nanoTime();
+        mas.start();
+        TimeUnit.SECONDS.sleep(durationSeconds);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        Map<String, Object> report = report(elapsed, sampler.getPools());
+        print(report);
+        write(report);
+      }
+    }
+  }
+
+  String generateJcm(String tdUrl) {
+    return "/* Generated by tools.LoadTestHarness */\n\n"
+        + "mas load_test {\n\n"
+        + "    agent load_agent : load_agent.asl {\n"
+        + "        beliefs: td_url(\"" + tdUrl + "\"), think_time(" + thinkTimeMillis + ")\n"
+        + "        instances: " + agents + "\n"
+        + "    }\n\n"
+        + "    asl-path: src/agt\n"
+        + "}\n";
+  }
+
+  private static void launch(Path jcm) {
+    try {
+      JaCaMoLauncher.main(new String[] { jcm.toString() });
+    } catch (Exception e) {
+      System.err.println("Unable to launch the MAS: " + e.getMessage());
+    }
+  }
+
+  private Map<String, Object> report(double elapsedSeconds, List<Pool> pools) {
+    Map<String, Object> report = new LinkedHashMap<String, Object>();
+    report.put("agents", agents);
+    report.put("durationSeconds", elapsedSeconds);
+    report.put("latencyMillis", latencyMillis);
+    report.put("jitterMillis", jitterMillis);
+    report.put("errorRate", errorRate);
+    report.put("thinkTimeMillis", thinkTimeMillis);
+
+    List<Map<String, Object>> operations = new ArrayList<Map<String, Object>>();
+
+    for (AffordanceMetrics metrics : OperationMetrics.getInstance().getAll()) {
+      LatencyHistogram total = metrics.getHistogram(Phase.TOTAL);
+      Map<String, Object> operation = new LinkedHashMap<String, Object>();
+      operation.put("affordance", metrics.getSemanticType());
+      operation.put("operation", metrics.getOperationType()
+          .substring(metrics.getOperationType().indexOf('#') + 1));
+      operation.put("operations", total.getCount());
+      operation.put("throughputPerSecond", total.getCount() / elapsedSeconds);
+      operation.put("requests", metrics.getRequestCount());
+      operation.put("errors", metrics.getErrorCount());
+      operation.put("p50Millis", toMillis(total.getValueAtPercentile(50)));
+      operation.put("p99Millis", toMillis(total.getValueAtPercentile(99)));
+      operation.put("p999Millis", toMillis(total.getValueAtPercentile(99.9)));
+      operation.put("maxMillis", toMillis(total.getMax()));
+      operation.put("networkP99Millis",
+          toMillis(metrics.getHistogram(Phase.NETWORK).getValueAtPercentile(99)));
+      operations.add(operation);
+    }
+
+    report.put("operations", operations);
+
+    List<Map<String, Object>> threads = new ArrayList<Map<String, Object>>();
+
+    for (Pool pool : pools) {
+      if (threads.size() == REPORTED_POOLS) {
+        break;
+      }
+
+      // Only numbered threads belong to pools, the others are single JVM or MAS threads
+      if (!pool.getName().contains("#")) {
+        continue;
+      }
+
+      Map<String, Object> entry = new LinkedHashMap<String, Object>();
+      entry.put("pool", pool.getName());
+      entry.put("peakThreads", pool.getPeakThreads());
+      entry.put("busyRatio", pool.getBusyRatio());
+      entry.put("saturatedRatio", pool.getSaturatedRatio());
+      threads.add(entry);
+    }
+
+    report.put("threadPools", threads);
+    return report;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void print(Map<String, Object> report) {
+    System.out.println(String.format(Locale.ROOT, "%n%d agents, %.1f s, latency %d ms +/- %d ms, "
+        + "error rate %.3f, think time %d ms%n", report.get("agents"),
+        report.get("durationSeconds"), report.get("latencyMillis"), report.get("jitterMillis"),
+        report.get("errorRate"), report.get("thinkTimeMillis")));
+    System.out.println(String.format(Locale.ROOT, "%-40s %-15s %10s %10s %8s %9s %9s %9s",
+        "Affordance", "Operation", "Ops", "Ops/s", "Errors", "p50 ms", "p99 ms", "p99.9 ms"));
+
+    for (Map<String, Object> operation : (List<Map<String, Object>>) report.get("operations")) {
+      System.out.println(String.format(Locale.ROOT,
+          "%-40s %-15s %10d %10.1f %8d %9.2f %9.2f %9.2f", operation.get("affordance"),
+          operation.get("operation"), operation.get("operations"),
+          operation.get("throughputPerSecond"), operation.get("errors"),
+          operation.get("p50Millis"), operation.get("p99Millis"), operation.get("p999Millis")));
+    }
+
+    System.out.println(String.format(Locale.ROOT, "%n%-40s %8s %8s %12s", "Thread pool", "Peak",
+        "Busy", "Saturated"));
+
+    for (Map<String, Object> pool : (List<Map<String, Object>>) report.get("threadPools")) {
+      System.out.println(String.format(Locale.ROOT, "%-40s %8d %7.1f%% %11.1f%%", pool.get("pool"),
+          pool.get("peakThreads"), 100 * (double) pool.get("busyRatio"),
+          100 * (double) pool.get("saturatedRatio")));
+    }
+  }
+
+  private static void write(Map<String, Object> report) throws IOException {
+    Files.createDirectories(REPORT.getParent());
+    Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    try (Writer writer = Files.newBufferedWriter(REPORT, StandardCharsets.UTF_8)) {
+      gson.toJson(report, writer);
+    }
+
+    System.out.println("\nReport written to " + REPORT);
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / 1e6;
+  }
+}
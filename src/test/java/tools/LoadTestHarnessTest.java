@@ -0,0 +1,65 @@
+package tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import org.junit.Test;
+
+public class LoadTestHarnessTest {
+
+  @Test
+  public void testGeneratedJcm() {
+    String jcm = new LoadTestHarness(25, 10, 5, 2, 0, 100)
+        .generateJcm("http://localhost:1234/forklift-robot");
+
+    assertTrue(jcm.contains("agent load_agent : load_agent.asl {"));
+    assertTrue(jcm.contains("instances: 25"));
+    assertTrue(jcm.contains("td_url(\"http://localhost:1234/forklift-robot\"), think_time(100)"));
+  }
+
+  @Test
+  public void testSimulatedErrors() throws IOException {
+    try (MockThingServer server = new MockThingServer(0)) {
+      server.simulate(0, 0, 1);
+
+      assertEquals(503, statusOf(server.getBaseUri() + "/forklift-robot/position"));
+      // The TD is served regardless of the simulated conditions
+      assertEquals(200, statusOf(server.getTDUrl()));
+
+      server.simulate(0, 0, 0);
+      assertEquals(200, statusOf(server.getBaseUri() + "/forklift-robot/position"));
+    }
+  }
+
+  @Test
+  public void testSimulatedLatency() throws IOException {
+    try (MockThingServer server = new MockThingServer(0)) {
+      server.simulate(50, 10, 0);
+
+      long start = System.nanoTime();
+      assertEquals(200, statusOf(server.getBaseUri() + "/forklift-robot/position"));
+      assertTrue(System.nanoTime() - start >= 40_000_000L);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidErrorRate() throws IOException {
+    try (MockThingServer server = new MockThingServer(0)) {
+      server.simulate(0, 0, 1.5);
+    }
+  }
+
+  private static int statusOf(String url) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+
+    try {
+      return connection.getResponseCode();
+    } finally {
+      connection.disconnect();
+    }
+  }
+}
@@ -0,0 +1,303 @@
+package tools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-process stand-in for the MockServer setup described in the README. The server answers the
+ * expectations in <code>mockserver/mockserver.json</code> and serves the forklift robot TD in
+ * <code>mockserver/forkliftRobot.ttl</code> at <code>/forklift-robot</code>, with all targets
+ * rewritten to point to this server.
+ *
+ * To simulate slow or unreliable devices (e.g., in load tests), responses to the expectations can
+ * be delayed by a configurable latency and jitter, and a configurable share of them fail with
+ * <code>503 Service Unavailable</code>. The TD is not affected by these conditions: it is served
+ * with an ETag (and answered with <code>304 Not Modified</code> if it did not change), and its
+ * version, status code, and latency can be set separately (e.g., to test TD caching).
+ *
+ */
+public class MockThingServer implements Closeable {
+  private static final String MOCKSERVER_BASE = "http://localhost:1080";
+  private static final Path EXPECTATIONS = Paths.get("mockserver", "mockserver.json");
+  private static final Path TD = Paths.get("mockserver", "forkliftRobot.ttl");
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final Map<String, Route> routes;
+  private final String baseUri;
+  private volatile long latencyMillis;
+  private volatile long jitterMillis;
+  private volatile double errorRate;
+  private final byte[] td;
+  private final AtomicInteger tdRequests;
+  private final AtomicInteger tdNotModified;
+  private volatile int tdVersion;
+  private volatile int tdStatusCode;
+  private volatile long tdLatencyMillis;
+
+  /**
+   * Starts a server on the given port of the loopback interface.
+   *
+   * @param port The port to bind to, or 0 for an ephemeral port.
+   * @throws IOException If the expectations or the TD could not be read, or if the server could
+   * not be started.
+   */
+  public MockThingServer(int port) throws IOException {
+    this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+    this.baseUri = "http://localhost:" + server.getAddress().getPort();
+    this.routes = loadRoutes();
+
+    this.td = new String(Files.readAllBytes(TD), StandardCharsets.UTF_8)
+        .replace(MOCKSERVER_BASE, baseUri).getBytes(StandardCharsets.UTF_8);
+    this.tdRequests = new AtomicInteger();
+    this.tdNotModified = new AtomicInteger();
+    this.tdVersion = 1;
+    this.tdStatusCode = 200;
+
+    this.executor = Executors.newCachedThreadPool(ThingExecutors.daemonThreads("mock-thing"));
+    this.server.setExecutor(executor);
+    this.server.createContext("/", this::handle);
+    this.server.start();
+  }
+
+  /**
+   * @return The base URI of the server, e.g. <code>http://localhost:38291</code>.
+   */
+  public String getBaseUri() {
+    return baseUri;
+  }
+
+  /**
+   * @return The URL of the forklift robot TD served by this server.
+   */
+  public String getTDUrl() {
+    return baseUri + "/forklift-robot";
+  }
+
+  /**
+   * Sets the conditions simulated for responses to the expectations.
+   *
+   * @param latencyMillis The mean delay of responses, in milliseconds.
+   * @param jitterMillis The maximum deviation from the mean delay, in milliseconds.
+   * @param errorRate The share of requests that fail with status 503, between 0 and 1.
+   * @return This server.
+   */
+  public MockThingServer simulate(long latencyMillis, long jitterMillis, double errorRate) {
+    if (latencyMillis < 0 || jitterMillis < 0 || errorRate < 0 || errorRate > 1) {
+      throw new IllegalArgumentException("Invalid simulated conditions: latency " + latencyMillis
+          + " ms, jitter " + jitterMillis + " ms, error rate " + errorRate);
+    }
+
+    this.latencyMillis = latencyMillis;
+    this.jitterMillis = jitterMillis;
+    this.errorRate = errorRate;
+    return this;
+  }
+
+  /**
+   * Changes the version of the TD, such that it is served with a new ETag.
+   *
+   * @param version The version of the TD.
+   * @return This server.
+   */
+  public MockThingServer setTDVersion(int version) {
+    this.tdVersion = version;
+    return this;
+  }
+
+  /**
+   * @param statusCode The status code of responses to TD requests (e.g., 404 or 503), or 200 to
+   * serve the TD.
+   * @return This server.
+   */
+  public MockThingServer setTDStatusCode(int statusCode) {
+    this.tdStatusCode = statusCode;
+    return this;
+  }
+
+  /**
+   * @param latencyMillis The delay of responses to TD requests, in milliseconds.
+   * @return This server.
+   */
+  public MockThingServer setTDLatency(long latencyMillis) {
+    this.tdLatencyMillis = latencyMillis;
+    return this;
+  }
+
+  /**
+   * @return The number of TD requests received, including conditional ones.
+   */
+  public int getTDRequestCount() {
+    return tdRequests.get();
+  }
+
+  /**
+   * @return The number of TD requests answered with <code>304 Not Modified</code>.
+   */
+  public int getTDNotModifiedCount() {
+    return tdNotModified.get();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  void handle(HttpExchange exchange) throws IOException {
+    try (InputStream in = exchange.getRequestBody()) {
+      // Drain the request payload, such that the connection can be reused
+      byte[] buffer = new byte[4096];
+      while (in.read(buffer) >= 0) { }
+    }
+
+    if (exchange.getRequestMethod().equals("GET")
+        && exchange.getRequestURI().getPath().equals("/forklift-robot")) {
+      handleTD(exchange);
+      return;
+    }
+
+    Route route = routes.get(exchange.getRequestMethod() + " "
+        + exchange.getRequestURI().getPath());
+
+    if (route == null) {
+      exchange.sendResponseHeaders(404, -1);
+      exchange.close();
+      return;
+    }
+
+    if (!simulateConditions()) {
+      respond(exchange, 503, Collections.emptyMap(), new byte[0]);
+      return;
+    }
+
+    respond(exchange, route.statusCode, route.headers, route.body);
+  }
+
+  private void handleTD(HttpExchange exchange) throws IOException {
+    tdRequests.incrementAndGet();
+    sleep(tdLatencyMillis);
+
+    if (tdStatusCode != 200) {
+      respond(exchange, tdStatusCode, Collections.emptyMap(), new byte[0]);
+      return;
+    }
+
+    String etag = "\"td-" + tdVersion + "\"";
+    Map<String, List<String>> headers = new HashMap<String, List<String>>();
+    headers.put("ETag", Collections.singletonList(etag));
+
+    if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+      tdNotModified.incrementAndGet();
+      respond(exchange, 304, headers, new byte[0]);
+      return;
+    }
+
+    headers.put("Content-Type", Collections.singletonList("text/turtle"));
+    respond(exchange, 200, headers, td);
+  }
+
+  /* Delays the response. Returns false if the request should fail. */
+  private boolean simulateConditions() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long delay = latencyMillis;
+
+    if (jitterMillis > 0) {
+      delay = Math.max(0, delay + random.nextLong(-jitterMillis, jitterMillis + 1));
+    }
+
+    sleep(delay);
+    return errorRate == 0 || random.nextDouble() >= errorRate;
+  }
+
+  private static void sleep(long millis) {
+    if (millis > 0) {
+      try {
+        Thread.sleep(millis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  void respond(HttpExchange exchange, int statusCode, Map<String, List<String>> headers,
+      byte[] body) throws IOException {
+    exchange.getResponseHeaders().putAll(headers);
+
+    if (body.length == 0) {
+      exchange.sendResponseHeaders(statusCode, -1);
+    } else {
+      exchange.sendResponseHeaders(statusCode, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    }
+
+    exchange.close();
+  }
+
+  private static Map<String, Route> loadRoutes() throws IOException {
+    String json = new String(Files.readAllBytes(EXPECTATIONS), StandardCharsets.UTF_8);
+    Map<String, Route> routes = new HashMap<String, Route>();
+
+    for (JsonElement element : JsonParser.parseString(json).getAsJsonArray()) {
+      JsonObject request = element.getAsJsonObject().getAsJsonObject("httpRequest");
+      JsonObject response = element.getAsJsonObject().getAsJsonObject("httpResponse");
+
+      Map<String, List<String>> headers = new HashMap<String, List<String>>();
+      if (response.has("headers")) {
+        for (Map.Entry<String, JsonElement> header
+            : response.getAsJsonObject("headers").entrySet()) {
+          JsonArray values = header.getValue().getAsJsonArray();
+          List<String> list = new ArrayList<String>();
+          for (JsonElement value : values) {
+            list.add(value.getAsString());
+          }
+          headers.put(header.getKey(), list);
+        }
+      }
+
+      String body = response.has("body") ? response.get("body").getAsString() : "";
+
+      routes.put(request.get("method").getAsString() + " " + request.get("path").getAsString(),
+          new Route(response.get("statusCode").getAsInt(), headers, body));
+    }
+
+    return routes;
+  }
+
+  private static class Route {
+    private final int statusCode;
+    private final Map<String, List<String>> headers;
+    private final byte[] body;
+
+    Route(int statusCode, Map<String, List<String>> headers, String body) {
+      this.statusCode = statusCode;
+      this.headers = headers;
+      this.body = body.getBytes(StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,247 @@
+package tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.unisg.ics.interactions.wot.td.affordances.Form;
+import ch.unisg.ics.interactions.wot.td.clients.TDHttpResponse;
+import ch.unisg.ics.interactions.wot.td.vocabularies.TD;
+import tools.OAuth2ClientCredentials.Token;
+
+public class OAuth2ClientCredentialsTest {
+  private TokenCache cache;
+  private AtomicInteger requests;
+
+  @Before
+  public void init() {
+    cache = new TokenCache();
+    requests = new AtomicInteger();
+  }
+
+  @Test
+  public void testTokenSharedByClients() throws IOException {
+    OAuth2ClientCredentials first = cache.acquire("client", () -> token(3600));
+    OAuth2ClientCredentials second = cache.acquire("client", () -> token(3600));
+
+    assertSame(first, second);
+    first.awaitToken(1000);
+    second.awaitToken(1000);
+
+    assertEquals(1, requests.get());
+    assertEquals("Bearer token-1", first.headersFor(Optional.empty()).get("Authorization"));
+  }
+
+  @Test
+  public void testTokenRefreshedBeforeExpiry() throws Exception {
+    OAuth2ClientCredentials credential = cache.acquire("client", () -> token(1));
+    credential.awaitToken(1000);
+
+    // Short-lived tokens are refreshed after the minimum delay of 1 s
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+    while (requests.get() < 2 && System.nanoTime() < deadline) {
+      Thread.sleep(20);
+    }
+
+    assertEquals("Bearer token-2", credential.headersFor(Optional.empty()).get("Authorization"));
+    credential.release();
+  }
+
+  @Test
+  public void testUnauthorizedFetchesNewToken() throws Exception {
+    OAuth2ClientCredentials credential = cache.acquire("client", () -> token(3600));
+    credential.setMinTokenAge(0);
+    credential.awaitToken(1000);
+    credential.onUnauthorized();
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+    while (requests.get() < 2 && System.nanoTime() < deadline) {
+      Thread.sleep(20);
+    }
+
+    assertEquals(2, requests.get());
+    credential.release();
+  }
+
+  @Test
+  public void testRecentTokenIsNotReplacedOnUnauthorized() throws Exception {
+    OAuth2ClientCredentials credential = cache.acquire("client", () -> token(3600));
+    credential.awaitToken(1000);
+
+    for (int i = 0; i < 10; i ++) {
+      credential.onUnauthorized();
+    }
+
+    Thread.sleep(100);
+    assertEquals(1, requests.get());
+    credential.release();
+  }
+
+  @Test
+  public void testCredentialHeadersAreRedacted() {
+    ThingRequest request = new ThingRequest(new Form.Builder("http://example.org/action")
+          .addOperationType(TD.invokeAction)
+          .build(),
+        TD.invokeAction)
+      .setCredentialHeaders(Credential.bearer("secret-token").headersFor(Optional.empty()))
+      .setCredentialHeaders(Collections.singletonMap("X-API-Key", "secret-key"));
+
+    String logged = request.toString();
+
+    assertFalse(logged.contains("secret"));
+    assertTrue(logged.contains("Authorization: [redacted]"));
+    assertTrue(logged.contains("X-API-Key: [redacted]"));
+    assertEquals("Bearer secret-token", request.getHeaders().get("Authorization"));
+  }
+
+  @Test
+  public void testLastReleaseClosesCredential() throws IOException {
+    OAuth2ClientCredentials first = cache.acquire("client", () -> token(3600));
+    cache.acquire("client", () -> token(3600));
+    first.awaitToken(1000);
+
+    first.release();
+    assertSame(first, cache.acquire("client", () -> token(3600)));
+
+    first.release();
+    first.release();
+    assertNotSame(first, cache.acquire("client", () -> token(3600)));
+  }
+
+  @Test
+  public void testFailedTokenRequest() {
+    OAuth2ClientCredentials credential = cache.acquire("client", () -> {
+      throw new IOException("Unauthorized client");
+    });
+
+    try {
+      credential.awaitToken(1000);
+      fail("Expected the token request to fail");
+    } catch (IOException e) {
+      assertEquals("Unauthorized client", e.getMessage());
+    }
+
+    assertFalse(credential.hasToken());
+    assertTrue(credential.headersFor(Optional.empty()).isEmpty());
+    credential.release();
+  }
+
+  @Test
+  public void testExpiredTokenDroppedWhenRefreshFails() throws Exception {
+    OAuth2ClientCredentials credential = cache.acquire("client", () -> {
+      if (requests.incrementAndGet() > 1) {
+        throw new IOException("Token endpoint unavailable");
+      }
+
+      return new Token("token-1", 200);
+    });
+    credential.awaitToken(1000);
+    credential.check();
+
+    // The token expires after 200 ms, and is refreshed after the minimum delay of 1 s
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+    while (requests.get() < 2 && System.nanoTime() < deadline) {
+      Thread.sleep(20);
+    }
+    Thread.sleep(50);
+
+    try {
+      credential.check();
+      fail("Expected the expired token to be rejected");
+    } catch (IOException e) {
+      assertEquals("No valid OAuth 2.0 access token: Token endpoint unavailable", e.getMessage());
+    }
+
+    assertFalse(credential.hasToken());
+    assertTrue(credential.headersFor(Optional.empty()).isEmpty());
+    credential.release();
+  }
+
+  @Test
+  public void testRequestsFailWithExpiredToken() throws Exception {
+    OAuth2ClientCredentials credential = cache.acquire("client", () -> {
+      if (requests.incrementAndGet() > 1) {
+        throw new IOException("Token endpoint unavailable");
+      }
+
+      return new Token("token-1", 200);
+    });
+    credential.awaitToken(1000);
+
+    AtomicInteger sent = new AtomicInteger();
+    ThingClient client = new ThingClient(new ResilientTransport(request -> {
+      sent.incrementAndGet();
+      return new ThingResponse(new TDHttpResponse(new BasicClassicHttpResponse(200)));
+    }, new HostGuards()), message -> { });
+    client.setCredential(credential);
+
+    ThingRequest request = new ThingRequest(new Form.Builder("http://example.org/status")
+          .addOperationType(TD.readProperty)
+          .build(),
+        TD.readProperty);
+    AffordanceMetrics metrics = new AffordanceMetrics("http://example.org/", "thing",
+        "http://example.org/Status", TD.readProperty);
+
+    assertEquals(200, client.execute(request, metrics).getStatusCode());
+    Thread.sleep(300);
+
+    try {
+      client.execute(request, metrics);
+      fail("Expected the request to fail with the expired token");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().startsWith("No valid OAuth 2.0 access token"));
+    }
+
+    assertEquals(1, sent.get());
+    client.release();
+  }
+
+  @Test
+  public void testParseTokenResponse() throws IOException {
+    Token token = Token.parse("{ \"access_token\" : \"abc\", \"token_type\" : \"Bearer\", "
+        + "\"expires_in\" : 300 }");
+
+    assertEquals("abc", token.accessToken);
+    assertEquals(300000, token.lifetimeMillis);
+    assertEquals(OAuth2ClientCredentials.DEFAULT_LIFETIME_MILLIS, Token.parse(
+        "{ \"access_token\" : \"abc\", \"token_type\" : \"bearer\" }").lifetimeMillis);
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnsupportedTokenType() throws IOException {
+    Token.parse("{ \"access_token\" : \"abc\", \"token_type\" : \"mac\" }");
+  }
+
+  @Test
+  public void testRefreshDelay() {
+    assertEquals(TimeUnit.MINUTES.toMillis(59), OAuth2ClientCredentials.refreshDelay(
+        TimeUnit.HOURS.toMillis(1)));
+    assertEquals(80000, OAuth2ClientCredentials.refreshDelay(100000));
+    assertEquals(OAuth2ClientCredentials.MIN_RETRY_DELAY_MILLIS,
+        OAuth2ClientCredentials.refreshDelay(10));
+  }
+
+  @Test
+  public void testBearerCredential() {
+    assertEquals("Bearer abc", Credential.bearer("abc").headersFor(Optional.empty())
+        .get("Authorization"));
+  }
+
+  private Token token(long lifetimeSeconds) {
+    return new Token("token-" + requests.incrementAndGet(),
+        TimeUnit.SECONDS.toMillis(lifetimeSeconds));
+  }
+}
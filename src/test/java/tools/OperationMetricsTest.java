@@ -0,0 +1,68 @@
+package tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Optional;
+
+import org.junit.Test;
+
+import ch.unisg.ics.interactions.wot.td.affordances.Form;
+import ch.unisg.ics.interactions.wot.td.vocabularies.TD;
+import tools.AffordanceIndex.ResolvedAffordance;
+
+public class OperationMetricsTest {
+  private static final String MOVE_TO = "http://example.org/MoveTo";
+  private static final String FORKLIFT = "http://localhost:1080/forklift-robot";
+  private static final String CONVEYOR = "http://localhost:1080/conveyor";
+
+  @Test
+  public void testReparsedAffordanceKeepsMetrics() {
+    OperationMetrics registry = new OperationMetrics(false);
+
+    AffordanceMetrics metrics = registry.forAffordance(FORKLIFT, "forkliftRobot", moveTo());
+    metrics.recordResponse(200);
+
+    // E.g., the same affordance resolved from a TD that expired and was parsed again
+    AffordanceMetrics reparsed = registry.forAffordance(FORKLIFT, "forkliftRobot", moveTo());
+
+    assertSame(metrics, reparsed);
+    assertEquals(1, reparsed.getRequestCount());
+    assertEquals(1, registry.forThing(FORKLIFT).size());
+    assertEquals(1, registry.getAll().size());
+  }
+
+  @Test
+  public void testMetricsPerThing() {
+    OperationMetrics registry = new OperationMetrics(false);
+
+    assertNotSame(registry.forAffordance(FORKLIFT, "forkliftRobot", moveTo()),
+        registry.forAffordance(CONVEYOR, "conveyor", moveTo()));
+    assertEquals(1, registry.forThing(CONVEYOR).size());
+    assertEquals(2, registry.getAll().size());
+  }
+
+  @Test
+  public void testThingsWithSameTitleKeepSeparateMetrics() {
+    OperationMetrics registry = new OperationMetrics(false);
+
+    AffordanceMetrics first = registry.forAffordance(FORKLIFT, "forkliftRobot", moveTo());
+    AffordanceMetrics second = registry.forAffordance(FORKLIFT + "-2", "forkliftRobot", moveTo());
+    first.recordResponse(200);
+
+    assertNotSame(first, second);
+    assertEquals(0, second.getRequestCount());
+    assertEquals("forkliftRobot", second.getTitle());
+    assertEquals(FORKLIFT + "-2", second.getThing());
+  }
+
+  private static ResolvedAffordance moveTo() {
+    Form form = new Form.Builder("http://localhost:1080/forklift-robot/moveTo")
+        .addOperationType(TD.invokeAction)
+        .build();
+
+    return new ResolvedAffordance(null, MOVE_TO, form, TD.invokeAction, Optional.empty(),
+        Optional.empty());
+  }
+}
@@ -0,0 +1,163 @@
+package tools;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.google.gson.JsonParser;
+
+import ch.unisg.ics.interactions.wot.td.schemas.ArraySchema;
+import ch.unisg.ics.interactions.wot.td.schemas.BooleanSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.DataSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.IntegerSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.NumberSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.ObjectSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.StringSchema;
+import tools.PayloadCodec.ObjectValue;
+
+public class PayloadCodecTest {
+  private static final String PREFIX = "http://example.org/";
+
+  @Test
+  public void testEncodePrimitives() {
+    assertEquals("true", PayloadCodec.forSchema(new BooleanSchema.Builder().build())
+        .encode(true));
+    assertEquals("\"bla \\\"bla\\\" \\u003cbla\\u003e\"",
+        PayloadCodec.forSchema(new StringSchema.Builder().build()).encode("bla \"bla\" <bla>"));
+    assertEquals("42", PayloadCodec.forSchema(new IntegerSchema.Builder().build())
+        .encode((Integer) 42));
+    assertEquals("9223372036854775807", PayloadCodec.forSchema(new IntegerSchema.Builder()
+        .build()).encode(Long.MAX_VALUE));
+    assertEquals("0.05", PayloadCodec.forSchema(new NumberSchema.Builder().build())
+        .encode(0.05));
+  }
+
+  @Test
+  public void testEncodeObject() {
+    Object[] tags = new Object[] { PREFIX + "FirstName", PREFIX + "LastName", PREFIX + "Age" };
+    Object[] params = new Object[] { "John", "Doe", 42 };
+
+    String payload = PayloadCodec.forSchema(personSchema()).encodeObject(tags, params);
+
+    assertEquals(JsonParser.parseString("{ \"first_name\" : \"John\", \"last_name\" : \"Doe\", "
+        + "\"age\" : 42 }"), JsonParser.parseString(payload));
+  }
+
+  @Test
+  public void testEncodeArray() {
+    Object[] params = new Object[] { "John", "Doe", 42, true, new Object[] { 30, 50, 2.5 } };
+
+    assertEquals("[\"John\",\"Doe\",42,true,[30,50,2.5]]",
+        PayloadCodec.forSchema(new ArraySchema.Builder().build()).encode(params));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPrimitiveSchemaMismatch() {
+    PayloadCodec.forSchema(new BooleanSchema.Builder().build()).encode("true");
+  }
+
+  @Test
+  public void testDecodePrimitives() {
+    assertEquals(true, PayloadCodec.forSchema(new BooleanSchema.Builder().build()).decode("true"));
+    assertEquals("bla", PayloadCodec.forSchema(new StringSchema.Builder().build())
+        .decode("\"bla\""));
+    assertEquals(42, PayloadCodec.forSchema(new IntegerSchema.Builder().build()).decode("42"));
+    assertEquals(0.05, (double) PayloadCodec.forSchema(new NumberSchema.Builder().build())
+        .decode("0.05"), 0.001);
+  }
+
+  @Test
+  public void testDecodeNestedArrays() {
+    Object value = PayloadCodec.forSchema(new ArraySchema.Builder().build())
+        .decode("[3.5, [\"1\", 2]]");
+
+    assertTrue(value instanceof Object[]);
+    Object[] array = (Object[]) value;
+    assertEquals(3.5, (double) array[0], 0.01);
+    assertArrayEquals(new Object[] { "1", 2 }, (Object[]) array[1]);
+  }
+
+  @Test
+  public void testDecodeObject() {
+    Object value = PayloadCodec.forSchema(personSchema())
+        .decode("{ \"first_name\" : \"John\", \"age\" : 42, \"unknown\" : [1, 2] }");
+
+    assertTrue(value instanceof ObjectValue);
+    assertArrayEquals(new Object[] { PREFIX + "FirstName", PREFIX + "Age" },
+        ((ObjectValue) value).getTags());
+    assertArrayEquals(new Object[] { "John", 42 }, ((ObjectValue) value).getValues());
+  }
+
+  @Test
+  public void testNumericArraysDecodedWithoutBoxing() {
+    DataSchema position = new ArraySchema.Builder()
+        .addItem(new IntegerSchema.Builder().build())
+        .build();
+    DataSchema series = new ArraySchema.Builder()
+        .addItem(new NumberSchema.Builder().build())
+        .build();
+
+    Object integers = PayloadCodec.forSchema(position).decode("[30, 50, 60]");
+    assertArrayEquals(new long[] { 30, 50, 60 }, (long[]) integers);
+    assertArrayEquals(new double[] { 1.5, 2, -0.25 }, (double[]) PayloadCodec.forSchema(series)
+        .decode("[1.5, 2, -0.25]"), 0);
+
+    // Agents receive the same values as for other arrays
+    assertArrayEquals(new Object[] { 30, 50, 60 }, (Object[]) PayloadCodec.toAgentValue(integers));
+  }
+
+  @Test
+  public void testNumericArraysEncodedFromPrimitives() {
+    DataSchema position = new ArraySchema.Builder()
+        .addItem(new IntegerSchema.Builder().build())
+        .build();
+    PayloadCodec codec = PayloadCodec.forSchema(position);
+
+    assertEquals("[30,50,60]", codec.encode(new long[] { 30, 50, 60 }));
+    assertEquals(codec.encode(new Object[] { 30, 50, 60 }),
+        codec.encode(new long[] { 30, 50, 60 }));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNumericArraySchemaMismatch() {
+    PayloadCodec.forSchema(new ArraySchema.Builder()
+        .addItem(new IntegerSchema.Builder().build())
+        .build()).encode(new double[] { 1.5 });
+  }
+
+  @Test
+  public void testNestedNumericArraysConvertedForAgents() {
+    Object value = PayloadCodec.toAgentValue(PayloadCodec.forSchema(new ArraySchema.Builder()
+        .addItem(new ArraySchema.Builder()
+            .addItem(new NumberSchema.Builder().build())
+            .build())
+        .build()).decode("[[1.5], [2.5, 3]]"));
+
+    assertArrayEquals(new Object[] { new Object[] { 1.5 }, new Object[] { 2.5, 3.0 } },
+        (Object[]) value);
+  }
+
+  @Test
+  public void testAgentValueWithoutNumericArraysNotCopied() {
+    Object[] value = new Object[] { "bla", new Object[] { 1, 2 } };
+
+    assertSame(value, PayloadCodec.toAgentValue(value));
+  }
+
+  private DataSchema personSchema() {
+    return new ObjectSchema.Builder()
+        .addProperty("first_name", new StringSchema.Builder()
+            .addSemanticType(PREFIX + "FirstName")
+            .build())
+        .addProperty("last_name", new StringSchema.Builder()
+            .addSemanticType(PREFIX + "LastName")
+            .build())
+        .addProperty("age", new IntegerSchema.Builder()
+            .addSemanticType(PREFIX + "Age")
+            .build())
+        .build();
+  }
+}
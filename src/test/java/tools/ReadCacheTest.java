@@ -0,0 +1,161 @@
+package tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.unisg.ics.interactions.wot.td.affordances.Form;
+import ch.unisg.ics.interactions.wot.td.clients.TDHttpResponse;
+import ch.unisg.ics.interactions.wot.td.vocabularies.TD;
+
+public class ReadCacheTest {
+  private static final String STATUS = "http://example.org/Status";
+  private ReadCache<String> cache;
+  private AtomicInteger reads;
+
+  @Before
+  public void init() {
+    cache = new ReadCache<String>(value -> !value.equals("error"));
+    reads = new AtomicInteger();
+  }
+
+  @Test
+  public void testCachedWithinTTL() throws IOException {
+    cache.setTTL(STATUS, 60000);
+
+    assertEquals("v1", cache.read(STATUS, () -> "v" + reads.incrementAndGet()));
+    assertEquals("v1", cache.read(STATUS, () -> "v" + reads.incrementAndGet()));
+    assertEquals(1, reads.get());
+  }
+
+  @Test
+  public void testNotCachedWithoutTTL() throws IOException {
+    cache.read(STATUS, () -> "v" + reads.incrementAndGet());
+    assertEquals("v2", cache.read(STATUS, () -> "v" + reads.incrementAndGet()));
+  }
+
+  @Test
+  public void testUncacheableResult() throws IOException {
+    cache.setTTL(STATUS, 60000);
+
+    cache.read(STATUS, () -> { reads.incrementAndGet(); return "error"; });
+    assertEquals("ok", cache.read(STATUS, () -> "ok"));
+  }
+
+  @Test
+  public void testInvalidate() throws IOException {
+    cache.setTTL(STATUS, 60000);
+
+    cache.read(STATUS, () -> "before");
+    cache.invalidate();
+    assertEquals("after", cache.read(STATUS, () -> "after"));
+  }
+
+  @Test
+  public void testConcurrentReadsAreCoalesced() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    try {
+      Future<String> first = executor.submit(() -> cache.read(STATUS, () -> {
+        started.countDown();
+        release.await();
+        return "v" + reads.incrementAndGet();
+      }));
+
+      started.await();
+
+      Future<String> second = executor.submit(() -> cache.read(STATUS,
+          () -> "v" + reads.incrementAndGet()));
+      Future<String> third = executor.submit(() -> cache.read(STATUS,
+          () -> "v" + reads.incrementAndGet()));
+
+      // Give the joining reads time to find the pending read
+      Thread.sleep(100);
+      release.countDown();
+
+      assertEquals("v1", first.get(1, TimeUnit.SECONDS));
+      assertEquals("v1", second.get(1, TimeUnit.SECONDS));
+      assertEquals("v1", third.get(1, TimeUnit.SECONDS));
+      assertEquals(1, reads.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testReadAfterWriteDoesNotJoinEarlierRead() throws Exception {
+    cache.setTTL(STATUS, 60000);
+
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    try {
+      Future<String> before = executor.submit(() -> cache.read(STATUS, () -> {
+        started.countDown();
+        release.await();
+        return "before";
+      }));
+
+      started.await();
+
+      // A write completes while the first read is in flight
+      cache.invalidate();
+      assertEquals("after", cache.read(STATUS, () -> "after"));
+
+      release.countDown();
+      assertEquals("before", before.get(1, TimeUnit.SECONDS));
+
+      // The earlier read is not cached either
+      assertEquals("after", cache.read(STATUS, () -> "again"));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testBatchedReadsGoThroughCache() throws IOException {
+    ReadCache<ThingResponse> responses = new ReadCache<ThingResponse>(response -> true);
+    responses.setTTL(STATUS, 60000);
+
+    ThingTransport transport = request -> {
+      reads.incrementAndGet();
+      return new ThingResponse(new TDHttpResponse(new BasicClassicHttpResponse(200)));
+    };
+    AffordanceMetrics metrics = new AffordanceMetrics("http://localhost:1080/forklift-robot",
+        "forkliftRobot", STATUS, TD.readProperty);
+
+    for (int i = 0; i < 2; i ++) {
+      RequestCmd cmd = new RequestCmd(transport, new ThingRequest[] { read(), read() },
+          new AffordanceMetrics[] { metrics, metrics })
+        .readThrough(responses, new String[] { STATUS, null });
+      cmd.exec();
+
+      assertFalse(cmd.error.isPresent());
+    }
+
+    // The cached property is read once, the other one with each batch
+    assertEquals(3, reads.get());
+    assertEquals(3, metrics.getRequestCount());
+  }
+
+  private static ThingRequest read() {
+    return new ThingRequest(new Form.Builder("http://localhost:1080/forklift-robot/status")
+          .addOperationType(TD.readProperty)
+          .build(),
+        TD.readProperty);
+  }
+}
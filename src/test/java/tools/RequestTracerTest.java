@@ -0,0 +1,79 @@
+package tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.unisg.ics.interactions.wot.td.affordances.Form;
+import ch.unisg.ics.interactions.wot.td.vocabularies.TD;
+
+public class RequestTracerTest {
+  private Logger logger;
+  private BlockingQueue<String> messages;
+  private ThingRequest request;
+
+  @Before
+  public void init() {
+    messages = new LinkedBlockingQueue<String>();
+    logger = Logger.getAnonymousLogger();
+    logger.setUseParentHandlers(false);
+    logger.addHandler(new Handler() {
+      @Override
+      public void publish(LogRecord record) {
+        messages.add(new SimpleFormatter().formatMessage(record));
+      }
+
+      @Override
+      public void flush() { }
+
+      @Override
+      public void close() { }
+    });
+
+    request = new ThingRequest(new Form.Builder("http://example.org/action")
+          .addOperationType(TD.invokeAction)
+          .build(),
+        TD.invokeAction).setPayload("[1,2]");
+  }
+
+  @Test
+  public void testTraceWrittenInBackground() throws InterruptedException {
+    logger.setLevel(Level.FINE);
+    new RequestTracer(logger, 16, 1).trace("forkliftRobot", request);
+
+    String message = messages.poll(1, TimeUnit.SECONDS);
+    assertEquals("[forkliftRobot] " + request.toString(), message);
+  }
+
+  @Test
+  public void testNotTracedBelowLevel() throws InterruptedException {
+    logger.setLevel(Level.INFO);
+    new RequestTracer(logger, 16, 1).trace("forkliftRobot", request);
+
+    assertNull(messages.poll(200, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testNotSampled() throws InterruptedException {
+    logger.setLevel(Level.FINE);
+    RequestTracer tracer = new RequestTracer(logger, 16, 0);
+
+    for (int i = 0; i < 100; i ++) {
+      tracer.trace("forkliftRobot", request);
+    }
+
+    assertNull(messages.poll(200, TimeUnit.MILLISECONDS));
+    assertEquals(0, tracer.getDropped());
+  }
+}
@@ -0,0 +1,186 @@
+package tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.unisg.ics.interactions.wot.td.affordances.Form;
+import ch.unisg.ics.interactions.wot.td.clients.TDHttpResponse;
+import ch.unisg.ics.interactions.wot.td.vocabularies.TD;
+import tools.ResilientTransport.CircuitOpenException;
+
+public class ResilientTransportTest {
+  private static final String TARGET = "http://localhost:1080/forklift-robot/busy";
+  private AtomicInteger attempts;
+  private HostGuards guards;
+
+  @Before
+  public void init() {
+    attempts = new AtomicInteger();
+    guards = new HostGuards();
+  }
+
+  @Test
+  public void testRequestsArePassedThroughByDefault() {
+    ResilientTransport transport = new ResilientTransport(failingTimes(Integer.MAX_VALUE), guards);
+
+    for (int i = 0; i < 10; i ++) {
+      try {
+        transport.execute(request(TD.readProperty));
+        fail("Expected the request to fail");
+      } catch (IOException e) {
+        // Neither a retry nor a circuit open exception
+        assertEquals("Connection refused", e.getMessage());
+      }
+    }
+
+    assertEquals(10, attempts.get());
+    assertFalse(transport.getCircuitBreaker("localhost:1080").isPresent());
+  }
+
+  @Test
+  public void testReadsAreRetried() throws IOException {
+    ResilientTransport transport = new ResilientTransport(failingTimes(2), guards);
+    transport.setPolicy(new ResilientTransport.Policy().setMaxRetries(2));
+
+    ThingResponse response = transport.execute(request(TD.readProperty));
+
+    assertEquals(200, response.getStatusCode());
+    assertEquals(3, attempts.get());
+  }
+
+  @Test
+  public void testActionsAreNotRetriedByDefault() {
+    ResilientTransport transport = new ResilientTransport(failingTimes(1), guards);
+    transport.setPolicy(new ResilientTransport.Policy().setMaxRetries(2));
+
+    try {
+      transport.execute(request(TD.invokeAction));
+      fail("Expected the action to fail");
+    } catch (IOException e) {
+      assertEquals(1, attempts.get());
+    }
+  }
+
+  @Test
+  public void testActionsAreRetriedWhenEnabled() throws IOException {
+    ResilientTransport transport = new ResilientTransport(failingTimes(1), guards);
+    transport.setPolicy(new ResilientTransport.Policy().setMaxRetries(2));
+    transport.setRetryActions(true);
+
+    assertEquals(200, transport.execute(request(TD.invokeAction)).getStatusCode());
+    assertEquals(2, attempts.get());
+  }
+
+  @Test
+  public void testFailsFastWhenCircuitIsOpen() throws IOException {
+    ResilientTransport transport = new ResilientTransport(failingTimes(Integer.MAX_VALUE), guards);
+    transport.setPolicy(new ResilientTransport.Policy()
+        .setFailureThreshold(2)
+        .setOpenDuration(60000));
+
+    for (int i = 0; i < 2; i ++) {
+      try {
+        transport.execute(request(TD.readProperty));
+      } catch (IOException e) {
+        // Expected
+      }
+    }
+
+    try {
+      transport.execute(request(TD.readProperty));
+      fail("Expected the circuit to be open");
+    } catch (CircuitOpenException e) {
+      assertEquals(2, attempts.get());
+    }
+  }
+
+  @Test
+  public void testBreakerIsSharedByTransports() throws IOException {
+    ResilientTransport.Policy policy = new ResilientTransport.Policy()
+        .setFailureThreshold(2)
+        .setOpenDuration(60000);
+    ResilientTransport first = new ResilientTransport(failingTimes(Integer.MAX_VALUE), guards);
+    ResilientTransport second = new ResilientTransport(failingTimes(Integer.MAX_VALUE), guards);
+    first.setPolicy(policy);
+    second.setPolicy(policy);
+
+    for (ResilientTransport transport : new ResilientTransport[] { first, second }) {
+      try {
+        transport.execute(request(TD.readProperty));
+      } catch (IOException e) {
+        // Expected
+      }
+    }
+
+    // The failures of both transports count against the host
+    try {
+      first.execute(request(TD.readProperty));
+      fail("Expected the circuit to be open");
+    } catch (CircuitOpenException e) {
+      assertEquals(2, attempts.get());
+    }
+
+    assertSame(first.getCircuitBreaker("localhost:1080").get(),
+        second.getCircuitBreaker("localhost:1080").get());
+  }
+
+  @Test
+  public void testProbeIsReleasedOnRuntimeException() throws IOException {
+    AtomicInteger calls = new AtomicInteger();
+    ResilientTransport transport = new ResilientTransport(request -> {
+      switch (calls.incrementAndGet()) {
+        case 1:
+          throw new IOException("Connection refused");
+        case 2:
+          throw new IllegalStateException("Broken delegate");
+        default:
+          return new ThingResponse(new TDHttpResponse(new BasicClassicHttpResponse(200)));
+      }
+    }, guards);
+    transport.setPolicy(new ResilientTransport.Policy()
+        .setFailureThreshold(1)
+        .setOpenDuration(0));
+
+    try {
+      transport.execute(request(TD.readProperty));
+      fail("Expected the request to fail");
+    } catch (IOException e) {
+      // Expected, opens the circuit
+    }
+
+    try {
+      transport.execute(request(TD.readProperty));
+      fail("Expected the probe to fail");
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+
+    // The failed probe does not keep the breaker from letting another probe through
+    assertEquals(200, transport.execute(request(TD.readProperty)).getStatusCode());
+  }
+
+  private ThingTransport failingTimes(int failures) {
+    return request -> {
+      if (attempts.incrementAndGet() <= failures) {
+        throw new IOException("Connection refused");
+      }
+      return new ThingResponse(new TDHttpResponse(new BasicClassicHttpResponse(200)));
+    };
+  }
+
+  private static ThingRequest request(String operationType) {
+    return new ThingRequest(new Form.Builder(TARGET)
+          .addOperationType(operationType)
+          .build(),
+        operationType);
+  }
+}
@@ -0,0 +1,157 @@
+package tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Optional;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.unisg.ics.interactions.wot.td.ThingDescription;
+import ch.unisg.ics.interactions.wot.td.affordances.ActionAffordance;
+import ch.unisg.ics.interactions.wot.td.affordances.Form;
+import ch.unisg.ics.interactions.wot.td.affordances.PropertyAffordance;
+import ch.unisg.ics.interactions.wot.td.schemas.ArraySchema;
+import ch.unisg.ics.interactions.wot.td.schemas.DataSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.IntegerSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.NumberSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.ObjectSchema;
+import ch.unisg.ics.interactions.wot.td.security.APIKeySecurityScheme;
+import ch.unisg.ics.interactions.wot.td.security.APIKeySecurityScheme.TokenLocation;
+import ch.unisg.ics.interactions.wot.td.vocabularies.TD;
+import ch.unisg.ics.interactions.wot.td.vocabularies.WoTSec;
+import tools.TDSnapshotStore.Snapshot;
+
+public class TDSnapshotStoreTest {
+  private static final String URL = "http://localhost:8080/forklift-robot";
+  private static final String PREFIX = "http://example.org/";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private TDSnapshotStore store;
+
+  @Before
+  public void init() {
+    store = new TDSnapshotStore(folder.getRoot().toPath().resolve("snapshots"));
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    store.write(URL, new Snapshot(forkliftRobot(), "\"v1\"", null));
+
+    Snapshot snapshot = store.read(URL).get();
+    assertEquals(Optional.of("\"v1\""), snapshot.getETag());
+    assertFalse(snapshot.getLastModified().isPresent());
+
+    ThingDescription td = snapshot.getThingDescription();
+    assertEquals("forkliftRobot", td.getTitle());
+    assertEquals(Optional.of("http://localhost:8080/"), td.getBaseURI());
+
+    APIKeySecurityScheme scheme = (APIKeySecurityScheme) td.getSecuritySchemeByType(
+        WoTSec.APIKeySecurityScheme).get();
+    assertEquals(TokenLocation.HEADER, scheme.getIn());
+    assertEquals(Optional.of("X-API-Key"), scheme.getName());
+
+    PropertyAffordance property = td.getProperties().get(0);
+    assertEquals(Arrays.asList(PREFIX + "Position"), property.getSemanticTypes());
+    assertTrue(property.isObservable());
+
+    Form form = property.getForms().get(0);
+    assertEquals("http://localhost:8080/position", form.getTarget());
+    assertEquals("application/cbor", form.getContentType());
+    assertTrue(form.hasOperationType(TD.readProperty));
+    assertTrue(form.hasOperationType(TD.writeProperty));
+
+    ArraySchema schema = (ArraySchema) property.getDataSchema();
+    assertEquals(Optional.of(3), schema.getMaxItems());
+    assertFalse(schema.getMinItems().isPresent());
+    assertEquals(DataSchema.NUMBER, schema.getItems().get(0).getDatatype());
+
+    ActionAffordance action = td.getActions().get(0);
+    assertEquals(Optional.of("moveTo"), action.getTitle());
+    assertEquals(Optional.of("PUT"), action.getForms().get(0).getMethodName());
+
+    ObjectSchema input = (ObjectSchema) action.getInputSchema().get();
+    assertTrue(input.getProperties().get("x").getSemanticTypes().contains(PREFIX + "X"));
+    assertEquals(Arrays.asList("x"), input.getRequiredProperties());
+    assertFalse(action.getOutputSchema().isPresent());
+  }
+
+  @Test
+  public void testReplace() throws IOException {
+    store.write(URL, new Snapshot(forkliftRobot(), "\"v1\"", null));
+    store.write(URL, new Snapshot(new ThingDescription.Builder("forkliftRobot2").build(),
+        "\"v2\"", "Sun, 18 Oct 2026 10:00:00 GMT"));
+
+    Snapshot snapshot = store.read(URL).get();
+    assertEquals("\"v2\"", snapshot.getETag().get());
+    assertEquals("Sun, 18 Oct 2026 10:00:00 GMT", snapshot.getLastModified().get());
+    assertEquals("forkliftRobot2", snapshot.getThingDescription().getTitle());
+    assertEquals(1, folder.getRoot().toPath().resolve("snapshots").toFile().list().length);
+  }
+
+  @Test
+  public void testMissingSnapshot() throws IOException {
+    assertFalse(store.read(URL).isPresent());
+
+    store.write(URL, new Snapshot(forkliftRobot(), null, null));
+    store.remove(URL);
+    assertFalse(store.read(URL).isPresent());
+  }
+
+  @Test
+  public void testCorruptedSnapshotIsIgnored() throws IOException {
+    store.write(URL, new Snapshot(forkliftRobot(), null, null));
+    File[] files = folder.getRoot().toPath().resolve("snapshots").toFile().listFiles();
+    assertEquals(1, files.length);
+
+    Files.write(files[0].toPath(), new byte[] { 1, 2, 3 });
+    assertFalse(store.read(URL).isPresent());
+  }
+
+  private static ThingDescription forkliftRobot() {
+    PropertyAffordance position = new PropertyAffordance.Builder(new ArraySchema.Builder()
+          .addItem(new NumberSchema.Builder().build())
+          .addMaxItems(3)
+          .build(),
+        Arrays.asList(new Form.Builder("http://localhost:8080/position")
+          .setContentType("application/cbor")
+          .addOperationType(TD.readProperty)
+          .addOperationType(TD.writeProperty)
+          .build()))
+        .addSemanticType(PREFIX + "Position")
+        .addObserve()
+        .build();
+
+    ActionAffordance moveTo = new ActionAffordance.Builder(Arrays.asList(
+        new Form.Builder("http://localhost:8080/moveTo")
+          .setMethodName("PUT")
+          .addOperationType(TD.invokeAction)
+          .build()))
+        .addTitle("moveTo")
+        .addSemanticType(PREFIX + "MoveTo")
+        .addInputSchema(new ObjectSchema.Builder()
+          .addProperty("x", new IntegerSchema.Builder()
+              .addSemanticType(PREFIX + "X")
+              .build())
+          .addRequiredProperties("x")
+          .build())
+        .build();
+
+    return new ThingDescription.Builder("forkliftRobot")
+        .addBaseURI("http://localhost:8080/")
+        .addSecurityScheme(new APIKeySecurityScheme(TokenLocation.HEADER, "X-API-Key"))
+        .addProperty(position)
+        .addAction(moveTo)
+        .build();
+  }
+}
@@ -0,0 +1,148 @@
+package tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.unisg.ics.interactions.wot.td.ThingDescription;
+
+public class ThingDescriptionCacheTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private MockThingServer server;
+
+  @Before
+  public void init() throws IOException {
+    server = new MockThingServer(0);
+  }
+
+  @After
+  public void close() {
+    server.close();
+  }
+
+  @Test
+  public void testFreshTDIsNotRetrievedAgain() throws IOException {
+    ThingDescriptionCache cache = new ThingDescriptionCache(16, 60000);
+
+    ThingDescription td = cache.get(server.getTDUrl());
+
+    assertSame(td, cache.get(server.getTDUrl()));
+    assertEquals(1, server.getTDRequestCount());
+  }
+
+  @Test
+  public void testStaleTDIsRevalidated() throws IOException {
+    ThingDescriptionCache cache = new ThingDescriptionCache(16, 0);
+
+    ThingDescription td = cache.get(server.getTDUrl());
+
+    // Unchanged TDs are confirmed with a conditional request and not parsed again
+    assertSame(td, cache.get(server.getTDUrl()));
+    assertEquals(2, server.getTDRequestCount());
+    assertEquals(1, server.getTDNotModifiedCount());
+
+    server.setTDVersion(2);
+    cache.get(server.getTDUrl());
+    assertEquals(3, server.getTDRequestCount());
+    assertEquals(1, server.getTDNotModifiedCount());
+
+    // The validators of the new version are used from now on
+    cache.get(server.getTDUrl());
+    assertEquals(2, server.getTDNotModifiedCount());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedTDIsEvicted() throws IOException {
+    ThingDescriptionCache cache = new ThingDescriptionCache(2, 60000);
+    String first = server.getTDUrl() + "?robot=1";
+    String second = server.getTDUrl() + "?robot=2";
+    String third = server.getTDUrl() + "?robot=3";
+
+    cache.get(first);
+    cache.get(second);
+    cache.get(first);
+    cache.get(third);
+
+    assertEquals(2, cache.size());
+    assertEquals(3, server.getTDRequestCount());
+
+    cache.get(first);
+    assertEquals(3, server.getTDRequestCount());
+
+    cache.get(second);
+    assertEquals(4, server.getTDRequestCount());
+  }
+
+  @Test
+  public void testConcurrentRetrievalsAreCoalesced() throws Exception {
+    ThingDescriptionCache cache = new ThingDescriptionCache(16, 60000);
+    server.setTDLatency(200);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    try {
+      List<Future<ThingDescription>> results = new ArrayList<Future<ThingDescription>>();
+
+      for (int i = 0; i < 4; i ++) {
+        results.add(executor.submit(() -> cache.get(server.getTDUrl())));
+      }
+
+      for (Future<ThingDescription> result : results) {
+        assertSame(results.get(0).get(5, TimeUnit.SECONDS), result.get(5, TimeUnit.SECONDS));
+      }
+
+      assertEquals(1, server.getTDRequestCount());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testSnapshotUsedWhenServerFails() throws IOException {
+    TDSnapshotStore snapshots = new TDSnapshotStore(folder.getRoot().toPath());
+    new ThingDescriptionCache(16, 60000, Optional.of(snapshots)).get(server.getTDUrl());
+
+    // After a restart
+    server.setTDStatusCode(503);
+    new ThingDescriptionCache(16, 60000, Optional.of(snapshots)).get(server.getTDUrl());
+  }
+
+  @Test
+  public void testSnapshotNotUsedForMissingTD() throws IOException {
+    TDSnapshotStore snapshots = new TDSnapshotStore(folder.getRoot().toPath());
+    new ThingDescriptionCache(16, 60000, Optional.of(snapshots)).get(server.getTDUrl());
+
+    server.setTDStatusCode(410);
+
+    try {
+      new ThingDescriptionCache(16, 60000, Optional.of(snapshots)).get(server.getTDUrl());
+      fail("Expected the removed TD not to be served from its snapshot");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("410"));
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testMissingTD() throws IOException {
+    server.setTDStatusCode(404);
+    new ThingDescriptionCache(16, 60000).get(server.getTDUrl());
+  }
+}
@@ -0,0 +1,116 @@
+package tools;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.junit.Test;
+
+import ch.unisg.ics.interactions.wot.td.affordances.Form;
+import ch.unisg.ics.interactions.wot.td.clients.TDHttpResponse;
+import ch.unisg.ics.interactions.wot.td.schemas.BooleanSchema;
+import ch.unisg.ics.interactions.wot.td.vocabularies.TD;
+import tools.AffordanceIndex.ResolvedAffordance;
+import tools.ThingFleetArtifact.ThingInstance;
+
+public class ThingFleetArtifactTest {
+  private static final String TEMPLATE = "http://localhost:1080/forklift-robot";
+  private static final String BUSY = "http://example.org/Busy";
+
+  @Test
+  public void testRebaseTarget() {
+    assertEquals("http://robots.local/r1/busy",
+        ThingFleetArtifact.rebase(TEMPLATE + "/busy", TEMPLATE, "http://robots.local/r1"));
+    assertEquals("http://robots.local/r1/busy",
+        ThingFleetArtifact.rebase(TEMPLATE + "/busy", TEMPLATE, "http://robots.local/r1/"));
+  }
+
+  @Test
+  public void testRebaseWithTrailingSlashInTemplate() {
+    assertEquals("http://robots.local/r1/busy",
+        ThingFleetArtifact.rebase(TEMPLATE + "/busy", TEMPLATE + "/", "http://robots.local/r1"));
+  }
+
+  @Test
+  public void testTargetOfOtherThingNotRebased() {
+    assertEquals(TEMPLATE + "2/busy",
+        ThingFleetArtifact.rebase(TEMPLATE + "2/busy", TEMPLATE, "http://robots.local/r1"));
+    assertEquals("http://robots.local/r1",
+        ThingFleetArtifact.rebase(TEMPLATE, TEMPLATE, "http://robots.local/r1"));
+  }
+
+  @Test
+  public void testTargetOnOtherHostNotRebased() {
+    assertEquals("http://auth.local/token",
+        ThingFleetArtifact.rebase("http://auth.local/token", TEMPLATE, "http://robots.local/r1"));
+  }
+
+  @Test
+  public void testRequestsRoutedToThing() throws IOException {
+    List<String> targets = new ArrayList<String>();
+    ThingClient client = clientFor(targets);
+    ResolvedAffordance busy = busy();
+    ThingInstance r1 = new ThingInstance("r1", "http://robots.local/r1", TEMPLATE);
+    ThingInstance r2 = new ThingInstance("r2", "http://robots.local/r2", TEMPLATE);
+
+    for (ThingInstance thing : new ThingInstance[] { r2, r1, r2 }) {
+      ThingRequest request = client.prepare(busy, thing.targetOf(busy), Optional.empty()).get();
+      client.execute(request, metricsFor(busy));
+    }
+
+    assertEquals(3, targets.size());
+    assertEquals("http://robots.local/r2/busy", targets.get(0));
+    assertEquals("http://robots.local/r1/busy", targets.get(1));
+    assertEquals("http://robots.local/r2/busy", targets.get(2));
+  }
+
+  @Test
+  public void testReadsCachedPerThing() {
+    List<String> targets = new ArrayList<String>();
+    ThingClient client = clientFor(targets);
+    ResolvedAffordance busy = busy();
+    ThingInstance r1 = new ThingInstance("r1", "http://robots.local/r1", TEMPLATE);
+    ThingInstance r2 = new ThingInstance("r2", "http://robots.local/r2", TEMPLATE);
+    r1.readCache.setTTL(BUSY, 60000);
+    r2.readCache.setTTL(BUSY, 60000);
+
+    for (ThingInstance thing : new ThingInstance[] { r1, r2, r1, r2 }) {
+      RequestCmd cmd = client.read(new ThingRequest[] { client.newRequest(busy,
+          thing.targetOf(busy)) }, new AffordanceMetrics[] { metricsFor(busy) },
+          thing.readCache, new String[] { BUSY });
+      cmd.exec();
+    }
+
+    // Each Thing is read once, the cached value of one Thing is not returned for the other
+    assertEquals(2, targets.size());
+    assertEquals("http://robots.local/r1/busy", targets.get(0));
+    assertEquals("http://robots.local/r2/busy", targets.get(1));
+  }
+
+  private static ThingClient clientFor(List<String> targets) {
+    ThingTransport transport = request -> {
+      targets.add(request.getTarget());
+      return new ThingResponse(new TDHttpResponse(new BasicClassicHttpResponse(200)));
+    };
+
+    return new ThingClient(new ResilientTransport(transport, new HostGuards()), message -> { });
+  }
+
+  private static ResolvedAffordance busy() {
+    Form form = new Form.Builder(TEMPLATE + "/busy")
+        .addOperationType(TD.readProperty)
+        .build();
+
+    return new ResolvedAffordance(null, BUSY, form, TD.readProperty,
+        Optional.of(new BooleanSchema.Builder().build()), Optional.empty());
+  }
+
+  private static AffordanceMetrics metricsFor(ResolvedAffordance affordance) {
+    return new AffordanceMetrics(TEMPLATE, "forkliftRobot", affordance.getSemanticType(),
+        affordance.getOperationType());
+  }
+}
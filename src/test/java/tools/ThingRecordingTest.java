@@ -0,0 +1,181 @@
+package tools;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.unisg.ics.interactions.wot.td.affordances.Form;
+import ch.unisg.ics.interactions.wot.td.clients.TDHttpResponse;
+import ch.unisg.ics.interactions.wot.td.vocabularies.TD;
+
+public class ThingRecordingTest {
+  private static final String TARGET = "http://localhost:1080/forklift-robot/position";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path file;
+  private AtomicInteger requests;
+
+  @Before
+  public void init() {
+    file = folder.getRoot().toPath().resolve("recordings").resolve("forklift.rec");
+    requests = new AtomicInteger();
+  }
+
+  @Test
+  public void testReplayInRecordedOrder() throws IOException {
+    ThingTransport recorder = recorder(request -> json("[" + requests.incrementAndGet() + "]"));
+    recorder.execute(read());
+    recorder.execute(read());
+
+    ReplayTransport replay = new ReplayTransport(ThingRecording.load(file), false);
+
+    ThingResponse first = replay.execute(read());
+    assertEquals(200, first.getStatusCode());
+    assertEquals(Optional.of("[1]"), first.getPayload());
+    assertEquals(Optional.of("\"v1\""), first.getHeader("ETag"));
+    assertEquals(Optional.of("[2]"), replay.execute(read()).getPayload());
+
+    // Replays start over once all responses were returned
+    assertEquals(Optional.of("[1]"), replay.execute(read()).getPayload());
+    assertEquals(2, requests.get());
+
+    // Each transport replays from its own position
+    assertEquals(Optional.of("[1]"), new ReplayTransport(ThingRecording.load(file), false)
+        .execute(read()).getPayload());
+  }
+
+  @Test
+  public void testReplayMatchesPayloads() throws IOException {
+    ThingTransport recorder = recorder(request -> json("\"" + request.getPayload().get() + "\""));
+    recorder.execute(write("[1]"));
+    recorder.execute(write("[2]"));
+
+    ReplayTransport replay = new ReplayTransport(ThingRecording.load(file), false);
+
+    assertEquals(Optional.of("\"[2]\""), replay.execute(write("[2]")).getPayload());
+    assertEquals(Optional.of("\"[2]\""), replay.execute(write("[2]")).getPayload());
+
+    // Values that were not recorded are answered like the other writes of the property
+    assertEquals(Optional.of("\"[1]\""), replay.execute(write("[3]")).getPayload());
+  }
+
+  @Test
+  public void testReplayBinaryPayloads() throws IOException {
+    byte[] cbor = new byte[] { (byte) 0x83, 0x01, 0x02, 0x03 };
+    Map<String, String> headers = new HashMap<String, String>();
+    headers.put("Content-Type", "application/cbor");
+
+    recorder(request -> new ThingResponse(new TDHttpResponse(new BasicClassicHttpResponse(200)),
+        headers, Optional.of(cbor))).execute(read());
+
+    ThingResponse response = new ReplayTransport(ThingRecording.load(file), false)
+        .execute(read());
+    assertArrayEquals(cbor, response.getBody().get());
+    assertEquals(Optional.of("application/cbor"), response.getContentType());
+  }
+
+  @Test
+  public void testReplayInRealTime() throws IOException {
+    recorder(request -> {
+      try {
+        TimeUnit.MILLISECONDS.sleep(50);
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      return json("[1]");
+    }).execute(read());
+
+    ThingRecording recording = ThingRecording.load(file);
+    assertTrue(recording.getExchanges().get(0).getLatencyNanos()
+        >= TimeUnit.MILLISECONDS.toNanos(50));
+
+    long start = System.nanoTime();
+    new ReplayTransport(recording, true).execute(read());
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+  }
+
+  @Test
+  public void testUnrecordedAffordance() throws IOException {
+    recorder(request -> json("[1]")).execute(read());
+
+    try {
+      new ReplayTransport(ThingRecording.load(file), false).execute(write("[1]"));
+      fail("Expected no recorded response");
+    } catch (IOException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testIncompleteExchangeIsIgnored() throws IOException {
+    ThingTransport recorder = recorder(request -> json("[1]"));
+    recorder.execute(read());
+    recorder.execute(read());
+
+    try (RandomAccessFile truncated = new RandomAccessFile(file.toFile(), "rw")) {
+      truncated.setLength(truncated.length() - 3);
+    }
+
+    assertEquals(1, ThingRecording.load(file).getExchanges().size());
+  }
+
+  @Test
+  public void testRecordingsAreAppended() throws IOException {
+    recorder(request -> json("[1]")).execute(read());
+    assertEquals(1, ThingRecording.load(file).getExchanges().size());
+
+    recorder(request -> json("[2]")).execute(read());
+    assertEquals(2, ThingRecording.load(file).getExchanges().size());
+  }
+
+  private ThingTransport recorder(ThingTransport delegate) throws IOException {
+    return new RecordingTransport(delegate, ThingRecording.appenderFor(file));
+  }
+
+  private static ThingResponse json(String payload) {
+    BasicClassicHttpResponse response = new BasicClassicHttpResponse(200);
+    response.setEntity(new StringEntity(payload, ContentType.APPLICATION_JSON));
+
+    Map<String, String> headers = new HashMap<String, String>();
+    headers.put("Content-Type", "application/json");
+    headers.put("ETag", "\"v1\"");
+
+    return new ThingResponse(new TDHttpResponse(response), headers);
+  }
+
+  private static ThingRequest read() {
+    return new ThingRequest(new Form.Builder(TARGET)
+          .addOperationType(TD.readProperty)
+          .build(),
+        TD.readProperty);
+  }
+
+  private static ThingRequest write(String payload) {
+    return new ThingRequest(new Form.Builder(TARGET)
+          .setMethodName("PUT")
+          .addOperationType(TD.writeProperty)
+          .build(),
+        TD.writeProperty).setPayload(payload.getBytes(StandardCharsets.UTF_8));
+  }
+}
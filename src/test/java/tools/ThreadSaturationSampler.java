@@ -0,0 +1,125 @@
+package tools;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically samples the states of the JVM's threads to estimate how saturated thread pools are
+ * during a load test. Threads are grouped into pools by their names, with digits replaced by
+ * <code>#</code> (e.g., <code>pool-#-thread-#</code>). A thread is busy if it is runnable (which
+ * includes blocking network I/O) or blocked on a monitor (e.g., an artifact's lock), and idle if
+ * it waits for work.
+ *
+ */
+public class ThreadSaturationSampler implements Closeable {
+  private final ThreadMXBean threads;
+  private final ScheduledExecutorService scheduler;
+  private final Map<String, Pool> pools;
+
+  /**
+   * Starts sampling.
+   *
+   * @param intervalMillis The sampling interval, in milliseconds.
+   */
+  public ThreadSaturationSampler(long intervalMillis) {
+    this.threads = ManagementFactory.getThreadMXBean();
+    this.pools = new HashMap<String, Pool>();
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(
+        ThingExecutors.daemonThreads("thread-sampler"));
+    this.scheduler.scheduleAtFixedRate(this::sample, 0, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @return The sampled pools, ordered by decreasing peak size.
+   */
+  public synchronized List<Pool> getPools() {
+    List<Pool> result = new ArrayList<Pool>(pools.values());
+    result.sort((a, b) -> Integer.compare(b.peakThreads, a.peakThreads));
+    return result;
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+  }
+
+  private synchronized void sample() {
+    Map<String, int[]> counts = new HashMap<String, int[]>();
+
+    for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+      if (info == null || info.getThreadName().startsWith("thread-sampler")) {
+        continue;
+      }
+
+      int[] count = counts.computeIfAbsent(info.getThreadName().replaceAll("[0-9]+", "#"),
+          name -> new int[2]);
+      count[0] ++;
+
+      if (info.getThreadState() == Thread.State.RUNNABLE
+          || info.getThreadState() == Thread.State.BLOCKED) {
+        count[1] ++;
+      }
+    }
+
+    for (Map.Entry<String, int[]> count : counts.entrySet()) {
+      pools.computeIfAbsent(count.getKey(), Pool::new).record(count.getValue()[0],
+          count.getValue()[1]);
+    }
+  }
+
+  /** The samples of a pool of threads with the same name pattern. */
+  public static class Pool {
+    private final String name;
+    private int peakThreads;
+    private long samples;
+    private long threadSamples;
+    private long busySamples;
+    private long saturatedSamples;
+
+    Pool(String name) {
+      this.name = name;
+    }
+
+    void record(int threads, int busy) {
+      peakThreads = Math.max(peakThreads, threads);
+      samples ++;
+      threadSamples += threads;
+      busySamples += busy;
+
+      if (busy == threads) {
+        saturatedSamples ++;
+      }
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getPeakThreads() {
+      return peakThreads;
+    }
+
+    /**
+     * @return The mean share of the pool's threads that were busy.
+     */
+    public double getBusyRatio() {
+      return threadSamples == 0 ? 0 : (double) busySamples / threadSamples;
+    }
+
+    /**
+     * @return The share of samples in which all of the pool's threads were busy.
+     */
+    public double getSaturatedRatio() {
+      return samples == 0 ? 0 : (double) saturatedSamples / samples;
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import tools.WriteBehindSlot.Pending;
+
+public class WriteBehindSlotTest {
+
+  @Test
+  public void testKeepsOnlyLastValue() throws InterruptedException {
+    WriteBehindSlot slot = new WriteBehindSlot();
+
+    slot.offer(bytes("[1,2,3]"));
+    slot.offer(bytes("[4,5,6]"));
+    slot.offer(bytes("[7,8,9]"));
+
+    Pending pending = slot.take().get();
+    assertEquals("[7,8,9]", text(pending.getPayload()));
+    assertEquals(2, pending.getCoalesced());
+  }
+
+  @Test
+  public void testTakeWaitsForValue() throws Exception {
+    WriteBehindSlot slot = new WriteBehindSlot();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    try {
+      Future<Optional<Pending>> taken = executor.submit(slot::take);
+      Thread.sleep(50);
+      assertFalse(taken.isDone());
+
+      slot.offer(bytes("true"));
+      assertEquals("true", text(taken.get(1, TimeUnit.SECONDS).get().getPayload()));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testPendingValueIsFlushedAfterClose() throws InterruptedException {
+    WriteBehindSlot slot = new WriteBehindSlot();
+
+    slot.offer(bytes("false"));
+    slot.close();
+
+    assertEquals("false", text(slot.take().get().getPayload()));
+    assertFalse(slot.take().isPresent());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testClosedSlotRejectsValues() {
+    WriteBehindSlot slot = new WriteBehindSlot();
+    slot.close();
+    slot.offer(bytes("true"));
+  }
+
+  private static byte[] bytes(String payload) {
+    return payload.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String text(byte[] payload) {
+    return new String(payload, StandardCharsets.UTF_8);
+  }
+}